@@ -0,0 +1,434 @@
+package sjdb;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ANALYZE：扫描关系的数据文件，重新计算目录中的统计量。
+ *
+ * 每个关系只顺序扫描一遍（经 Executor 的扫描，堆文件、列式存储、CSV 均可），内存有界：
+ * - 行数精确计数；
+ * - 各属性的值个数用 bottom-k 草图估计：保留哈希值最小的 k 个，不同值少于 k 个时结果精确，
+ *   否则按第 k 小的哈希值估计（相对误差约 1/sqrt(k)）；
+ * - MCV 与等深直方图取自蓄水池抽样的样本：样本中明显比平均更常见、且频率估计足够可靠的值进入 MCV，
+ *   其余值按分位点给出直方图边界。只为已带分布概要的属性计算，setSynopses(true) 时为全部属性计算；
+ * - 各属性同时构建 HyperLogLog 草图，可合并，随目录保存在草图文件中（见 {@link CatalogueSketches}），
+ *   Estimator 用它估计连接两边的公共值个数。
+ *
+ * setFooters(true)（-footers）时，有列式存储的关系不扫描，行数与统计量直接取自列文件的 footer
+ * （ColumnFile 转换时记录的统计量，见 {@link ColumnFile#statistics}），草图保持不变。
+ *
+ * 多个关系在线程池上并行分析；全部完成后在一次 Catalogue.update 中发布新统计，
+ * 读者要么看到全部旧统计，要么看到全部新统计。发布时只替换目录当前版本中各关系的行数与属性统计
+ * （见 Catalogue.updateStatistics），扫描期间提交的索引声明、新增属性等修改都保留。
+ *
+ * 用法：java sjdb.Analyser &lt;cat.txt&gt; [-o 输出文件] [-threads n] [-synopses] [-footers] [关系名...]
+ * （默认分析全部有数据文件的关系，结果按 cat.txt 格式写回原文件，草图写到旁边的 .hll 文件）
+ */
+public class Analyser {
+    /** 默认每个关系的样本行数 */
+    public static final int DEFAULT_SAMPLE_ROWS = 30_000;
+    /** 默认 bottom-k 草图的 k */
+    public static final int DEFAULT_SKETCH_SIZE = 4096;
+    /** MCV 列表最多的值个数 */
+    public static final int DEFAULT_MCV_VALUES = 10;
+    /** 直方图的桶数 */
+    public static final int DEFAULT_HISTOGRAM_BUCKETS = 10;
+
+    private final Catalogue catalogue;
+    private final Path dataDir;
+    private final BufferPool bufferPool = new BufferPool(BufferPool.configuredPages());
+    private int sampleRows = DEFAULT_SAMPLE_ROWS;
+    private int sketchSize = DEFAULT_SKETCH_SIZE;
+    private boolean synopses;
+    private boolean footers;
+
+    /** 一个关系的分析结果（尚未发布到目录） */
+    public static final class Result {
+        /** 新的行数与属性统计（不含索引声明，发布时沿用目录当前版本的） */
+        public final NamedRelation relation;
+        public final long nanos;
+
+        Result(NamedRelation relation, long nanos) {
+            this.relation = relation;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * @param dataDir 关系数据文件所在目录
+     */
+    public Analyser(Catalogue catalogue, Path dataDir) {
+        this.catalogue = catalogue;
+        this.dataDir = dataDir;
+    }
+
+    public void setSampleRows(int sampleRows) {
+        if (sampleRows <= 0) {
+            throw new IllegalArgumentException("Invalid sample size: " + sampleRows);
+        }
+        this.sampleRows = sampleRows;
+    }
+
+    public void setSketchSize(int sketchSize) {
+        if (sketchSize < 2) {
+            throw new IllegalArgumentException("Invalid sketch size: " + sketchSize);
+        }
+        this.sketchSize = sketchSize;
+    }
+
+    /**
+     * @param synopses true 时为全部属性计算 MCV 与直方图；否则只为已带分布概要的属性计算
+     */
+    public void setSynopses(boolean synopses) {
+        this.synopses = synopses;
+    }
+
+    /**
+     * @param footers true 时有列式存储的关系不扫描，统计量取自列文件的 footer
+     */
+    public void setFooters(boolean footers) {
+        this.footers = footers;
+    }
+
+    /**
+     * 在 threads 个线程上并行分析给定关系，全部成功后一次性发布到目录；任一关系失败时不发布。
+     *
+     * @return 各关系的结果，顺序与 relations 相同
+     */
+    public List<Result> analyse(List<NamedRelation> relations, int threads) throws InterruptedException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Result> results = new ArrayList<>();
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (NamedRelation rel : relations) {
+                futures.add(pool.submit(() -> analyse(rel)));
+            }
+            for (Future<Result> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        catalogue.update(() -> {
+            for (Result r : results) {
+                catalogue.updateStatistics(r.relation);
+            }
+        });
+        return results;
+    }
+
+    /* ─────────────────────────── 扫描一个关系 ─────────────────────────── */
+
+    private Result analyse(NamedRelation rel) {
+        long start = System.nanoTime();
+        if (footers && ColumnFile.exists(dataDir, rel)) {
+            return fromFooters(rel, start);
+        }
+        List<Attribute> attrs = rel.getAttributes();
+        int width = attrs.size();
+        BottomK[] sketches = new BottomK[width];
+        HyperLogLog[] hll = new HyperLogLog[width];
+        // 需要分布概要的列在元组中的下标；样本只保存这些列
+        int[] sampled = new int[width];
+        int nSampled = 0;
+        for (int c = 0; c < width; c++) {
+            sketches[c] = new BottomK(sketchSize);
+            hll[c] = new HyperLogLog();
+            if (synopses || attrs.get(c).hasSynopses()) {
+                sampled[nSampled++] = c;
+            }
+        }
+        sampled = Arrays.copyOf(sampled, nSampled);
+        String[][] sample = new String[(nSampled == 0) ? 0 : sampleRows][];
+        SplittableRandom random = new SplittableRandom(rel.toString().hashCode());
+
+        Executor exec = new Executor(dataDir, Runtime.getRuntime().maxMemory() / 4,
+                Paths.get(System.getProperty("java.io.tmpdir")), bufferPool);
+        TupleIterator it = exec.build(new Scan(rel));
+        long rows = 0;
+        try {
+            it.open();
+            String[] t;
+            while ((t = it.next()) != null) {
+                for (int c = 0; c < width; c++) {
+                    long h = BloomFilter.hash64(t[c]);
+                    sketches[c].addHash(h);
+                    hll[c].addHash(h);
+                }
+                if (nSampled > 0) {
+                    // 蓄水池抽样：第 rows+1 行以 sampleRows/(rows+1) 的概率进入样本
+                    long slot = (rows < sample.length) ? rows : random.nextLong(rows + 1);
+                    if (slot < sample.length) {
+                        String[] s = new String[nSampled];
+                        for (int i = 0; i < nSampled; i++) {
+                            s[i] = t[sampled[i]];
+                        }
+                        sample[(int) slot] = s;
+                    }
+                }
+                rows++;
+            }
+        } finally {
+            it.close();
+        }
+
+        int sampleSize = (int) Math.min(rows, sample.length);
+        NamedRelation out = new NamedRelation(rel.toString(), rows);
+        for (int c = 0, s = 0; c < width; c++) {
+            Attribute old = attrs.get(c);
+            MostCommonValues mcv = null;
+            Histogram hist = null;
+            long distinct = Math.min(rows, sketches[c].estimate());
+            if (s < nSampled && sampled[s] == c) {
+                String[] values = new String[sampleSize];
+                for (int i = 0; i < sampleSize; i++) {
+                    values[i] = sample[i][s];
+                }
+                mcv = mostCommonValues(values, distinct);
+                hist = histogram(values, mcv);
+                s++;
+            }
+            out.addAttribute(new Attribute(old.getName(), distinct, mcv, hist, hll[c]));
+        }
+        return new Result(out, System.nanoTime() - start);
+    }
+
+    /**
+     * 不扫描：行数与各属性的统计量取自列文件的 footer，草图沿用目录中的。
+     */
+    private Result fromFooters(NamedRelation rel, long start) {
+        NamedRelation stats = ColumnFile.statistics(dataDir, rel);
+        NamedRelation out = new NamedRelation(rel.toString(), stats.getTupleCount());
+        for (int c = 0; c < stats.getAttributes().size(); c++) {
+            Attribute old = rel.getAttributes().get(c);
+            Attribute f = stats.getAttributes().get(c);
+            out.addAttribute(old.hasSketch() ? new Attribute(f, old.getSketch()) : f);
+        }
+        return new Result(out, System.nanoTime() - start);
+    }
+
+    /* ─────────────────────────── 分布概要 ─────────────────────────── */
+
+    /**
+     * 取样本中最常见的若干个值作为 MCV；没有合格的值时为 null。合格的值须：
+     * 频数比按估计值个数算出的平均频数高出 25% 以上；
+     * 且样本频率的相对标准误不超过 20%（sqrt((1-p)/(n p)) &lt;= 0.2，即频数 &gt;= 25(1-p)），
+     * 样本中偶然多出现几次的稀有值不会被当作常见值。
+     *
+     * @param distinct 属性值个数的估计
+     */
+    static MostCommonValues mostCommonValues(String[] values, long distinct) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String v : values) {
+            counts.merge(v, 1, Integer::sum);
+        }
+        if (counts.isEmpty()) {
+            return null;
+        }
+        double average = (double) values.length / Math.max(distinct, counts.size());
+        List<Map.Entry<String, Integer>> common = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            int n = e.getValue();
+            double p = (double) n / values.length;
+            if (n >= 2 && n > 1.25 * average && n >= 25 * (1 - p) && storable(e.getKey())) {
+                common.add(e);
+            }
+        }
+        if (common.isEmpty()) {
+            return null;
+        }
+        common.sort((a, b) -> (b.getValue().equals(a.getValue()))
+                ? Histogram.compareValues(a.getKey(), b.getKey()) : b.getValue() - a.getValue());
+        Map<String, Double> freqs = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : common.subList(0, Math.min(DEFAULT_MCV_VALUES, common.size()))) {
+            freqs.put(e.getKey(), Math.round(1e6 * e.getValue() / values.length) / 1e6);
+        }
+        return new MostCommonValues(freqs);
+    }
+
+    /**
+     * 样本中不在 MCV 里的值的等深直方图；这些值少于两个不同值时为 null。
+     */
+    static Histogram histogram(String[] values, MostCommonValues mcv) {
+        List<String> rest = new ArrayList<>();
+        Set<String> distinct = new HashSet<>();
+        for (String v : values) {
+            if (mcv == null || mcv.frequency(v) < 0) {
+                if (!storable(v)) {
+                    return null;
+                }
+                rest.add(v);
+                distinct.add(v);
+            }
+        }
+        if (distinct.size() < 2) {
+            return null;
+        }
+        rest.sort(Histogram::compareValues);
+        int buckets = Math.min(DEFAULT_HISTOGRAM_BUCKETS, distinct.size() - 1);
+        String[] bounds = new String[buckets + 1];
+        for (int i = 0; i <= buckets; i++) {
+            bounds[i] = rest.get((int) ((long) i * (rest.size() - 1) / buckets));
+        }
+        return new Histogram(bounds);
+    }
+
+    /**
+     * 值能否原样写进 cat.txt 的 mcv= / hist= 选项（不含分隔符）。
+     */
+    private static boolean storable(String v) {
+        if (v.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < v.length(); i++) {
+            char ch = v.charAt(i);
+            if (ch == ':' || ch == ';' || ch == ',' || ch == '\n' || ch == '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * bottom-k 不同值草图：保留 63 位哈希值中最小的 k 个（大顶堆），估计值为 (k-1) / 第 k 小值所占的比例。
+     */
+    private static final class BottomK {
+        private final long[] heap;
+        private final Set<Long> members = new HashSet<>();
+        private int size;
+
+        BottomK(int k) {
+            this.heap = new long[k];
+        }
+
+        void addHash(long hash) {
+            long h = hash >>> 1;
+            if (size == heap.length && h >= heap[0]) {
+                return;
+            }
+            if (!members.add(h)) {
+                return;
+            }
+            if (size < heap.length) {
+                int i = size++;
+                heap[i] = h;
+                while (i > 0 && heap[(i - 1) / 2] < heap[i]) {
+                    swap(i, (i - 1) / 2);
+                    i = (i - 1) / 2;
+                }
+                return;
+            }
+            members.remove(heap[0]);
+            heap[0] = h;
+            for (int i = 0; ; ) {
+                int l = 2 * i + 1, r = l + 1, top = i;
+                if (l < size && heap[l] > heap[top]) {
+                    top = l;
+                }
+                if (r < size && heap[r] > heap[top]) {
+                    top = r;
+                }
+                if (top == i) {
+                    break;
+                }
+                swap(i, top);
+                i = top;
+            }
+        }
+
+        long estimate() {
+            if (size < heap.length) {
+                return size;
+            }
+            return Math.round((heap.length - 1) * ((double) Long.MAX_VALUE / heap[0]));
+        }
+
+        private void swap(int i, int j) {
+            long t = heap[i];
+            heap[i] = heap[j];
+            heap[j] = t;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String catFile = args[0];
+        String output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean all = false;
+        boolean footers = false;
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-o")) {
+                output = args[++i];
+            } else if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-synopses")) {
+                all = true;
+            } else if (args[i].equals("-footers")) {
+                footers = true;
+            } else {
+                names.add(args[i]);
+            }
+        }
+        Catalogue cat = CatalogueImage.open(catFile);
+        if (output == null) {
+            if (cat instanceof MappedCatalogue) {
+                throw new IllegalArgumentException("Catalogue image " + catFile + " cannot be rewritten in place; use -o");
+            }
+            output = catFile;
+        }
+        Path dataDir = Paths.get(catFile).toAbsolutePath().getParent();
+        Executor probe = new Executor(dataDir);
+        List<NamedRelation> relations = new ArrayList<>();
+        if (names.isEmpty()) {
+            for (NamedRelation rel : cat.getRelations()) {
+                if (probe.hasData(new Scan(rel))) {
+                    relations.add(rel);
+                }
+            }
+        } else {
+            for (String name : names) {
+                relations.add(cat.getRelation(name));
+            }
+        }
+
+        Analyser analyser = new Analyser(cat, dataDir);
+        analyser.setSynopses(all);
+        analyser.setFooters(footers);
+        long start = System.nanoTime();
+        List<Result> results = analyser.analyse(relations, threads);
+        for (Result r : results) {
+            System.out.printf("%s (%.1f ms)%n",
+                    CatalogueWriter.line(cat.snapshot(), cat.getRelation(r.relation.toString())), r.nanos / 1e6);
+        }
+        CatalogueWriter.write(cat, Paths.get(output));
+        CatalogueSketches.write(cat.snapshot(), CatalogueSketches.sidecar(Paths.get(output)));
+        System.out.printf("analysed %d relations on %d threads in %.1f ms, catalogue version %d written to %s%n",
+                results.size(), threads, (System.nanoTime() - start) / 1e6, cat.getStatsVersion(), output);
+    }
+}
@@ -10,7 +10,14 @@ package sjdb;
 public class Attribute {
 
 	private String name;
-	private int values;
+	private long values;
+	/** 可选的分布概要：最常见值列表与等深直方图，没有时为 null */
+	private MostCommonValues mcv;
+	private Histogram histogram;
+	/** 可选的不同值草图（见 Analyser），没有时为 null */
+	private HyperLogLog sketch;
+	/** 尚未读取的草图在草图文件中的条目（见 CatalogueSketches），没有时为 null */
+	private CatalogueSketches.Entry storedSketch;
 
 	public Attribute(String name) {
 		this.name = name;
@@ -20,14 +27,94 @@ public class Attribute {
 	 * @param name
 	 * @param values
 	 */
-	public Attribute(String name, int values) {
+	public Attribute(String name, long values) {
 		this.name = name;
 		this.values = values;
 	}
 	
+	/**
+	 * @param name
+	 * @param values
+	 * @param mcv 最常见值列表，可为 null
+	 * @param histogram 等深直方图，可为 null
+	 */
+	public Attribute(String name, long values, MostCommonValues mcv, Histogram histogram) {
+		this.name = name;
+		this.values = values;
+		this.mcv = mcv;
+		this.histogram = histogram;
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param mcv 最常见值列表，可为 null
+	 * @param histogram 等深直方图，可为 null
+	 * @param sketch 不同值草图，可为 null
+	 */
+	public Attribute(String name, long values, MostCommonValues mcv, Histogram histogram, HyperLogLog sketch) {
+		this(name, values, mcv, histogram);
+		this.sketch = sketch;
+	}
+	
 	public Attribute(Attribute attr) {
 		this.name = attr.name;
 		this.values = attr.values;
+		this.mcv = attr.mcv;
+		this.histogram = attr.histogram;
+		this.sketch = attr.sketch;
+		this.storedSketch = attr.storedSketch;
+	}
+	
+	/**
+	 * Copy an attribute with a new distinct value count, keeping its 
+	 * distribution synopses (which describe value fractions and so stay
+	 * valid under the independence assumption).
+	 * @param attr
+	 * @param values
+	 */
+	public Attribute(Attribute attr, long values) {
+		this(attr);
+		this.values = values;
+	}
+	
+	/**
+	 * Copy an attribute with a new distinct value count and no
+	 * distribution synopses, keeping its distinct-value sketch (which is
+	 * not read from a sketch file until it is needed).
+	 * @param attr
+	 * @param values
+	 * @param synopses false to drop the most-common-value list and histogram
+	 */
+	public Attribute(Attribute attr, long values, boolean synopses) {
+		this(attr, values);
+		if (!synopses) {
+			this.mcv = null;
+			this.histogram = null;
+		}
+	}
+	
+	/**
+	 * Copy an attribute with a new distinct-value sketch.
+	 * @param attr
+	 * @param sketch
+	 */
+	public Attribute(Attribute attr, HyperLogLog sketch) {
+		this(attr);
+		this.sketch = sketch;
+		this.storedSketch = null;
+	}
+	
+	/**
+	 * Copy an attribute with a distinct-value sketch that is read from a
+	 * sketch file on the first call to getSketch().
+	 * @param attr
+	 * @param stored
+	 */
+	Attribute(Attribute attr, CatalogueSketches.Entry stored) {
+		this(attr);
+		this.sketch = null;
+		this.storedSketch = stored;
 	}
 	
 	/**
@@ -40,10 +127,62 @@ public class Attribute {
 	/**
 	 * @return the number of distinct values taken by this attribute
 	 */
-	public int getValueCount() {
+	public long getValueCount() {
 		return values;
 	}
 	
+	/**
+	 * @return the most-common-value list for this attribute, or null
+	 */
+	public MostCommonValues getMostCommonValues() {
+		return mcv;
+	}
+	
+	/**
+	 * @return the equi-depth histogram for this attribute, or null
+	 */
+	public Histogram getHistogram() {
+		return histogram;
+	}
+	
+	/**
+	 * @return the distinct-value sketch for this attribute, or null
+	 */
+	public HyperLogLog getSketch() {
+		return (sketch == null && storedSketch != null) ? storedSketch.get() : sketch;
+	}
+	
+	/**
+	 * @return true if this attribute has a distinct-value sketch, without
+	 * reading it from a sketch file
+	 */
+	public boolean hasSketch() {
+		return sketch != null || storedSketch != null;
+	}
+	
+	/**
+	 * @return the sketch-file entry of a sketch that has not been read
+	 * through this attribute, or null
+	 */
+	CatalogueSketches.Entry getStoredSketch() {
+		return (sketch == null) ? storedSketch : null;
+	}
+	
+	/**
+	 * @return the sketch or its sketch-file entry, for telling whether two
+	 * attributes share a sketch without reading it
+	 */
+	Object sketchIdentity() {
+		return (sketch != null) ? sketch : storedSketch;
+	}
+	
+	/**
+	 * @return true if this attribute carries any distribution synopsis
+	 */
+	public boolean hasSynopses() {
+		return mcv != null || histogram != null;
+	}
+	
 	
 	@Override
 	public int hashCode() {
@@ -0,0 +1,381 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 磁盘 B+ 树二级索引（&lt;数据目录&gt;/&lt;关系名&gt;.&lt;属性名&gt;.idx），把属性值映射到堆文件中的行号（RID）。
+ *
+ * 文件由 PAGE_SIZE 大小的页组成，页读取与堆文件一样经由 {@link BufferPool}：
+ * <pre>
+ *   第 0 页：  MAGIC(4) root(4) height(4) entries(8)
+ *   叶子页：   LEAF(1) count(2) next(4)  [keyLen(2) key rid(8)]...
+ *   内部页：   INTERNAL(1) count(2) child0(4)  [keyLen(2) key child(4)]...
+ * </pre>
+ * 内部页第 i 个键是第 i 个孩子（从 1 计）子树中的最小键；叶子按键有序并用 next 串成链表，
+ * 同一键的条目可能跨越相邻叶子。键按 String.compareTo 排序，只支持等值查找。
+ *
+ * 索引由 {@link #build} 从堆文件批量构建：(键, RID) 先经 {@link ExternalSortIterator} 排序，
+ * 再自底向上逐层填满页写出，因此构建的内存占用受排序预算约束。
+ */
+public class BTreeIndex {
+    static final int MAGIC = 0x534A4249;          // "SJBI"
+    static final byte LEAF = 1;
+    static final byte INTERNAL = 2;
+    static final int NODE_HEADER = 7;
+    static final int MAX_KEY_BYTES = 1024;
+
+    private BTreeIndex() {
+    }
+
+    /**
+     * @return 关系某属性上索引的文件路径
+     */
+    public static Path file(Path dataDir, Relation relation, String attribute) {
+        return dataDir.resolve(relation.toString() + "." + attribute + ".idx");
+    }
+
+    /**
+     * 把页号与槽号打包成 RID。
+     */
+    static long rid(int page, int slot) {
+        return ((long) page << 16) | slot;
+    }
+
+    static int ridPage(long rid) {
+        return (int) (rid >>> 16);
+    }
+
+    static int ridSlot(long rid) {
+        return (int) (rid & 0xFFFF);
+    }
+
+    /* ─────────────────────────── 查找 ─────────────────────────── */
+
+    /**
+     * 等值查找。
+     *
+     * @return 键等于 key 的全部 RID（按 RID 升序，便于顺序访问堆文件）
+     */
+    public static long[] lookup(HeapFile index, BufferPool pool, String key) {
+        ByteBuffer header = pool.pin(index, 0);
+        int page;
+        try {
+            if (header.getInt(0) != MAGIC) {
+                throw new IllegalStateException("Index file " + index + " has a bad magic number");
+            }
+            page = header.getInt(4);
+        } finally {
+            pool.unpin(index, 0);
+        }
+
+        // 下降到可能含有 key 的最左叶子：取最后一个“子树最小键 < key”的孩子
+        while (true) {
+            ByteBuffer node = pool.pin(index, page);
+            int child;
+            try {
+                if (node.get(0) == LEAF) {
+                    break;
+                }
+                int count = node.getShort(1) & 0xFFFF;
+                child = node.getInt(3);
+                int pos = NODE_HEADER;
+                for (int i = 0; i < count; i++) {
+                    int len = node.getShort(pos) & 0xFFFF;
+                    if (readKey(node, pos + 2, len).compareTo(key) >= 0) {
+                        break;
+                    }
+                    child = node.getInt(pos + 2 + len);
+                    pos += 2 + len + 4;
+                }
+            } finally {
+                pool.unpin(index, page);
+            }
+            page = child;
+        }
+
+        // 沿叶子链收集等值条目，遇到更大的键即停止
+        long[] rids = new long[8];
+        int n = 0;
+        while (page != 0) {
+            ByteBuffer leaf = pool.pin(index, page);
+            int next;
+            boolean done = false;
+            try {
+                int count = leaf.getShort(1) & 0xFFFF;
+                next = leaf.getInt(3);
+                int pos = NODE_HEADER;
+                for (int i = 0; i < count; i++) {
+                    int len = leaf.getShort(pos) & 0xFFFF;
+                    int cmp = readKey(leaf, pos + 2, len).compareTo(key);
+                    if (cmp > 0) {
+                        done = true;
+                        break;
+                    }
+                    if (cmp == 0) {
+                        if (n == rids.length) {
+                            rids = Arrays.copyOf(rids, n * 2);
+                        }
+                        rids[n++] = leaf.getLong(pos + 2 + len);
+                    }
+                    pos += 2 + len + 8;
+                }
+            } finally {
+                pool.unpin(index, page);
+            }
+            if (done) {
+                break;
+            }
+            page = next;
+        }
+        rids = Arrays.copyOf(rids, n);
+        Arrays.sort(rids);
+        return rids;
+    }
+
+    private static String readKey(ByteBuffer page, int at, int len) {
+        byte[] b = new byte[len];
+        page.get(at, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /* ─────────────────────────── 构建 ─────────────────────────── */
+
+    /**
+     * 从关系的堆文件批量构建 attribute 上的索引。
+     *
+     * @param sortBudget (键, RID) 排序可用的内存（字节）
+     * @param tmpDir     排序临时文件目录
+     * @return 索引条目数
+     */
+    public static long build(NamedRelation relation, Attribute attribute, Path dataDir,
+                             BufferPool pool, long sortBudget, Path tmpDir) {
+        int column = relation.getAttributes().indexOf(attribute);
+        if (column < 0) {
+            throw new IllegalArgumentException("Relation " + relation + " has no attribute " + attribute);
+        }
+        TupleIterator sorted = new ExternalSortIterator(
+                new KeyRidIterator(relation, column, HeapFile.file(dataDir, relation), pool), 0, sortBudget, tmpDir);
+        Path path = file(dataDir, relation, attribute.getName());
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer w = new Writer(out);
+            long entries = 0;
+
+            // 叶子层
+            List<String> firstKeys = new ArrayList<>();
+            List<Integer> pages = new ArrayList<>();
+            ByteBuffer leaf = w.newNode(LEAF);
+            int leafPage = w.allocate();
+            String leafFirst = null;
+            try {
+                sorted.open();
+                String[] t;
+                while ((t = sorted.next()) != null) {
+                    byte[] key = keyBytes(t[0]);
+                    if (leaf.remaining() < 2 + key.length + 8) {
+                        int next = w.allocate();
+                        leaf.putInt(3, next);
+                        w.write(leafPage, leaf);
+                        firstKeys.add(leafFirst);
+                        pages.add(leafPage);
+                        leaf = w.newNode(LEAF);
+                        leafPage = next;
+                        leafFirst = null;
+                    }
+                    if (leafFirst == null) {
+                        leafFirst = t[0];
+                    }
+                    leaf.putShort((short) key.length).put(key).putLong(Long.parseLong(t[1]));
+                    leaf.putShort(1, (short) ((leaf.getShort(1) & 0xFFFF) + 1));
+                    entries++;
+                }
+            } finally {
+                sorted.close();
+            }
+            w.write(leafPage, leaf);
+            firstKeys.add(leafFirst == null ? "" : leafFirst);
+            pages.add(leafPage);
+
+            // 内部层：逐层向上，直到只剩根
+            int height = 1;
+            while (pages.size() > 1) {
+                List<String> upKeys = new ArrayList<>();
+                List<Integer> upPages = new ArrayList<>();
+                ByteBuffer node = null;
+                for (int i = 0; i < pages.size(); i++) {
+                    byte[] key = keyBytes(firstKeys.get(i));
+                    if (node != null && node.remaining() < 2 + key.length + 4) {
+                        upPages.add(w.append(node));
+                        node = null;
+                    }
+                    if (node == null) {
+                        node = w.newNode(INTERNAL);
+                        node.putInt(3, pages.get(i));
+                        upKeys.add(firstKeys.get(i));
+                        continue;
+                    }
+                    node.putShort((short) key.length).put(key).putInt(pages.get(i));
+                    node.putShort(1, (short) ((node.getShort(1) & 0xFFFF) + 1));
+                }
+                upPages.add(w.append(node));
+                firstKeys = upKeys;
+                pages = upPages;
+                height++;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(SlottedPage.PAGE_SIZE);
+            header.putInt(MAGIC).putInt(pages.get(0)).putInt(height).putLong(entries);
+            w.write(0, header);
+            return entries;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write index " + path, e);
+        }
+    }
+
+    private static byte[] keyBytes(String key) {
+        byte[] b = key.getBytes(StandardCharsets.UTF_8);
+        if (b.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Index key longer than " + MAX_KEY_BYTES + " bytes: " + key);
+        }
+        return b;
+    }
+
+    /**
+     * 顺序分配页号并按页写出；第 0 页留给文件头。
+     */
+    private static final class Writer {
+        private final FileChannel out;
+        private int nextPage = 1;
+
+        Writer(FileChannel out) {
+            this.out = out;
+        }
+
+        ByteBuffer newNode(byte type) {
+            ByteBuffer b = ByteBuffer.allocate(SlottedPage.PAGE_SIZE);
+            b.put(type).putShort((short) 0).putInt(0);
+            return b;
+        }
+
+        int allocate() {
+            return nextPage++;
+        }
+
+        int append(ByteBuffer node) throws IOException {
+            int page = allocate();
+            write(page, node);
+            return page;
+        }
+
+        void write(int page, ByteBuffer node) throws IOException {
+            ByteBuffer b = node.duplicate();
+            b.clear();
+            long pos = (long) page * SlottedPage.PAGE_SIZE;
+            while (b.hasRemaining()) {
+                pos += out.write(b, pos);
+            }
+        }
+    }
+
+    /**
+     * 经缓冲池顺序读堆文件，输出 (键, RID) 二元组。
+     */
+    private static final class KeyRidIterator implements TupleIterator {
+        private final NamedRelation relation;
+        private final int column;
+        private final Path path;
+        private final BufferPool pool;
+        private final int width;
+        private HeapFile heap;
+        private int pages;
+        private int page;
+        private ByteBuffer current;
+        private int slots;
+        private int slot;
+
+        KeyRidIterator(NamedRelation relation, int column, Path path, BufferPool pool) {
+            this.relation = relation;
+            this.column = column;
+            this.path = path;
+            this.pool = pool;
+            this.width = relation.getAttributes().size();
+        }
+
+        public void open() {
+            heap = new HeapFile(path);
+            pages = heap.getPageCount();
+            page = -1;
+            current = null;
+        }
+
+        public String[] next() {
+            while (current == null || slot >= slots) {
+                if (current != null) {
+                    current = null;
+                    pool.unpin(heap, page);
+                }
+                if (++page >= pages) {
+                    return null;
+                }
+                current = pool.pin(heap, page, BufferPool.DEFAULT_READ_AHEAD);
+                slots = SlottedPage.slotCount(current);
+                slot = 0;
+            }
+            String key = SlottedPage.read(current, slot, width)[column];
+            return new String[] { key, Long.toString(rid(page, slot++)) };
+        }
+
+        public void close() {
+            if (heap != null) {
+                if (current != null) {
+                    current = null;
+                    pool.unpin(heap, page);
+                }
+                heap.close();
+                heap = null;
+            }
+        }
+
+        public List<Attribute> getSchema() {
+            return Arrays.asList(new Attribute("key"), new Attribute("rid"));
+        }
+    }
+
+    /**
+     * 为目录中声明的所有索引构建索引文件（要求关系已有堆文件，见 {@link HeapFile}）。
+     * 用法：java sjdb.BTreeIndex &lt;cat.txt&gt;
+     */
+    public static void main(String[] args) throws Exception {
+        Catalogue cat = new Catalogue();
+        new CatalogueParser(args[0], cat).parse();
+        Path dataDir = Paths.get(args[0]).toAbsolutePath().getParent();
+        Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        BufferPool pool = new BufferPool(BufferPool.configuredPages());
+        for (NamedRelation rel : cat.getRelations()) {
+            if (rel.getIndexes().isEmpty()) {
+                continue;
+            }
+            if (!Files.isReadable(HeapFile.file(dataDir, rel))) {
+                System.err.println(rel + ": no heap file, run sjdb.HeapFile first");
+                continue;
+            }
+            for (String attr : rel.getIndexes()) {
+                long n = build(rel, rel.getAttribute(new Attribute(attr)), dataDir, pool,
+                        Runtime.getRuntime().maxMemory() / 4, tmpDir);
+                System.out.println(rel + "." + attr + ": " + n + " entries -> " + file(dataDir, rel, attr));
+            }
+        }
+    }
+}
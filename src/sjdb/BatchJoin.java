@@ -0,0 +1,156 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 向量化哈希等值连接：把构建侧输入物化成列式表并装入 LongHashTable，
+ * 另一侧按批探测，匹配结果写入输出批的列数组。
+ *
+ * 构建侧由 Estimator 的输出行数决定（行数较小的一侧，见 Executor.buildOnLeft）；
+ * 无论哪侧建表，输出列顺序都是左侧列在前、右侧列在后，与逻辑 Join 一致。
+ * 探测路径只读写原始数组，不分配对象。
+ */
+public class BatchJoin implements BatchOperator {
+    private final BatchOperator probe;
+    private final BatchOperator build;
+    private final boolean buildLeft;
+    private final ValueDictionary dict;
+    private final int batchSize;
+    private final List<Attribute> schema;
+    private final boolean[] encoding;
+    private final int probeKey;
+    private final int buildKey;
+    private final int leftWidth;
+
+    private ColumnTable table;
+    private LongHashTable hash;
+    private ColumnBatch out;
+    private ColumnBatch cur;
+    private int curI;
+    private int chain = -1;
+
+    public BatchJoin(BatchOperator left, BatchOperator right, Predicate predicate,
+                     boolean buildLeft, ValueDictionary dict, int batchSize) {
+        this.buildLeft = buildLeft;
+        this.probe = buildLeft ? right : left;
+        this.build = buildLeft ? left : right;
+        this.dict = dict;
+        this.batchSize = batchSize;
+        this.schema = new ArrayList<>(left.getSchema());
+        this.schema.addAll(right.getSchema());
+        this.leftWidth = left.getSchema().size();
+        this.encoding = concat(left.getEncoding(), right.getEncoding());
+        int[] cols = Executor.joinColumns(left.getSchema(), right.getSchema(), predicate);
+        this.probeKey = buildLeft ? cols[1] : cols[0];
+        this.buildKey = buildLeft ? cols[0] : cols[1];
+    }
+
+    public void open() {
+        table = new ColumnTable(build.getSchema(), build.getEncoding(), batchSize);
+        build.open();
+        ColumnBatch b;
+        while ((b = build.nextBatch()) != null) {
+            table.append(b);
+        }
+        build.close();
+
+        hash = new LongHashTable(table.rows);
+        for (int j = table.rows - 1; j >= 0; j--) {          // 倒序插入，链上保持原顺序
+            hash.put(buildKey(j), j);
+        }
+
+        probe.open();
+        out = new ColumnBatch(schema, encoding, batchSize);
+        cur = null;
+        chain = -1;
+    }
+
+    public ColumnBatch nextBatch() {
+        out.reset();
+        int k = 0;
+        while (k < batchSize) {
+            if (chain >= 0) {
+                emit(cur.row(curI), chain, k++);
+                chain = hash.next(chain);
+                if (chain < 0) {
+                    curI++;
+                }
+                continue;
+            }
+            if (cur == null || curI >= cur.count()) {
+                cur = probe.nextBatch();
+                curI = 0;
+                if (cur == null) {
+                    break;
+                }
+                continue;
+            }
+            long key = probeKey(cur, cur.row(curI));
+            chain = (key < 0 && needsLookup()) ? -1 : hash.first(key);
+            if (chain < 0) {
+                curI++;
+            }
+        }
+        out.size = k;
+        return (k == 0) ? null : out;
+    }
+
+    /**
+     * 把探测侧第 r 行与构建侧第 j 行拼接写入输出的第 k 行。
+     */
+    private void emit(int r, int j, int k) {
+        int off = buildLeft ? leftWidth : 0;
+        for (int c = 0; c < cur.columns.length; c++) {
+            out.columns[off + c][k] = cur.columns[c][r];
+        }
+        off = buildLeft ? 0 : leftWidth;
+        for (int c = 0; c < table.columns.length; c++) {
+            out.columns[off + c][k] = table.columns[c][j];
+        }
+    }
+
+    /**
+     * 两侧键列编码方式不同时，把数值一侧转换成字典编码再比较。
+     */
+    private long buildKey(int j) {
+        long v = table.columns[buildKey][j];
+        if (!table.encoded[buildKey] && probe.getEncoding()[probeKey]) {
+            return dict.encode(Long.toString(v));
+        }
+        return v;
+    }
+
+    private long probeKey(ColumnBatch b, int r) {
+        long v = b.columns[probeKey][r];
+        if (needsLookup()) {
+            return dict.lookup(Long.toString(v));         // 字典里没有该值时为 -1，不可能匹配
+        }
+        return v;
+    }
+
+    private boolean needsLookup() {
+        return !probe.getEncoding()[probeKey] && table.encoded[buildKey];
+    }
+
+    public void close() {
+        probe.close();
+        table = null;
+        hash = null;
+    }
+
+    public List<Attribute> getSchema() {
+        return schema;
+    }
+
+    public boolean[] getEncoding() {
+        return encoding;
+    }
+
+    static boolean[] concat(boolean[] l, boolean[] r) {
+        boolean[] out = new boolean[l.length + r.length];
+        System.arraycopy(l, 0, out, 0, l.length);
+        System.arraycopy(r, 0, out, l.length, r.length);
+        return out;
+    }
+}
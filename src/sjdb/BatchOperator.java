@@ -0,0 +1,25 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 向量化物理算子接口：与 TupleIterator 相同的 open / next / close 协议，
+ * 但每次产出一个 ColumnBatch 而不是一条元组。
+ */
+public interface BatchOperator {
+    public void open();
+
+    /**
+     * @return 下一批（至少含一条有效行）；没有更多数据时返回 null
+     */
+    public ColumnBatch nextBatch();
+
+    public void close();
+
+    public List<Attribute> getSchema();
+
+    /**
+     * @return 每个输出列是否为字典编码
+     */
+    public boolean[] getEncoding();
+}
@@ -0,0 +1,92 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 向量化笛卡尔积：物化右侧输入，左侧每个有效行与右侧所有行拼接。
+ */
+public class BatchProduct implements BatchOperator {
+    private final BatchOperator left;
+    private final BatchOperator right;
+    private final int batchSize;
+    private final List<Attribute> schema;
+    private final boolean[] encoding;
+    private final int leftWidth;
+
+    private ColumnTable table;
+    private ColumnBatch out;
+    private ColumnBatch cur;
+    private int curI;
+    private int j;
+
+    public BatchProduct(BatchOperator left, BatchOperator right, int batchSize) {
+        this.left = left;
+        this.right = right;
+        this.batchSize = batchSize;
+        this.schema = new ArrayList<>(left.getSchema());
+        this.schema.addAll(right.getSchema());
+        this.leftWidth = left.getSchema().size();
+        this.encoding = BatchJoin.concat(left.getEncoding(), right.getEncoding());
+    }
+
+    public void open() {
+        table = new ColumnTable(right.getSchema(), right.getEncoding(), batchSize);
+        right.open();
+        ColumnBatch b;
+        while ((b = right.nextBatch()) != null) {
+            table.append(b);
+        }
+        right.close();
+        left.open();
+        out = new ColumnBatch(schema, encoding, batchSize);
+        cur = null;
+        j = 0;
+    }
+
+    public ColumnBatch nextBatch() {
+        out.reset();
+        if (table.rows == 0) {
+            return null;
+        }
+        int k = 0;
+        while (k < batchSize) {
+            if (cur == null || curI >= cur.count()) {
+                cur = left.nextBatch();
+                curI = 0;
+                j = 0;
+                if (cur == null) {
+                    break;
+                }
+            }
+            int r = cur.row(curI);
+            for (; j < table.rows && k < batchSize; j++, k++) {
+                for (int c = 0; c < leftWidth; c++) {
+                    out.columns[c][k] = cur.columns[c][r];
+                }
+                for (int c = 0; c < table.columns.length; c++) {
+                    out.columns[leftWidth + c][k] = table.columns[c][j];
+                }
+            }
+            if (j == table.rows) {
+                curI++;
+                j = 0;
+            }
+        }
+        out.size = k;
+        return (k == 0) ? null : out;
+    }
+
+    public void close() {
+        left.close();
+        table = null;
+    }
+
+    public List<Attribute> getSchema() {
+        return schema;
+    }
+
+    public boolean[] getEncoding() {
+        return encoding;
+    }
+}
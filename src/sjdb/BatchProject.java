@@ -0,0 +1,57 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 向量化投影：只重新排列列数组的引用，选择向量原样透传，不拷贝数据。
+ */
+public class BatchProject implements BatchOperator {
+    private final BatchOperator input;
+    private final List<Attribute> attributes;
+    private final int[] columns;
+    private final boolean[] encoding;
+    private ColumnBatch view;
+
+    public BatchProject(BatchOperator input, List<Attribute> attributes) {
+        this.input = input;
+        this.attributes = attributes;
+        this.columns = new int[attributes.size()];
+        this.encoding = new boolean[attributes.size()];
+        boolean[] in = input.getEncoding();
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Executor.columnIndex(input.getSchema(), attributes.get(i));
+            encoding[i] = in[columns[i]];
+        }
+    }
+
+    public void open() {
+        input.open();
+        view = new ColumnBatch(attributes, encoding);
+    }
+
+    public ColumnBatch nextBatch() {
+        ColumnBatch b = input.nextBatch();
+        if (b == null) {
+            return null;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            view.columns[i] = b.columns[columns[i]];
+        }
+        view.size = b.size;
+        view.selection = b.selection;
+        view.selected = b.selected;
+        return view;
+    }
+
+    public void close() {
+        input.close();
+    }
+
+    public List<Attribute> getSchema() {
+        return attributes;
+    }
+
+    public boolean[] getEncoding() {
+        return encoding;
+    }
+}
@@ -0,0 +1,85 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 向量化扫描：把已载入内存的列式表按批切片输出。
+ * 列式表由 BatchExecutor 载入并缓存，同一执行器上的多次执行共用。
+ */
+public class BatchScan implements BatchOperator {
+    private final NamedRelation relation;
+    private final ColumnTable table;
+    private final int batchSize;
+    private final CompressedBitmap selected;
+    private ColumnBatch batch;
+    private int pos;
+
+    public BatchScan(NamedRelation relation, ColumnTable table, int batchSize) {
+        this(relation, table, batchSize, null);
+    }
+
+    /**
+     * @param selected 只输出位图中置位的行，按行号直接收集进批；传 null 表示全部行
+     */
+    public BatchScan(NamedRelation relation, ColumnTable table, int batchSize, CompressedBitmap selected) {
+        this.relation = relation;
+        this.table = table;
+        this.batchSize = batchSize;
+        this.selected = selected;
+    }
+
+    public void open() {
+        batch = new ColumnBatch(table.schema, table.encoded, batchSize);
+        pos = 0;
+    }
+
+    public ColumnBatch nextBatch() {
+        if (pos >= table.rows) {
+            return null;
+        }
+        batch.reset();
+        if (selected != null) {
+            return gather();
+        }
+        int n = Math.min(batchSize, table.rows - pos);
+        for (int c = 0; c < batch.columns.length; c++) {
+            System.arraycopy(table.columns[c], pos, batch.columns[c], 0, n);
+        }
+        batch.size = n;
+        pos += n;
+        return batch;
+    }
+
+    /**
+     * 从 pos 起收集至多 batchSize 个置位行。
+     */
+    private ColumnBatch gather() {
+        int n = 0;
+        long r = selected.nextSetBit(pos);
+        while (r >= 0 && r < table.rows && n < batchSize) {
+            for (int c = 0; c < batch.columns.length; c++) {
+                batch.columns[c][n] = table.columns[c][(int) r];
+            }
+            n++;
+            r = selected.nextSetBit(r + 1);
+        }
+        pos = (r < 0 || r >= table.rows) ? table.rows : (int) r;
+        if (n == 0) {
+            return null;
+        }
+        batch.size = n;
+        return batch;
+    }
+
+    public void close() {
+        batch = null;
+    }
+
+    public List<Attribute> getSchema() {
+        return table.schema;
+    }
+
+    public boolean[] getEncoding() {
+        return table.encoded;
+    }
+}
@@ -0,0 +1,139 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 向量化选择：对每批在原始列数组上做紧凑循环，结果写入选择向量，不拷贝列数据。
+ *
+ * 常见情况都有专门的快速路径：数值列与数值常量比较、字典列等值比较、
+ * 同编码两列等值比较；其余情况（如字符串列上的范围谓词）解码后用 Predicate.test 判断。
+ */
+public class BatchSelect implements BatchOperator {
+    private final BatchOperator input;
+    private final Predicate predicate;
+    private final ValueDictionary dict;
+    private final int leftIdx;
+    private final int rightIdx;
+    private int[] scratch = new int[ColumnBatch.DEFAULT_SIZE];
+
+    public BatchSelect(BatchOperator input, Predicate predicate, ValueDictionary dict) {
+        this.input = input;
+        this.predicate = predicate;
+        this.dict = dict;
+        this.leftIdx = Executor.columnIndex(input.getSchema(), predicate.getLeftAttribute());
+        this.rightIdx = predicate.comparesValue()
+                ? -1
+                : Executor.columnIndex(input.getSchema(), predicate.getRightAttribute());
+    }
+
+    public void open() {
+        input.open();
+    }
+
+    public ColumnBatch nextBatch() {
+        ColumnBatch b;
+        while ((b = input.nextBatch()) != null) {
+            filter(b);
+            if (b.count() > 0) {
+                return b;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在 b 当前的有效行上判断谓词，结果写入 b 的选择向量（MappedBatchScan 下推谓词时也用它）。
+     */
+    void filter(ColumnBatch b) {
+        int n = b.count();
+        if (scratch.length < n) {
+            scratch = new int[n];
+        }
+        int[] sel = scratch;
+        int k = 0;
+        long[] col = b.columns[leftIdx];
+        boolean enc = b.encoded[leftIdx];
+
+        if (rightIdx >= 0 && enc == b.encoded[rightIdx]) {
+            long[] other = b.columns[rightIdx];
+            for (int i = 0; i < n; i++) {
+                int r = b.row(i);
+                if (col[r] == other[r]) {
+                    sel[k++] = r;
+                }
+            }
+        } else if (rightIdx < 0 && predicate.equalsValue()) {
+            long key;
+            boolean possible;
+            if (enc) {
+                key = dict.lookup(predicate.getRightValue());
+                possible = key >= 0;
+            } else {
+                possible = ColumnTable.isCanonicalLong(predicate.getRightValue());
+                key = possible ? Long.parseLong(predicate.getRightValue()) : 0;
+            }
+            if (possible) {
+                for (int i = 0; i < n; i++) {
+                    int r = b.row(i);
+                    if (col[r] == key) {
+                        sel[k++] = r;
+                    }
+                }
+            }
+        } else if (rightIdx < 0 && !enc && numericBounds()) {
+            double lo = bound(predicate.getRightValue(), Double.NEGATIVE_INFINITY);
+            double hi = Double.POSITIVE_INFINITY;
+            boolean loInc = true, hiInc = true;
+            switch (predicate.getComparison()) {
+                case LT: hi = lo; lo = Double.NEGATIVE_INFINITY; hiInc = false; break;
+                case LE: hi = lo; lo = Double.NEGATIVE_INFINITY; break;
+                case GT: loInc = false; break;
+                case GE: break;
+                default: hi = bound(predicate.getUpperValue(), Double.POSITIVE_INFINITY); break;
+            }
+            for (int i = 0; i < n; i++) {
+                int r = b.row(i);
+                double v = col[r];
+                if ((loInc ? v >= lo : v > lo) && (hiInc ? v <= hi : v < hi)) {
+                    sel[k++] = r;
+                }
+            }
+        } else {
+            // 通用慢路径：解码成字符串再判断
+            for (int i = 0; i < n; i++) {
+                int r = b.row(i);
+                String other = (rightIdx < 0) ? null : decode(b, rightIdx, r);
+                if (predicate.test(decode(b, leftIdx, r), other)) {
+                    sel[k++] = r;
+                }
+            }
+        }
+        b.selection = sel;
+        b.selected = k;
+    }
+
+    private boolean numericBounds() {
+        return Histogram.toNumber(predicate.getRightValue()) != null
+                && (predicate.getUpperValue() == null || Histogram.toNumber(predicate.getUpperValue()) != null);
+    }
+
+    private static double bound(String v, double dflt) {
+        return (v == null) ? dflt : Histogram.toNumber(v);
+    }
+
+    private String decode(ColumnBatch b, int c, int r) {
+        return b.encoded[c] ? dict.decode(b.columns[c][r]) : Long.toString(b.columns[c][r]);
+    }
+
+    public void close() {
+        input.close();
+    }
+
+    public List<Attribute> getSchema() {
+        return input.getSchema();
+    }
+
+    public boolean[] getEncoding() {
+        return input.getEncoding();
+    }
+}
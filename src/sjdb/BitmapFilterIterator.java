@@ -0,0 +1,48 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 按行序号过滤输入：只输出位图中置位的行。最后一个置位行之后不再读取输入。
+ * 用于没有列式存储、无法按行号随机访问的数据源。
+ */
+public class BitmapFilterIterator implements TupleIterator {
+    private final TupleIterator input;
+    private final CompressedBitmap rows;
+    private long pos;
+    private long wanted;
+
+    public BitmapFilterIterator(TupleIterator input, CompressedBitmap rows) {
+        this.input = input;
+        this.rows = rows;
+    }
+
+    public void open() {
+        input.open();
+        pos = 0;
+        wanted = rows.nextSetBit(0);
+    }
+
+    public String[] next() {
+        while (wanted >= 0) {
+            String[] t = input.next();
+            if (t == null) {
+                wanted = -1;
+                break;
+            }
+            if (pos++ == wanted) {
+                wanted = rows.nextSetBit(pos);
+                return t;
+            }
+        }
+        return null;
+    }
+
+    public void close() {
+        input.close();
+    }
+
+    public List<Attribute> getSchema() {
+        return input.getSchema();
+    }
+}
@@ -0,0 +1,196 @@
+package sjdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 低基数属性上的位图索引（&lt;数据目录&gt;/&lt;关系名&gt;.&lt;属性名&gt;.bmp）：
+ * 每个不同取值一个 {@link CompressedBitmap}，位为元组在关系中的行序号（与各存储格式的扫描顺序一致）。
+ *
+ * <pre>
+ *   MAGIC(4) rows(8) values(4)  [value(writeUTF) bitmap]...
+ * </pre>
+ * 索引整体载入内存；取值个数超过 MAX_VALUES 的列不适合建位图索引。
+ */
+public class BitmapIndex {
+    static final int MAGIC = 0x534A424D;          // "SJBM"
+    /** 位图索引允许的最大不同取值数 */
+    public static final int MAX_VALUES = 4096;
+
+    private final long rows;
+    private final Map<String, CompressedBitmap> bitmaps;
+
+    private BitmapIndex(long rows, Map<String, CompressedBitmap> bitmaps) {
+        this.rows = rows;
+        this.bitmaps = bitmaps;
+    }
+
+    /**
+     * @return 关系某属性上位图索引的文件路径
+     */
+    public static Path file(Path dataDir, Relation relation, String attribute) {
+        return dataDir.resolve(relation.toString() + "." + attribute + ".bmp");
+    }
+
+    /**
+     * @return 建索引时关系的行数
+     */
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return 索引中不同取值的个数
+     */
+    public int getValueCount() {
+        return bitmaps.size();
+    }
+
+    /**
+     * 回答一个常量谓词：attr=value 取对应位图，范围谓词把满足条件的各取值的位图 OR 起来。
+     *
+     * @return 满足谓词的行（新位图，可自由修改）
+     */
+    public CompressedBitmap matching(Predicate p) {
+        CompressedBitmap result = new CompressedBitmap();
+        if (p.equalsValue()) {
+            CompressedBitmap b = bitmaps.get(p.getRightValue());
+            return (b == null) ? result : result.or(b);
+        }
+        for (Map.Entry<String, CompressedBitmap> e : bitmaps.entrySet()) {
+            if (p.test(e.getKey(), null)) {
+                result = result.or(e.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 用位图索引回答一组常量谓词的合取：各谓词的位图依次 AND，结果为空时提前结束。
+     *
+     * @return 满足全部谓词的行；任一谓词的索引文件不存在时返回 null
+     */
+    public static CompressedBitmap evaluate(Path dataDir, NamedRelation relation, List<Predicate> predicates) {
+        List<Path> files = new ArrayList<>();
+        for (Predicate p : predicates) {
+            Path f = file(dataDir, relation, p.getLeftAttribute().getName());
+            if (!Files.isReadable(f)) {
+                return null;
+            }
+            files.add(f);
+        }
+        CompressedBitmap rows = null;
+        for (int i = 0; i < files.size(); i++) {
+            CompressedBitmap b = load(files.get(i)).matching(predicates.get(i));
+            rows = (rows == null) ? b : rows.and(b);
+            if (rows.cardinality() == 0) {
+                break;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 用一次顺序扫描为 attribute 建位图索引并写出。
+     *
+     * @return 不同取值的个数
+     * @throws IllegalArgumentException 取值个数超过 MAX_VALUES 时
+     */
+    public static int build(NamedRelation relation, Attribute attribute, TupleIterator rows, Path dataDir) {
+        int column = rows.getSchema().indexOf(attribute);
+        if (column < 0) {
+            throw new IllegalArgumentException("Relation " + relation + " has no attribute " + attribute);
+        }
+        Map<String, CompressedBitmap> bitmaps = new LinkedHashMap<>();
+        long n = 0;
+        try {
+            rows.open();
+            String[] t;
+            while ((t = rows.next()) != null) {
+                CompressedBitmap b = bitmaps.get(t[column]);
+                if (b == null) {
+                    if (bitmaps.size() == MAX_VALUES) {
+                        throw new IllegalArgumentException("Attribute " + relation + "." + attribute
+                                + " has more than " + MAX_VALUES + " values; use a B+-tree index instead");
+                    }
+                    b = new CompressedBitmap();
+                    bitmaps.put(t[column], b);
+                }
+                b.add(n++);
+            }
+        } finally {
+            rows.close();
+        }
+
+        Path path = file(dataDir, relation, attribute.getName());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(n);
+            out.writeInt(bitmaps.size());
+            for (Map.Entry<String, CompressedBitmap> e : bitmaps.entrySet()) {
+                out.writeUTF(e.getKey());
+                e.getValue().write(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write bitmap index " + path, e);
+        }
+        return bitmaps.size();
+    }
+
+    /**
+     * 载入一个位图索引文件。
+     */
+    public static BitmapIndex load(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("Bitmap index " + path + " has a bad magic number");
+            }
+            long rows = in.readLong();
+            int values = in.readInt();
+            Map<String, CompressedBitmap> bitmaps = new LinkedHashMap<>();
+            for (int i = 0; i < values; i++) {
+                String v = in.readUTF();
+                bitmaps.put(v, CompressedBitmap.read(in));
+            }
+            return new BitmapIndex(rows, bitmaps);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read bitmap index " + path, e);
+        }
+    }
+
+    /**
+     * 为目录中声明的所有位图索引构建索引文件，数据按执行器的存储优先级读取。
+     * 用法：java sjdb.BitmapIndex &lt;cat.txt&gt;
+     */
+    public static void main(String[] args) throws Exception {
+        Catalogue cat = new Catalogue();
+        new CatalogueParser(args[0], cat).parse();
+        Path dataDir = Paths.get(args[0]).toAbsolutePath().getParent();
+        Executor exec = new Executor(dataDir);
+        for (NamedRelation rel : cat.getRelations()) {
+            if (rel.getBitmapIndexes().isEmpty()) {
+                continue;
+            }
+            Scan scan = new Scan(rel);
+            if (!exec.hasData(scan)) {
+                System.err.println(rel + ": no data files");
+                continue;
+            }
+            for (String attr : rel.getBitmapIndexes()) {
+                int n = build(rel, new Attribute(attr), exec.build(scan), dataDir);
+                System.out.println(rel + "." + attr + ": " + n + " values -> " + file(dataDir, rel, attr));
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements a bitmap index scan: it feeds into a query plan
+ * the tuples of a NamedRelation that satisfy a conjunction of constant
+ * predicates, each answered by a compressed bitmap index. The bitmaps are
+ * combined with AND (and with OR across values for range predicates)
+ * before any tuple data is read.
+ */
+public class BitmapScan extends Scan {
+	/**
+	 * The constant predicates answered by bitmap indexes
+	 */
+	private List<Predicate> predicates;
+
+	/**
+	 * Create a new bitmap index scan of a given named relation
+	 * @param relation Named relation to be scanned
+	 * @param predicates Constant predicates on attributes with bitmap indexes
+	 */
+	public BitmapScan(NamedRelation relation, List<Predicate> predicates) {
+		super(relation);
+		for (Predicate p : predicates) {
+			if (!p.comparesValue()) {
+				throw new IllegalArgumentException("Bitmap scan needs constant predicates: " + p);
+			}
+		}
+		this.predicates = predicates;
+	}
+
+	/**
+	 * Return the predicates answered by the bitmap indexes
+	 * @return Constant predicates, all of which must hold
+	 */
+	public List<Predicate> getPredicates() {
+		return this.predicates;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("BITMAP [");
+		for (int i = 0; i < this.predicates.size(); i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+			sb.append(this.predicates.get(i).toString());
+		}
+		return sb.append("] (").append(super.toString()).append(")").toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#accept(sjdb.OperatorVisitor)
+	 */
+	@Override
+	public void accept(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+}
@@ -0,0 +1,38 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 透传哈希连接构建侧的元组，同时把连接键插入布隆过滤器（见 {@link BloomFilterIterator}）。
+ */
+public class BloomBuildIterator implements TupleIterator {
+    private final TupleIterator input;
+    private final BloomFilter filter;
+    private final int column;
+
+    public BloomBuildIterator(TupleIterator input, BloomFilter filter, Attribute attribute) {
+        this.input = input;
+        this.filter = filter;
+        this.column = Executor.columnIndex(input.getSchema(), attribute);
+    }
+
+    public void open() {
+        input.open();
+    }
+
+    public String[] next() {
+        String[] t = input.next();
+        if (t != null) {
+            filter.add(t[column]);
+        }
+        return t;
+    }
+
+    public void close() {
+        input.close();
+    }
+
+    public List<Attribute> getSchema() {
+        return input.getSchema();
+    }
+}
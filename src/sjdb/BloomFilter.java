@@ -0,0 +1,99 @@
+package sjdb;
+
+/**
+ * 字符串键上的布隆过滤器，用于旁路信息传递（SIP）：哈希连接构建侧的连接键插入过滤器，
+ * 探测侧的扫描先用它剔除肯定不会匹配的行。
+ *
+ * 位数组长度取 2 的幂；k 个探测位由一个 64 位哈希的高低两半做双重哈希得到。
+ * 只有假阳性、没有假阴性，因此过滤不会丢失任何连接结果。
+ */
+public final class BloomFilter {
+    /** 默认假阳性率 */
+    public static final double DEFAULT_FPP = 0.01;
+    /** 位数组的上限（2^30 位，128 MB） */
+    private static final long MAX_BITS = 1L << 30;
+
+    private final long[] words;
+    private final long mask;
+    private final int hashes;
+    private long added;
+
+    /**
+     * @param expectedKeys 预计插入的键数（取连接构建侧的估计行数即可）
+     * @param fpp          目标假阳性率，0 &lt; fpp &lt; 1
+     */
+    public BloomFilter(long expectedKeys, double fpp) {
+        if (!(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("Invalid false positive rate: " + fpp);
+        }
+        long n = Math.max(1, expectedKeys);
+        double optimal = -n * Math.log(fpp) / (Math.log(2) * Math.log(2));
+        long bits = 64;
+        while (bits < optimal && bits < MAX_BITS) {
+            bits <<= 1;
+        }
+        this.words = new long[(int) (bits >>> 6)];
+        this.mask = bits - 1;
+        this.hashes = (int) Math.max(1, Math.min(16, Math.round((double) bits / n * Math.log(2))));
+    }
+
+    public void add(String key) {
+        long h = hash64(key);
+        long h1 = h, h2 = (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        added++;
+    }
+
+    /**
+     * @return false 表示 key 肯定没有插入过；true 表示可能插入过
+     */
+    public boolean mightContain(String key) {
+        long h = hash64(key);
+        long h1 = h, h2 = (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 已插入的键数（含重复）
+     */
+    public long getAddedCount() {
+        return added;
+    }
+
+    /**
+     * @return 位数组的字节数
+     */
+    public long sizeInBytes() {
+        return words.length * 8L;
+    }
+
+    /**
+     * FNV-1a 累加各字符后再做 fmix64 混合，使短键的高位也足够随机。
+     */
+    static long hash64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public String toString() {
+        return "bloom(" + (words.length * 64L) + " bits, k=" + hashes + ")";
+    }
+}
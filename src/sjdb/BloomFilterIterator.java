@@ -0,0 +1,70 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 在探测侧扫描之上用布隆过滤器剔除连接键肯定不在构建侧中的行，并统计剔除的行数。
+ *
+ * 过滤器由对应的哈希连接在读取构建侧时填充；哈希连接总是先读完构建侧再打开探测侧，
+ * 因此本迭代器 open 时过滤器已经完整。
+ */
+public class BloomFilterIterator implements TupleIterator {
+    private final TupleIterator input;
+    private final BloomFilter filter;
+    private final Attribute attribute;
+    private final int column;
+    private long checked;
+    private long eliminated;
+
+    /**
+     * @param attribute 连接键在 input 中对应的属性
+     */
+    public BloomFilterIterator(TupleIterator input, BloomFilter filter, Attribute attribute) {
+        this.input = input;
+        this.filter = filter;
+        this.attribute = attribute;
+        this.column = Executor.columnIndex(input.getSchema(), attribute);
+    }
+
+    public void open() {
+        input.open();
+    }
+
+    public String[] next() {
+        String[] t;
+        while ((t = input.next()) != null) {
+            checked++;
+            if (filter.mightContain(t[column])) {
+                return t;
+            }
+            eliminated++;
+        }
+        return null;
+    }
+
+    public void close() {
+        input.close();
+    }
+
+    public List<Attribute> getSchema() {
+        return input.getSchema();
+    }
+
+    /**
+     * @return 经过过滤器检查的行数
+     */
+    public long getCheckedCount() {
+        return checked;
+    }
+
+    /**
+     * @return 被过滤器剔除的行数
+     */
+    public long getEliminatedCount() {
+        return eliminated;
+    }
+
+    public String toString() {
+        return "SIP " + attribute + ": eliminated " + eliminated + " of " + checked + " rows";
+    }
+}
@@ -0,0 +1,238 @@
+package sjdb;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 定长页缓冲池，位于各关系的堆文件（{@link HeapFile}）之前，所有执行共享。
+ *
+ * - 页框数量固定（构造时指定），总内存 = 页框数 × PAGE_SIZE，与数据量无关；
+ * - 被 pin 的页不会被换出，使用者读完后必须 unpin；
+ * - 换出用 clock-sweep：指针循环扫描页框，跳过被 pin 的页，引用位为真则清零放过，否则换出；
+ * - 顺序扫描未命中时一次 I/O 预读后续若干页，预读页引用位为假，若未被用到会最先被换出；
+ * - 命中、未命中、换出与预读页数均有计数。
+ *
+ * 页只读，不处理脏页回写。所有公开方法同步，多个扫描可并发使用同一个池。
+ */
+public class BufferPool {
+    /** 默认页框数（8 MB） */
+    public static final int DEFAULT_PAGES = 1024;
+    /** 顺序扫描默认预读页数（含未命中的那一页） */
+    public static final int DEFAULT_READ_AHEAD = 8;
+    /** 只做一次顺序读入时的页框数：预读不超过池的一半，两倍预读窗口才能整窗预读 */
+    public static final int SEQUENTIAL_PAGES = 2 * DEFAULT_READ_AHEAD;
+    /** 指定共享缓冲池页框数的系统属性，如 -Dsjdb.bufferPages=131072（1 GB） */
+    public static final String PAGES_PROPERTY = "sjdb.bufferPages";
+
+    private final ByteBuffer[] frames;
+    private final PageKey[] keys;
+    private final int[] pins;
+    private final boolean[] referenced;
+    private final Map<PageKey, Integer> table = new HashMap<>();
+    private final ByteBuffer readBuffer;
+    private int hand;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long prefetched;
+
+    public BufferPool(int pages) {
+        this(pages, DEFAULT_READ_AHEAD);
+    }
+
+    /**
+     * @return 系统属性 {@value #PAGES_PROPERTY} 指定的页框数，未指定时为 DEFAULT_PAGES
+     */
+    public static int configuredPages() {
+        String value = System.getProperty(PAGES_PROPERTY);
+        if (value == null) {
+            return DEFAULT_PAGES;
+        }
+        try {
+            int pages = Integer.parseInt(value.trim());
+            if (pages >= 1) {
+                return pages;
+            }
+        } catch (NumberFormatException e) {
+            // 与非正数一并报错
+        }
+        throw new IllegalArgumentException("Invalid " + PAGES_PROPERTY + ": " + value);
+    }
+
+    /**
+     * @param pages     页框数
+     * @param readAhead 顺序扫描一次读入的最大页数
+     */
+    public BufferPool(int pages, int readAhead) {
+        if (pages < 1 || readAhead < 1) {
+            throw new IllegalArgumentException("Invalid buffer pool size " + pages + " / read-ahead " + readAhead);
+        }
+        frames = new ByteBuffer[pages];
+        keys = new PageKey[pages];
+        pins = new int[pages];
+        referenced = new boolean[pages];
+        for (int i = 0; i < pages; i++) {
+            frames[i] = ByteBuffer.allocate(SlottedPage.PAGE_SIZE);
+        }
+        // 预读不超过池的一半，避免一次预读冲掉其他扫描的工作集
+        readBuffer = ByteBuffer.allocate(Math.min(readAhead, Math.max(1, pages / 2)) * SlottedPage.PAGE_SIZE);
+    }
+
+    /**
+     * 随机访问：pin 一页，不预读。
+     */
+    public ByteBuffer pin(HeapFile file, int page) {
+        return pin(file, page, 1);
+    }
+
+    /**
+     * pin 一页并返回其缓冲（只应使用绝对位置读取）。未命中时从 page 起一次读入至多 readAhead 页，
+     * 后续页作为预读放入池中但不 pin。
+     *
+     * @throws IllegalStateException 所有页框都被 pin 时
+     */
+    public synchronized ByteBuffer pin(HeapFile file, int page, int readAhead) {
+        PageKey key = new PageKey(file.getPath(), page);
+        Integer f = table.get(key);
+        if (f != null) {
+            hits++;
+            pins[f]++;
+            referenced[f] = true;
+            return frames[f];
+        }
+        misses++;
+
+        readBuffer.clear();
+        readBuffer.limit(Math.min(readAhead * SlottedPage.PAGE_SIZE, readBuffer.capacity()));
+        int got = file.readPages(page, readBuffer);
+        if (got == 0) {
+            throw new IllegalArgumentException("Page " + page + " is beyond the end of " + file);
+        }
+
+        int target = victim();
+        if (target < 0) {
+            throw new IllegalStateException("Buffer pool exhausted: all " + frames.length + " pages are pinned");
+        }
+        install(target, key, 0);
+        pins[target] = 1;
+        referenced[target] = true;
+
+        for (int i = 1; i < got; i++) {
+            PageKey next = new PageKey(file.getPath(), page + i);
+            if (table.containsKey(next)) {
+                continue;
+            }
+            int v = victim();
+            if (v < 0) {
+                break;
+            }
+            install(v, next, i);
+            referenced[v] = false;
+            prefetched++;
+        }
+        return frames[target];
+    }
+
+    /**
+     * 释放一次 pin。
+     */
+    public synchronized void unpin(HeapFile file, int page) {
+        Integer f = table.get(new PageKey(file.getPath(), page));
+        if (f == null || pins[f] == 0) {
+            throw new IllegalStateException("Page " + page + " of " + file + " is not pinned");
+        }
+        pins[f]--;
+    }
+
+    /**
+     * clock-sweep 选出可替换的页框；两圈内找不到说明全部被 pin。
+     */
+    private int victim() {
+        for (int step = 0; step < 2 * frames.length; step++) {
+            int f = hand;
+            hand = (hand + 1) % frames.length;
+            if (pins[f] > 0) {
+                continue;
+            }
+            if (keys[f] == null) {
+                return f;
+            }
+            if (referenced[f]) {
+                referenced[f] = false;
+                continue;
+            }
+            table.remove(keys[f]);
+            keys[f] = null;
+            evictions++;
+            return f;
+        }
+        return -1;
+    }
+
+    private void install(int f, PageKey key, int index) {
+        ByteBuffer src = readBuffer.duplicate();
+        src.position(index * SlottedPage.PAGE_SIZE);
+        src.limit(src.position() + SlottedPage.PAGE_SIZE);
+        frames[f].clear();
+        frames[f].put(src);
+        frames[f].clear();
+        keys[f] = key;
+        table.put(key, f);
+    }
+
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return 因预读而载入的页数
+     */
+    public synchronized long getPrefetched() {
+        return prefetched;
+    }
+
+    public synchronized String toString() {
+        return "buffer pool " + frames.length + " pages: " + hits + " hits, " + misses + " misses, "
+                + evictions + " evictions, " + prefetched + " prefetched";
+    }
+
+    /**
+     * 页标识：堆文件路径 + 页号。
+     */
+    private static final class PageKey {
+        final Path file;
+        final int page;
+
+        PageKey(Path file, int page) {
+            this.file = file;
+            this.page = page;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof PageKey)) {
+                return false;
+            }
+            PageKey k = (PageKey) o;
+            return page == k.page && file.equals(k.file);
+        }
+
+        public int hashCode() {
+            return file.hashCode() * 31 + page;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package sjdb;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 /**
  * This class contains the system catalogue for the database; it
@@ -14,33 +17,88 @@ import java.util.HashMap;
  * 
  * Note that any statistical information about named relations or
  * the attributes therein is stored on the relations or attributes,
- * and not in the catalogue.
+ * and not in the catalogue. The catalogue does, however, keep a
+ * statistics version per relation which is bumped whenever the
+ * relation, its attributes or its indexes change, so that cached
+ * plans depending on the old statistics can be recognised as stale.
+ * 
+ * The directory is copy-on-write: every change builds the next version
+ * from copies of the maps (and of any relation it changes) and publishes
+ * it as an immutable CatalogueSnapshot, so readers never lock and never
+ * see a half-made change, and relations already handed out are never
+ * modified. Changes grouped with update() are published together, which
+ * also keeps the cost of copying to once per group. Lookups on the
+ * catalogue itself read the latest snapshot; take one snapshot() to keep
+ * a consistent view across several lookups.
+ * 
+ * Subclasses may materialise relations on demand (see MappedCatalogue):
+ * lookups that miss the directory fall back to loadRelation() and
+ * loadAttribute(), whose results are shared by all versions.
  * 
  * @author nmg
  *
  */
 public class Catalogue {
 	
-	private HashMap<String, NamedRelation> relations;
-	private HashMap<String, Attribute> attributes;
+	private volatile CatalogueSnapshot current;
+	/** The version being built by update(), or null outside update() */
+	private CatalogueSnapshot.Draft draft;
 
 
 	public Catalogue() {
-		this.relations = new HashMap<String, NamedRelation>();
-		this.attributes = new HashMap<String, Attribute>();
+		this.current = new CatalogueSnapshot(this, 0, Collections.emptyMap(),
+				Collections.emptyMap(), Collections.emptyMap());
+	}
+	
+	/**
+	 * Apply a group of changes (calls to the create methods on this
+	 * catalogue) and publish them as one new version: readers see either
+	 * none or all of them. Other writers wait until the group is done;
+	 * lookups made within the group still see the last published version.
+	 * 
+	 * @param changes
+	 */
+	public synchronized void update(Runnable changes) {
+		if (draft != null) {
+			changes.run();
+			return;
+		}
+		draft = current.draft();
+		try {
+			changes.run();
+			current = draft.publish();
+		} finally {
+			draft = null;
+		}
+	}
+	
+	/**
+	 * Return the latest published version of the directory.
+	 * 
+	 * @return
+	 */
+	public CatalogueSnapshot snapshot() {
+		return current;
 	}
 	
 	/**
 	 * Create a new NamedRelation with the specified name and size and 
 	 * add it to the directory.
 	 * 
+	 * Nothing is returned: the next change to the relation (such as
+	 * createAttribute) publishes a modified copy, so a reference taken
+	 * now would not see it. Callers fetch the relation with
+	 * getRelation() once all of its changes have been made.
+	 * 
 	 * @param relName
 	 * @param size
 	 */
-	public NamedRelation createRelation(String relName, int size) {
+	public void createRelation(String relName, long size) {
 		NamedRelation reln = new NamedRelation(relName, size);
-		relations.put(relName, reln);
-		return reln;
+		update(() -> {
+			draft.put(reln, Collections.emptyList());
+			draft.touch(relName);
+		});
 	}
 	
 	/**
@@ -48,18 +106,199 @@ public class Catalogue {
 	 * values, add it to the directory and associate it with the specified 
 	 * NamedRelation.
 	 * 
+	 * The Attribute returned is the one created; attaching a sketch later
+	 * (setSketch) puts a new Attribute in its place in later versions.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @return
+	 */
+	public Attribute createAttribute(String relName, String attName, long values) {
+		return createAttribute(relName, attName, values, null, null);
+	}
+	
+	/**
+	 * Create a new Attribute carrying distribution synopses (either may be
+	 * null), add it to the directory and associate it with the specified
+	 * NamedRelation.
+	 * 
 	 * @param relName
 	 * @param attName
 	 * @param values
+	 * @param mcv
+	 * @param histogram
 	 * @return
 	 */
-	public Attribute createAttribute(String relName, String attName, int values) {
-		Attribute attr = new Attribute(attName, values);
-		attributes.put(attName, attr);
-		relations.get(relName).addAttribute(attr);
+	public Attribute createAttribute(String relName, String attName, long values,
+			MostCommonValues mcv, Histogram histogram) {
+		Attribute attr = new Attribute(attName, values, mcv, histogram);
+		update(() -> {
+			NamedRelation reln = draft.writable(relName);
+			if (reln == null) {
+				throw new IllegalArgumentException("Cannot add attribute " + attName + " to unknown relation " + relName);
+			}
+			draft.putAttribute(attr);
+			reln.addAttribute(attr);
+			draft.touch(relName);
+		});
 		return attr;
 	}
 	
+	/**
+	 * Declare a B+-tree secondary index on an existing attribute of the
+	 * specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 */
+	public void createIndex(String relName, String attName) {
+		update(() -> {
+			writableAttribute(relName, attName).addIndex(attName);
+			draft.touch(relName);
+		});
+	}
+	
+	/**
+	 * Declare a compressed bitmap index on an existing attribute of the
+	 * specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 */
+	public void createBitmapIndex(String relName, String attName) {
+		update(() -> {
+			writableAttribute(relName, attName).addBitmapIndex(attName);
+			draft.touch(relName);
+		});
+	}
+	
+	/**
+	 * Attach a distinct-value sketch to an existing attribute of the
+	 * specified NamedRelation, and to its directory entry if the entry
+	 * belongs to that relation.
+	 *
+	 * @param relName
+	 * @param attName
+	 * @param sketch
+	 */
+	public void setSketch(String relName, String attName, HyperLogLog sketch) {
+		setSketch(relName, attName, a -> new Attribute(a, sketch));
+	}
+
+	/**
+	 * Attach the sketches in a sketch file to the attributes they belong
+	 * to, as one new version, without reading the sketches themselves.
+	 * Entries for relations or attributes that no longer exist are ignored.
+	 * 
+	 * @param sketches
+	 */
+	void attachSketches(CatalogueSketches sketches) {
+		update(() -> {
+			for (int i = 0; i < sketches.size(); i++) {
+				String relName = sketches.relation(i);
+				String attName = sketches.attribute(i);
+				NamedRelation reln = snapshot().relation(relName);
+				if (reln != null && reln.getAttributes().contains(new Attribute(attName))) {
+					CatalogueSketches.Entry stored = sketches.entry(i);
+					setSketch(relName, attName, a -> new Attribute(a, stored));
+				}
+			}
+		});
+	}
+
+	private void setSketch(String relName, String attName, UnaryOperator<Attribute> withSketch) {
+		update(() -> {
+			NamedRelation reln = draft.writable(relName);
+			List<Attribute> attrs = (reln == null) ? null : reln.getAttributes();
+			int i = (attrs == null) ? -1 : attrs.indexOf(new Attribute(attName));
+			if (i < 0) {
+				throw new IllegalArgumentException("Cannot attach a sketch to unknown attribute "
+						+ relName + "." + attName);
+			}
+			Attribute old = attrs.get(i);
+			Attribute dir = draft.attribute(attName);
+			if (CatalogueSnapshot.isEntryFor(reln, old, dir)) {
+				draft.putAttribute(withSketch.apply(dir));
+			}
+			// the relation is a fresh copy, so its attribute list may be changed in place
+			attrs.set(i, withSketch.apply(old));
+			draft.touch(relName);
+		});
+	}
+
+	/**
+	 * Return the relation holding an attribute that is about to be indexed,
+	 * ready for changing.
+	 */
+	private NamedRelation writableAttribute(String relName, String attName) {
+		NamedRelation reln = draft.writable(relName);
+		if (reln == null || !reln.getAttributes().contains(new Attribute(attName))) {
+			throw new IllegalArgumentException("Cannot index unknown attribute " + relName + "." + attName);
+		}
+		return reln;
+	}
+	
+	/**
+	 * Add a NamedRelation built outside the catalogue, with its attributes
+	 * and index declarations already in place, to the directory along
+	 * with the directory entries for its attributes (see
+	 * ParallelCatalogueParser). This is equivalent to createRelation()
+	 * followed by createAttribute() and createIndex() for each attribute.
+	 * 
+	 * @param reln
+	 * @param attrs
+	 */
+	void register(NamedRelation reln, List<Attribute> attrs) {
+		update(() -> {
+			draft.put(reln, attrs);
+			draft.touch(reln.toString());
+		});
+	}
+	
+	/**
+	 * Replace the tuple count and attribute statistics of a relation with
+	 * ones computed by a scan (see Analyser), applied to the relation as
+	 * it is in the current version: index declarations, and attributes the
+	 * scan did not cover, are kept as they are now, so changes committed
+	 * while the scan ran are not lost. Statistics for attributes the
+	 * relation no longer has are ignored, as is a relation that no longer
+	 * exists.
+	 * 
+	 * @param stats the relation's new tuple count and attribute statistics
+	 */
+	void updateStatistics(NamedRelation stats) {
+		update(() -> {
+			String relName = stats.toString();
+			NamedRelation reln = draft.writable(relName);
+			if (reln == null) {
+				return;
+			}
+			NamedRelation updated = new NamedRelation(relName, stats.getTupleCount());
+			List<Attribute> entries = new ArrayList<Attribute>();
+			for (Attribute old : reln.getAttributes()) {
+				int i = stats.getAttributes().indexOf(old);
+				if (i < 0) {
+					updated.addAttribute(old);
+					continue;
+				}
+				Attribute attr = stats.getAttributes().get(i);
+				updated.addAttribute(attr);
+				if (CatalogueSnapshot.isEntryFor(reln, old, draft.attribute(old.getName()))) {
+					entries.add(attr);
+				}
+			}
+			for (String a : reln.getIndexes()) {
+				updated.addIndex(a);
+			}
+			for (String a : reln.getBitmapIndexes()) {
+				updated.addBitmapIndex(a);
+			}
+			draft.put(updated, entries);
+			draft.touch(relName);
+		});
+	}
+	
 	/**
 	 * Return the NamedRelation with the specified name.
 	 * 
@@ -67,13 +306,7 @@ public class Catalogue {
 	 * @return
 	 */
 	public NamedRelation getRelation(String name) throws DatabaseException {
-		NamedRelation reln = relations.get(name);
-		
-		if (reln==null) {
-			throw new DatabaseException("Named relation " + name + " not found");
-		}
-		
-		return reln;
+		return current.getRelation(name);
 	}
 	
 	/**
@@ -83,12 +316,65 @@ public class Catalogue {
 	 * @return
 	 */
 	public Attribute getAttribute(String name) throws DatabaseException {
-		Attribute attr = attributes.get(name);
-		
-		if (attr==null) {
-			throw new DatabaseException("Attribute " + name + " not found");
-		}
-		
-		return attr;
+		return current.getAttribute(name);
+	}
+
+	/**
+	 * Return all NamedRelations in the directory, ordered by name.
+	 * 
+	 * @return
+	 */
+	public List<NamedRelation> getRelations() {
+		return current.getRelations();
+	}
+
+	/**
+	 * Hook for catalogues that materialise relations on demand.
+	 * 
+	 * @param name
+	 * @return the relation, or null if there is none of that name
+	 */
+	NamedRelation loadRelation(String name) {
+		return null;
+	}
+
+	/**
+	 * Hook for catalogues that materialise relations on demand.
+	 * 
+	 * @param name
+	 * @return the attribute, or null if there is none of that name
+	 */
+	Attribute loadAttribute(String name) {
+		return null;
+	}
+
+	/**
+	 * Hook for catalogues that materialise relations on demand.
+	 * 
+	 * @return every relation the catalogue can materialise
+	 */
+	List<NamedRelation> loadAll() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Return the catalogue-wide statistics version, which increases
+	 * whenever any relation's statistics change.
+	 * 
+	 * @return
+	 */
+	public long getStatsVersion() {
+		return current.getVersion();
+	}
+
+	/**
+	 * Return the statistics version of the named relation, or 0 if no
+	 * relation of that name has been created.
+	 * 
+	 * @param relName
+	 * @return
+	 */
+	public long getStatsVersion(String relName) {
+		return current.getStatsVersion(relName);
 	}
 }
@@ -0,0 +1,220 @@
+package sjdb;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 系统目录的二进制快照（由 {@link MappedCatalogue} 映射后按需读取）：
+ *
+ * <pre>
+ *   头部   MAGIC(4) FORMAT(4) relations(4) attributes(4) relDir(8) attrDir(8)
+ *   记录   每个关系一条：name size(8) count(4) [属性]...
+ *          属性：name values(8) flags(1) [mcv: n(4) (value freq(8))...] [hist: n(4) bound...]
+ *   relDir  relations 个记录偏移(8)，按关系名排序
+ *   attrDir attributes 个 (记录偏移(8), 属性偏移(8), values(8))，按属性名排序
+ * </pre>
+ * 字符串为 2 字节长度加 UTF-8 字节；两个目录都按 UTF-8 字节的无符号字典序排序，
+ * 查找时直接比较映射区中的字节，不解码。同名属性出现在多个关系中时，
+ * attrDir 指向最后创建的那个，与 Catalogue.getAttribute 一致；
+ * 关系中保存的是按行数截断后的值个数，attrDir 另记目录中未截断的值个数。
+ */
+public class CatalogueImage {
+    static final int MAGIC = 0x534A4343;          // "SJCC"
+    static final int FORMAT = 2;
+    static final int HEADER = 32;
+
+    static final int INDEX = 1;
+    static final int BITMAP = 2;
+    static final int MCV = 4;
+    static final int HIST = 8;
+
+    private CatalogueImage() {
+    }
+
+    /**
+     * 把目录的当前版本写成二进制快照。
+     */
+    public static void write(Catalogue catalogue, Path file) {
+        CatalogueSnapshot snapshot = catalogue.snapshot();
+        List<NamedRelation> relations = snapshot.getRelations();
+        long[] relOffsets = new long[relations.size()];
+        List<byte[]> attrNames = new ArrayList<>();
+        List<long[]> attrEntries = new ArrayList<>();
+
+        try {
+            // 记录区先写进内存，得到各记录的偏移后再连同头部与两个目录一起写出
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            DataOutputStream records = new DataOutputStream(buf);
+            for (int r = 0; r < relations.size(); r++) {
+                NamedRelation rel = relations.get(r);
+                relOffsets[r] = HEADER + records.size();
+                writeString(records, rel.toString());
+                records.writeLong(rel.getTupleCount());
+                records.writeInt(rel.getAttributes().size());
+                for (Attribute a : rel.getAttributes()) {
+                    long at = HEADER + records.size();
+                    Attribute entry = snapshot.directoryEntry(rel, a);
+                    if (entry != null) {
+                        attrNames.add(a.getName().getBytes(StandardCharsets.UTF_8));
+                        attrEntries.add(new long[] { relOffsets[r], at, entry.getValueCount() });
+                    }
+                    writeAttribute(records, rel, a);
+                }
+                if (records.size() < 0) {
+                    throw new IllegalStateException("Catalogue image over 2 GB");
+                }
+            }
+            long relDir = HEADER + buf.size();
+            long attrDir = relDir + 8L * relations.size();
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(relations.size());
+                out.writeInt(attrNames.size());
+                out.writeLong(relDir);
+                out.writeLong(attrDir);
+                buf.writeTo(out);
+                for (int i : sortedOrder(relations)) {
+                    out.writeLong(relOffsets[i]);
+                }
+                Integer[] attrOrder = new Integer[attrNames.size()];
+                for (int i = 0; i < attrOrder.length; i++) {
+                    attrOrder[i] = i;
+                }
+                Arrays.sort(attrOrder, (x, y) -> compare(attrNames.get(x), attrNames.get(y)));
+                for (int i : attrOrder) {
+                    out.writeLong(attrEntries.get(i)[0]);
+                    out.writeLong(attrEntries.get(i)[1]);
+                    out.writeLong(attrEntries.get(i)[2]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write catalogue image " + file, e);
+        }
+    }
+
+    private static void writeAttribute(DataOutputStream out, NamedRelation rel, Attribute a) throws IOException {
+        writeString(out, a.getName());
+        out.writeLong(a.getValueCount());
+        MostCommonValues mcv = a.getMostCommonValues();
+        Histogram hist = a.getHistogram();
+        int flags = (rel.hasIndex(a) ? INDEX : 0) | (rel.hasBitmapIndex(a) ? BITMAP : 0)
+                | (mcv != null ? MCV : 0) | (hist != null ? HIST : 0);
+        out.writeByte(flags);
+        if (mcv != null) {
+            out.writeInt(mcv.size());
+            for (Map.Entry<String, Double> e : mcv.getFrequencies().entrySet()) {
+                writeString(out, e.getKey());
+                out.writeDouble(e.getValue());
+            }
+        }
+        if (hist != null) {
+            String[] bounds = hist.getBounds();
+            out.writeInt(bounds.length);
+            for (String b : bounds) {
+                writeString(out, b);
+            }
+        }
+    }
+
+    private static Integer[] sortedOrder(List<NamedRelation> relations) {
+        byte[][] names = new byte[relations.size()][];
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = relations.get(i).toString().getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> compare(names[x], names[y]));
+        return order;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xFFFF) {
+            throw new IllegalArgumentException("Name too long for catalogue image: " + s.substring(0, 32) + "...");
+        }
+        out.writeShort(b.length);
+        out.write(b);
+    }
+
+    /**
+     * UTF-8 字节的无符号字典序。
+     */
+    static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    /**
+     * 比较 map 中 pos 处的长度前缀字符串与 key 的 UTF-8 字节（无符号字典序），不解码。
+     */
+    static int compareAt(ByteBuffer map, int pos, byte[] key) {
+        int len = map.getShort(pos) & 0xFFFF;
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = Integer.compare(map.get(pos + 2 + i) & 0xFF, key[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(len, key.length);
+    }
+
+    /**
+     * 打开目录文件：以 MAGIC 开头的是二进制快照（映射后按需读取），否则按 cat.txt 文本格式并行解析。
+     * 旁边有草图文件（见 {@link CatalogueSketches}）时一并映射，草图在第一次使用时才读取；
+     * 二进制快照的关系仍只在查找时物化。
+     *
+     * 文本目录由 ParallelCatalogueParser 解析：格式错误时抛出 IllegalArgumentException
+     * （消息指明出错的字节位置），不再像 CatalogueParser 那样打印错误后只保留出错行之前的关系。
+     *
+     * @throws IllegalArgumentException 文本目录格式错误
+     */
+    public static Catalogue open(String file) throws IOException {
+        Path path = Paths.get(file);
+        boolean image;
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] head = in.readNBytes(4);
+            image = head.length == 4 && ByteBuffer.wrap(head).getInt() == MAGIC;
+        }
+        Catalogue cat;
+        if (image) {
+            cat = new MappedCatalogue(path);
+        } else {
+            cat = new Catalogue();
+            new ParallelCatalogueParser(file, cat).parse();
+        }
+        CatalogueSketches.load(cat, CatalogueSketches.sidecar(path));
+        return cat;
+    }
+
+    /**
+     * 把 cat.txt 转成二进制快照，草图文件随之复制到快照旁。
+     * 用法：java sjdb.CatalogueImage &lt;cat.txt&gt; &lt;快照文件&gt;
+     */
+    public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
+        Catalogue cat = new Catalogue();
+        new ParallelCatalogueParser(args[0], cat).parse();
+        CatalogueSketches.load(cat, CatalogueSketches.sidecar(Paths.get(args[0])));
+        long parsed = System.nanoTime();
+        write(cat, Paths.get(args[1]));
+        CatalogueSketches.write(cat.snapshot(), CatalogueSketches.sidecar(Paths.get(args[1])));
+        System.out.printf("%d relations: parsed in %.1f ms, image written in %.1f ms (%d bytes)%n",
+                cat.getRelations().size(), (parsed - start) / 1e6, (System.nanoTime() - parsed) / 1e6,
+                Files.size(Paths.get(args[1])));
+    }
+}
@@ -10,6 +10,16 @@ import java.io.*;
  * 
  * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
  * 
+ * Each attribute may carry optional distribution synopses after its value
+ * count, separated by commas:
+ * 
+ * <attr name>,<value count>,mcv=<value>/<fraction>;...,hist=<b0>;<b1>;...;<bk>
+ * 
+ * where mcv lists the most common values with their fraction of the tuples,
+ * and hist gives the bucket bounds of an equi-depth histogram. The bare
+ * option index declares a B+-tree secondary index on the attribute, and
+ * bitmap declares a compressed bitmap index (for low-cardinality attributes).
+ * 
  * @author nmg
  */
 public class CatalogueParser {
@@ -30,21 +40,27 @@ public class CatalogueParser {
 		}
 	}
 	
+	/**
+	 * Parse the whole file; the relations read are published in the
+	 * catalogue as one new version.
+	 */
 	public void parse() {
-		String line;
+		this.catalogue.update(() -> {
+			String line;
 
-		try {
-			while ((line = this.read.readLine()) != null) {
-				parseRelation(line.split(":", 0));
+			try {
+				while ((line = this.read.readLine()) != null) {
+					parseRelation(line.split(":", 0));
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		});
 	}
 	
 	private void parseRelation(String[] parts) {
 		String reln = parts[0];
-		int size = Integer.decode(parts[1]).intValue();
+		long size = Long.decode(parts[1]).longValue();
 		
 		catalogue.createRelation(reln, size);
 		
@@ -55,8 +71,33 @@ public class CatalogueParser {
 
 	private void parseAttribute(String reln, String[] parts) {
 		String attr = parts[0];
-		int values = Integer.decode(parts[1]).intValue();
+		long values = Long.decode(parts[1]).longValue();
+		MostCommonValues mcv = null;
+		Histogram hist = null;
+		boolean index = false;
+		boolean bitmap = false;
 		
-		catalogue.createAttribute(reln, attr, values);
+		for (int i = 2; i < parts.length; i++) {
+			if (parts[i].startsWith("mcv=")) {
+				mcv = MostCommonValues.parse(parts[i].substring(4));
+			} else if (parts[i].startsWith("hist=")) {
+				hist = Histogram.parse(parts[i].substring(5));
+			} else if (parts[i].equals("index")) {
+				index = true;
+			} else if (parts[i].equals("bitmap")) {
+				bitmap = true;
+			} else {
+				throw new IllegalArgumentException("Unknown option '" + parts[i]
+						+ "' on attribute " + attr);
+			}
+		}
+		
+		catalogue.createAttribute(reln, attr, values, mcv, hist);
+		if (index) {
+			catalogue.createIndex(reln, attr);
+		}
+		if (bitmap) {
+			catalogue.createBitmapIndex(reln, attr);
+		}
 	}
 }
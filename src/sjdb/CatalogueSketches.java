@@ -0,0 +1,334 @@
+package sjdb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 目录旁的 HyperLogLog 草图文件：&lt;目录文件&gt;.hll，与 cat.txt 或二进制快照放在一起。
+ *
+ * 草图写进 cat.txt 的一行会让目录难以阅读与手工编辑，因此单独存放：
+ *
+ * <pre>
+ *   头部   MAGIC(4) FORMAT(4) count(4) dir(8)
+ *   条目   关系名 属性名 草图（编码见 HyperLogLog.write，低基数的草图为稀疏编码）
+ *   dir    count 个条目偏移(8)，按 (关系名, 属性名) 排序
+ * </pre>
+ * 字符串为 2 字节长度加 UTF-8 字节，排序与查找同 {@link CatalogueImage}：比较映射区中的字节，不解码。
+ *
+ * 打开时只映射文件并读头部；属性只挂上指向条目的 {@link Entry}，草图在第一次 getSketch 时才解码。
+ * CatalogueImage.open 打开目录时若旁边有草图文件就这样挂上（映射的目录在物化关系时才查找），
+ * 目录中已不存在的条目被忽略；Analyser 写回目录时同时重写草图文件。
+ */
+public final class CatalogueSketches {
+    static final int MAGIC = 0x534A484C;          // "SJHL"
+    static final int FORMAT = 2;
+    static final int HEADER = 20;
+
+    private final Path file;
+    private final ByteBuffer map;
+    private final int count;
+    private final int dir;
+
+    /** 文件中的一个草图：第一次 get 时才从映射区解码，之后缓存 */
+    static final class Entry {
+        private final CatalogueSketches file;
+        private final int offset;
+        private HyperLogLog sketch;
+
+        private Entry(CatalogueSketches file, int offset) {
+            this.file = file;
+            this.offset = offset;
+        }
+
+        synchronized HyperLogLog get() {
+            if (sketch == null) {
+                sketch = file.decode(offset);
+            }
+            return sketch;
+        }
+
+        /**
+         * 原样复制编码后的草图，不解码。
+         */
+        void copyTo(DataOutputStream out) throws IOException {
+            file.copy(offset, out);
+        }
+    }
+
+    private CatalogueSketches(Path file) {
+        this.file = file;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Sketch file " + file + " exceeds 2 GB and cannot be mapped");
+            }
+            if (size < HEADER) {
+                throw new IllegalStateException("Sketch file " + file + " is truncated");
+            }
+            this.map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.BIG_ENDIAN);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map sketch file " + file, e);
+        }
+        if (map.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Sketch file " + file + " has a bad magic number");
+        }
+        if (map.getInt(4) != FORMAT) {
+            throw new IllegalStateException("Sketch file " + file + " has unsupported format " + map.getInt(4)
+                    + "; rerun Analyser to rebuild it");
+        }
+        this.count = map.getInt(8);
+        this.dir = (int) map.getLong(12);
+        if (count < 0 || dir < HEADER || dir + 8L * count != map.capacity()) {
+            throw new IllegalStateException("Sketch file " + file + " is truncated");
+        }
+    }
+
+    /**
+     * @return 目录文件对应的草图文件
+     */
+    public static Path sidecar(Path catalogueFile) {
+        return catalogueFile.resolveSibling(catalogueFile.getFileName() + ".hll");
+    }
+
+    /**
+     * 映射草图文件，只读头部。
+     *
+     * @return 文件不存在时为 null
+     */
+    public static CatalogueSketches open(Path file) {
+        return Files.exists(file) ? new CatalogueSketches(file) : null;
+    }
+
+    /**
+     * 把草图文件中的条目挂到目录中对应的属性上（不解码草图）；文件不存在时什么也不做。
+     *
+     * @return 文件中的条目数
+     */
+    public static int load(Catalogue catalogue, Path file) {
+        CatalogueSketches sketches = open(file);
+        if (sketches == null) {
+            return 0;
+        }
+        catalogue.attachSketches(sketches);
+        return sketches.size();
+    }
+
+    /**
+     * @return 文件中的条目数
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return 第 i 个条目（按名字排序）的关系名
+     */
+    String relation(int i) {
+        return readString(entryOffset(i));
+    }
+
+    /**
+     * @return 第 i 个条目（按名字排序）的属性名
+     */
+    String attribute(int i) {
+        int pos = entryOffset(i);
+        return readString(pos + 2 + (map.getShort(pos) & 0xFFFF));
+    }
+
+    /**
+     * @return 第 i 个条目的草图（尚未解码）
+     */
+    Entry entry(int i) {
+        return new Entry(this, entryOffset(i));
+    }
+
+    /**
+     * 按关系名与属性名二分查找条目。
+     *
+     * @return 没有时为 null
+     */
+    Entry find(String relation, String attribute) {
+        byte[] rel = relation.getBytes(StandardCharsets.UTF_8);
+        byte[] att = attribute.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int pos = entryOffset(mid);
+            int c = CatalogueImage.compareAt(map, pos, rel);
+            if (c == 0) {
+                c = CatalogueImage.compareAt(map, pos + 2 + (map.getShort(pos) & 0xFFFF), att);
+            }
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return new Entry(this, pos);
+            }
+        }
+        return null;
+    }
+
+    private int entryOffset(int i) {
+        return (int) map.getLong(dir + 8 * i);
+    }
+
+    /**
+     * 解码 pos 处条目的草图：跳过两个名字后读取。
+     */
+    private HyperLogLog decode(int pos) {
+        ByteBuffer buf = map.duplicate().order(ByteOrder.BIG_ENDIAN);
+        try {
+            buf.position(pos);
+            buf.position(pos + 2 + (buf.getShort() & 0xFFFF));
+            buf.position(buf.position() + 2 + (buf.getShort() & 0xFFFF));
+            return HyperLogLog.read(buf);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalStateException("Sketch file " + file + " is truncated", e);
+        } catch (IllegalStateException e) {
+            throw new IllegalStateException("Sketch file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 复制 pos 处条目的草图编码（精度字节、编码字节及其后的寄存器）。
+     */
+    private void copy(int pos, DataOutputStream out) throws IOException {
+        try {
+            int at = pos + 2 + (map.getShort(pos) & 0xFFFF);
+            at += 2 + (map.getShort(at) & 0xFFFF);
+            byte[] b = new byte[HyperLogLog.encodedLength(map, at)];
+            map.duplicate().position(at).get(b);
+            out.write(b);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalStateException("Sketch file " + file + " is truncated", e);
+        }
+    }
+
+    private String readString(int pos) {
+        byte[] b = new byte[map.getShort(pos) & 0xFFFF];
+        map.duplicate().position(pos + 2).get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 写出快照中全部带草图的属性：先写临时文件再原子替换。没有任何草图时删除已有的草图文件。
+     * 尚未读取的草图直接复制编码，不解码。
+     *
+     * @return 写出的草图个数
+     */
+    public static int write(CatalogueSnapshot snapshot, Path file) {
+        List<byte[][]> keys = new ArrayList<>();
+        List<Attribute> attributes = new ArrayList<>();
+        for (NamedRelation rel : snapshot.getRelations()) {
+            for (Attribute a : rel.getAttributes()) {
+                if (a.hasSketch()) {
+                    keys.add(new byte[][] { rel.toString().getBytes(StandardCharsets.UTF_8),
+                            a.getName().getBytes(StandardCharsets.UTF_8) });
+                    attributes.add(a);
+                }
+            }
+        }
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> {
+            int c = CatalogueImage.compare(keys.get(x)[0], keys.get(y)[0]);
+            return (c != 0) ? c : CatalogueImage.compare(keys.get(x)[1], keys.get(y)[1]);
+        });
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (order.length == 0) {
+                Files.deleteIfExists(file);
+                return 0;
+            }
+            // 条目按序写出并记下偏移，目录跟在条目之后；头部的目录偏移最后回填
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(order.length);
+                out.writeLong(0);
+                long[] offsets = new long[order.length];
+                for (int i = 0; i < order.length; i++) {
+                    offsets[i] = out.size();
+                    byte[][] key = keys.get(order[i]);
+                    writeString(out, key[0]);
+                    writeString(out, key[1]);
+                    Attribute a = attributes.get(order[i]);
+                    Entry stored = a.getStoredSketch();
+                    if (stored != null) {
+                        stored.copyTo(out);
+                    } else {
+                        a.getSketch().write(out);
+                    }
+                    if (out.size() < 0) {
+                        throw new IllegalStateException("Sketch file over 2 GB");
+                    }
+                }
+                long dir = out.size();
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+                out.flush();
+                ByteBuffer header = ByteBuffer.allocate(8).putLong(0, dir);
+                ch.write(header, 12);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return order.length;
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // 已在处理写入失败，忽略清理错误
+            }
+            throw new UncheckedIOException("Cannot write sketches " + file, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, byte[] b) throws IOException {
+        if (b.length > 0xFFFF) {
+            throw new IllegalArgumentException("Name too long for sketch file: " + b.length + " bytes");
+        }
+        out.writeShort(b.length);
+        out.write(b);
+    }
+
+    public String toString() {
+        return file + " [" + count + " sketches]";
+    }
+
+    /**
+     * 打印草图文件中各属性的不同值估计。
+     * 用法：java sjdb.CatalogueSketches &lt;目录文件&gt;
+     */
+    public static void main(String[] args) throws Exception {
+        Catalogue cat = CatalogueImage.open(args[0]);
+        for (NamedRelation rel : cat.getRelations()) {
+            for (Attribute a : rel.getAttributes()) {
+                if (a.hasSketch()) {
+                    System.out.printf("%s.%s: %d values in catalogue, %s%n",
+                            rel, a.getName(), a.getValueCount(), a.getSketch());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable view of the system catalogue as of one version.
+ *
+ * A Catalogue publishes a new snapshot for every change (or group of
+ * changes, see Catalogue.update()); a snapshot, and the NamedRelations and
+ * Attributes reachable from it, are never modified afterwards. Anything that
+ * needs a consistent view across several lookups, such as parsing a query
+ * and optimising the resulting plan, should take one snapshot and use it
+ * throughout. Reads need no locking.
+ *
+ * Relations that a catalogue materialises on demand (see MappedCatalogue)
+ * are not held in the snapshot; lookups that miss fall through to the
+ * catalogue's loader, whose contents never change.
+ *
+ * @author nmg
+ */
+public class CatalogueSnapshot {
+	private final Catalogue catalogue;
+	private final long version;
+	private final Map<String, NamedRelation> relations;
+	private final Map<String, Attribute> attributes;
+	private final Map<String, Long> versions;
+
+	/**
+	 * The maps are taken over by the snapshot and must not be changed by
+	 * the caller afterwards.
+	 */
+	CatalogueSnapshot(Catalogue catalogue, long version, Map<String, NamedRelation> relations,
+			Map<String, Attribute> attributes, Map<String, Long> versions) {
+		this.catalogue = catalogue;
+		this.version = version;
+		this.relations = relations;
+		this.attributes = attributes;
+		this.versions = versions;
+	}
+
+	/**
+	 * Return the NamedRelation with the specified name.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public NamedRelation getRelation(String name) throws DatabaseException {
+		NamedRelation reln = relation(name);
+
+		if (reln==null) {
+			throw new DatabaseException("Named relation " + name + " not found");
+		}
+
+		return reln;
+	}
+
+	/**
+	 * Return the Attribute with the specified name.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public Attribute getAttribute(String name) throws DatabaseException {
+		Attribute attr = attributes.get(name);
+		if (attr == null) {
+			attr = catalogue.loadAttribute(name);
+		}
+
+		if (attr==null) {
+			throw new DatabaseException("Attribute " + name + " not found");
+		}
+
+		return attr;
+	}
+
+	/**
+	 * Return all NamedRelations in the snapshot, ordered by name.
+	 *
+	 * @return
+	 */
+	public List<NamedRelation> getRelations() {
+		Map<String, NamedRelation> all = new HashMap<String, NamedRelation>();
+		for (NamedRelation reln : catalogue.loadAll()) {
+			all.put(reln.toString(), reln);
+		}
+		all.putAll(relations);
+		List<NamedRelation> list = new ArrayList<NamedRelation>(all.values());
+		list.sort((a, b) -> a.toString().compareTo(b.toString()));
+		return list;
+	}
+
+	/**
+	 * Return the catalogue-wide statistics version of this snapshot.
+	 *
+	 * @return
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Return the statistics version of the named relation in this
+	 * snapshot, or 0 if no relation of that name has been created.
+	 *
+	 * @param relName
+	 * @return
+	 */
+	public long getStatsVersion(String relName) {
+		Long v = versions.get(relName);
+		return (v == null) ? 0 : v;
+	}
+
+	/**
+	 * Look up a relation, falling through to the catalogue's loader.
+	 *
+	 * @param name
+	 * @return the relation, or null if unknown
+	 */
+	NamedRelation relation(String name) {
+		NamedRelation reln = relations.get(name);
+		return (reln == null) ? catalogue.loadRelation(name) : reln;
+	}
+
+	/**
+	 * Return the directory entry that an attribute of a relation in this
+	 * snapshot stands for. An attribute name shared by several relations
+	 * names the most recently created one; the relation may also hold a
+	 * copy of the entry with its value count capped at the tuple count
+	 * (see Relation.addAttribute()), which shares the entry's synopses.
+	 *
+	 * @param reln
+	 * @param attr an attribute of reln
+	 * @return the directory entry, or null if the name refers to an
+	 *         attribute of another relation
+	 */
+	Attribute directoryEntry(NamedRelation reln, Attribute attr) {
+		Attribute dir;
+		try {
+			dir = getAttribute(attr.getName());
+		} catch (DatabaseException e) {
+			return null;
+		}
+		return isEntryFor(reln, attr, dir) ? dir : null;
+	}
+
+	/**
+	 * Return true if dir is the directory entry that an attribute of a
+	 * relation stands for: the same object, or the one it is a capped
+	 * copy of.
+	 */
+	static boolean isEntryFor(NamedRelation reln, Attribute attr, Attribute dir) {
+		if (dir == attr) {
+			return true;
+		}
+		return dir != null && dir.getValueCount() > reln.getTupleCount()
+				&& attr.getValueCount() == reln.getTupleCount()
+				&& dir.getMostCommonValues() == attr.getMostCommonValues()
+				&& dir.getHistogram() == attr.getHistogram()
+				&& dir.sketchIdentity() == attr.sketchIdentity();
+	}
+
+	/**
+	 * Start a new version from this one: mutable copies of the directory
+	 * for Catalogue to change and publish.
+	 */
+	Draft draft() {
+		return new Draft(this);
+	}
+
+	/**
+	 * The next version of the catalogue while it is being changed. Relations
+	 * are copied before their first change, so that the ones reachable
+	 * from published snapshots stay untouched.
+	 */
+	static final class Draft {
+		private final Catalogue catalogue;
+		private final Map<String, NamedRelation> relations;
+		private final Map<String, Attribute> attributes;
+		private final Map<String, Long> versions;
+		private final Map<NamedRelation, Boolean> fresh = new IdentityHashMap<NamedRelation, Boolean>();
+		private long version;
+
+		private Draft(CatalogueSnapshot base) {
+			this.catalogue = base.catalogue;
+			this.relations = new HashMap<String, NamedRelation>(base.relations);
+			this.attributes = new HashMap<String, Attribute>(base.attributes);
+			this.versions = new HashMap<String, Long>(base.versions);
+			this.version = base.version;
+		}
+
+		/**
+		 * Add a relation created in this version, replacing any of the
+		 * same name, along with the directory entries for its attributes.
+		 */
+		void put(NamedRelation reln, List<Attribute> attrs) {
+			relations.put(reln.toString(), reln);
+			fresh.put(reln, Boolean.TRUE);
+			for (Attribute a : attrs) {
+				attributes.put(a.getName(), a);
+			}
+		}
+
+		void putAttribute(Attribute attr) {
+			attributes.put(attr.getName(), attr);
+		}
+
+		/**
+		 * Look up a directory entry, falling through to the catalogue's
+		 * loader.
+		 *
+		 * @return the entry, or null if unknown
+		 */
+		Attribute attribute(String name) {
+			Attribute attr = attributes.get(name);
+			return (attr == null) ? catalogue.loadAttribute(name) : attr;
+		}
+
+		/**
+		 * Return the named relation for changing, copying it first if it
+		 * belongs to an earlier version.
+		 *
+		 * @return the relation, or null if unknown
+		 */
+		NamedRelation writable(String name) {
+			NamedRelation reln = relations.get(name);
+			if (reln == null) {
+				reln = catalogue.loadRelation(name);
+			}
+			if (reln == null || fresh.containsKey(reln)) {
+				return reln;
+			}
+			NamedRelation copy = new NamedRelation(reln);
+			relations.put(name, copy);
+			fresh.put(copy, Boolean.TRUE);
+			return copy;
+		}
+
+		/**
+		 * Record a statistics change on the named relation.
+		 */
+		void touch(String relName) {
+			this.version++;
+			versions.put(relName, this.version);
+		}
+
+		CatalogueSnapshot publish() {
+			return new CatalogueSnapshot(catalogue, version, Collections.unmodifiableMap(relations),
+					Collections.unmodifiableMap(attributes), Collections.unmodifiableMap(versions));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把目录写回 cat.txt 文本格式（{@link CatalogueParser} 可读），包括 mcv= / hist= 与 index / bitmap 选项。
+ *
+ * 关系中的属性值个数可能已被行数截断（见 Relation.addAttribute），写出的是目录中未截断的值，
+ * 重新解析后与原目录相同。
+ */
+public final class CatalogueWriter {
+
+    private CatalogueWriter() {
+    }
+
+    /**
+     * 按 order 中的关系名顺序写出，其余关系按名字顺序排在后面；order 中不存在的名字忽略。
+     */
+    public static void write(CatalogueSnapshot snapshot, List<String> order, Writer out) throws IOException {
+        Map<String, NamedRelation> relations = new LinkedHashMap<>();
+        for (String name : order) {
+            try {
+                relations.put(name, snapshot.getRelation(name));
+            } catch (DatabaseException e) {
+                // 已不在目录中
+            }
+        }
+        for (NamedRelation rel : snapshot.getRelations()) {
+            relations.putIfAbsent(rel.toString(), rel);
+        }
+        for (NamedRelation rel : relations.values()) {
+            out.write(line(snapshot, rel));
+            out.write('\n');
+        }
+    }
+
+    /**
+     * 写到文件：先写临时文件再原子替换，写入失败时原文件不变。
+     * 目标文件已存在时保持其中的关系顺序。
+     */
+    public static void write(Catalogue catalogue, Path file) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                write(catalogue.snapshot(), relationOrder(file), out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // 已在处理写入失败，忽略清理错误
+            }
+            throw new UncheckedIOException("Cannot write catalogue " + file, e);
+        }
+    }
+
+    /**
+     * @return 一个关系在目录文件中的一行（不含换行）
+     */
+    static String line(CatalogueSnapshot snapshot, NamedRelation rel) {
+        StringBuilder sb = new StringBuilder(rel.toString()).append(':').append(rel.getTupleCount());
+        for (Attribute a : rel.getAttributes()) {
+            Attribute dir = snapshot.directoryEntry(rel, a);
+            long values = (dir != null) ? dir.getValueCount() : a.getValueCount();
+            sb.append(':').append(a.getName()).append(',').append(values);
+            if (a.getMostCommonValues() != null) {
+                sb.append(",mcv=").append(a.getMostCommonValues().render());
+            }
+            if (a.getHistogram() != null) {
+                sb.append(",hist=").append(a.getHistogram().render());
+            }
+            if (rel.hasIndex(a)) {
+                sb.append(",index");
+            }
+            if (rel.hasBitmapIndex(a)) {
+                sb.append(",bitmap");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return 目录文件中各关系名的出现顺序；文件不存在时为空
+     */
+    static List<String> relationOrder(Path file) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    names.add(line.substring(0, colon));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // 新文件
+        }
+        return names;
+    }
+}
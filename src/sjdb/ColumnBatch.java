@@ -0,0 +1,63 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 向量化执行中的一批数据：按列存放的原始 long 数组 + 选择向量。
+ *
+ * 数值列直接存数值；字符串列存 ValueDictionary 中的编码（encoded[c] 为 true）。
+ * selection 为 null 表示 0..size-1 全部有效，否则只有 selection[0..selected-1] 指向的行有效。
+ * 算子之间传递的 batch 可能被上游复用，下游必须在取下一批之前用完当前批。
+ */
+public class ColumnBatch {
+    /** 默认批大小（行） */
+    public static final int DEFAULT_SIZE = 2048;
+
+    final List<Attribute> schema;
+    final long[][] columns;
+    final boolean[] encoded;
+    int size;
+    int[] selection;
+    int selected;
+
+    /**
+     * 分配一个带自有列缓冲区的批。
+     */
+    ColumnBatch(List<Attribute> schema, boolean[] encoded, int capacity) {
+        this.schema = schema;
+        this.encoded = encoded;
+        this.columns = new long[schema.size()][];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = new long[capacity];
+        }
+    }
+
+    /**
+     * 创建一个不带缓冲区的视图批（列数组由调用方填入，用于 Project）。
+     */
+    ColumnBatch(List<Attribute> schema, boolean[] encoded) {
+        this.schema = schema;
+        this.encoded = encoded;
+        this.columns = new long[schema.size()][];
+    }
+
+    /**
+     * @return 有效行数
+     */
+    int count() {
+        return (selection == null) ? size : selected;
+    }
+
+    /**
+     * @return 第 i 个有效行的物理下标
+     */
+    int row(int i) {
+        return (selection == null) ? i : selection[i];
+    }
+
+    void reset() {
+        size = 0;
+        selection = null;
+        selected = 0;
+    }
+}
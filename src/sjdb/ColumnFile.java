@@ -0,0 +1,236 @@
+package sjdb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 列式存储格式：每个关系一个目录（&lt;数据目录&gt;/&lt;关系名&gt;.cols），每个属性一个文件（&lt;属性名&gt;.col）。
+ *
+ * 文件布局：
+ * <pre>
+ *   LONG 列：   [行数 × 8 字节定长 long]                          [footer]
+ *   STRING 列： [UTF-8 字节堆][(行数 + 1) × 8 字节偏移，相对文件头]   [footer]
+ *   footer：    type(1) rows(8) values(8) dataEnd(8) name mcv hist（均为 writeUTF）
+ *               footerLength(4) MAGIC(4)
+ * </pre>
+ * footer 中保存转换时 cat.txt 的统计量（属性值个数、MCV、直方图），读取端见 {@link MappedColumn}；
+ * {@link #statistics} 不扫描数据即可取回行数与这些统计量（Analyser -footers 用它代替扫描）。
+ * 一列全部是规范十进制整数时用 LONG 定长编码，否则用 STRING。
+ */
+public final class ColumnFile {
+    static final int MAGIC = 0x534A4443;          // "SJDC"
+    static final byte LONG = 1;
+    static final byte STRING = 2;
+    /** footerLength 与 MAGIC 两个 int */
+    static final int TRAILER_BYTES = 8;
+
+    private ColumnFile() {
+    }
+
+    /**
+     * @return 关系的列式存储目录
+     */
+    public static Path directory(Path dataDir, Relation relation) {
+        return dataDir.resolve(relation.toString() + ".cols");
+    }
+
+    /**
+     * @return 属性对应的列文件
+     */
+    public static Path columnFile(Path dir, Attribute attribute) {
+        return dir.resolve(attribute.getName() + ".col");
+    }
+
+    /**
+     * 关系的每个属性都已有列文件时返回 true。
+     */
+    public static boolean exists(Path dataDir, NamedRelation relation) {
+        Path dir = directory(dataDir, relation);
+        for (Attribute a : relation.getAttributes()) {
+            if (!Files.isReadable(columnFile(dir, a))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 不扫描数据，从各列的 footer 读出转换时记录的统计量。
+     *
+     * @return 行数取自 footer、属性按 relation 的顺序带 footer 中的值个数、MCV 与直方图的关系（不含索引声明）
+     * @throws IllegalStateException 列文件与 relation 的属性不对应，或各列行数不一致
+     */
+    public static NamedRelation statistics(Path dataDir, NamedRelation relation) {
+        Path dir = directory(dataDir, relation);
+        List<Attribute> attrs = new ArrayList<>();
+        long rows = -1;
+        for (Attribute a : relation.getAttributes()) {
+            MappedColumn m = new MappedColumn(columnFile(dir, a));
+            if (!m.getAttribute().getName().equals(a.getName())) {
+                throw new IllegalStateException("Column file " + m + " holds attribute " + m.getAttribute().getName()
+                        + ", expected " + a.getName());
+            }
+            if (rows >= 0 && m.getRowCount() != rows) {
+                throw new IllegalStateException("Column " + m + " has " + m.getRowCount() + " rows, expected " + rows);
+            }
+            rows = m.getRowCount();
+            attrs.add(m.getAttribute());
+        }
+        NamedRelation out = new NamedRelation(relation.toString(), Math.max(rows, 0));
+        for (Attribute a : attrs) {
+            out.addAttribute(a);
+        }
+        return out;
+    }
+
+    /**
+     * 把一个关系的元组流写成列式存储，footer 取目录中的统计量。
+     *
+     * @return 写入的行数
+     */
+    public static long write(NamedRelation relation, TupleIterator rows, Path dataDir) {
+        Path dir = directory(dataDir, relation);
+        List<Attribute> attrs = relation.getAttributes();
+        Writer[] writers = new Writer[attrs.size()];
+        long n = 0;
+        try {
+            Files.createDirectories(dir);
+            for (int c = 0; c < writers.length; c++) {
+                writers[c] = new Writer(columnFile(dir, attrs.get(c)));
+            }
+            try {
+                rows.open();
+                String[] t;
+                while ((t = rows.next()) != null) {
+                    for (int c = 0; c < writers.length; c++) {
+                        writers[c].add(t[c]);
+                    }
+                    n++;
+                }
+            } finally {
+                rows.close();
+            }
+            for (int c = 0; c < writers.length; c++) {
+                writers[c].finish(attrs.get(c));
+                writers[c] = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write column store for " + relation, e);
+        } finally {
+            for (Writer w : writers) {
+                if (w != null) {
+                    w.abort();
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 单列写入器。保持 LONG 编码直到遇到第一个非规范整数，之后把已有值转写到字节堆，改用 STRING 编码。
+     * 字节堆直接流式写入目标文件，内存中只保留每行 8 字节（数值或偏移）。
+     */
+    static final class Writer {
+        private final Path file;
+        private final OutputStream out;
+        private boolean numeric = true;
+        private long[] slots = new long[1024];   // LONG：值；STRING：每行起始偏移
+        private int rows;
+        private long heapBytes;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            this.out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+        }
+
+        void add(String value) throws IOException {
+            if (rows == slots.length) {
+                slots = Arrays.copyOf(slots, rows * 2);
+            }
+            if (numeric && ColumnTable.isCanonicalLong(value)) {
+                slots[rows++] = Long.parseLong(value);
+                return;
+            }
+            if (numeric) {
+                numeric = false;
+                for (int i = 0; i < rows; i++) {
+                    long v = slots[i];
+                    slots[i] = heapBytes;
+                    appendHeap(Long.toString(v));
+                }
+            }
+            slots[rows++] = heapBytes;
+            appendHeap(value);
+        }
+
+        private void appendHeap(String value) throws IOException {
+            byte[] b = value.getBytes(StandardCharsets.UTF_8);
+            out.write(b);
+            heapBytes += b.length;
+        }
+
+        void finish(Attribute attribute) throws IOException {
+            DataOutputStream data = new DataOutputStream(out);
+            long dataEnd;
+            if (numeric) {
+                for (int i = 0; i < rows; i++) {
+                    data.writeLong(slots[i]);
+                }
+                dataEnd = (long) rows * 8;
+            } else {
+                for (int i = 0; i < rows; i++) {
+                    data.writeLong(slots[i]);
+                }
+                data.writeLong(heapBytes);
+                dataEnd = heapBytes + ((long) rows + 1) * 8;
+            }
+            int before = data.size();
+            data.writeByte(numeric ? LONG : STRING);
+            data.writeLong(rows);
+            // 值个数不超过实际写入的行数
+            data.writeLong(Math.min(attribute.getValueCount(), rows));
+            data.writeLong(dataEnd);
+            data.writeUTF(attribute.getName());
+            data.writeUTF(attribute.getMostCommonValues() == null ? "" : attribute.getMostCommonValues().render());
+            data.writeUTF(attribute.getHistogram() == null ? "" : attribute.getHistogram().render());
+            data.writeInt(data.size() - before);
+            data.writeInt(MAGIC);
+            data.close();
+            slots = null;
+        }
+
+        void abort() {
+            try {
+                out.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // 已在处理写入失败，忽略清理错误
+            }
+        }
+    }
+
+    /**
+     * 把目录中所有有 CSV 数据的关系转换成列式存储。
+     * 用法：java sjdb.ColumnFile &lt;cat.txt&gt;（CSV 与输出目录均在 cat.txt 同目录）
+     */
+    public static void main(String[] args) throws Exception {
+        Catalogue cat = new Catalogue();
+        new CatalogueParser(args[0], cat).parse();
+        Path dataDir = java.nio.file.Paths.get(args[0]).toAbsolutePath().getParent();
+        for (NamedRelation rel : cat.getRelations()) {
+            if (Files.isReadable(ScanIterator.dataFile(dataDir, rel))) {
+                long n = write(rel, new ScanIterator(rel, dataDir), dataDir);
+                System.out.println(rel + ": " + n + " rows -> " + directory(dataDir, rel));
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package sjdb;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 从列式存储（见 {@link ColumnFile}）扫描一个关系，只映射并读取需要的列。
+ * 输出模式即所读的列，顺序同目录；上层算子按属性在模式中的位置取值，不受裁剪影响。
+ */
+public class ColumnScanIterator implements TupleIterator {
+    private final NamedRelation relation;
+    private final Path dir;
+    private final List<Attribute> columns;
+    private final CompressedBitmap selected;
+    private MappedColumn[] mapped;
+    private long rows;
+    private long pos;
+
+    /**
+     * @param columns 需要读取的列；传 null 表示读取全部列
+     */
+    public ColumnScanIterator(NamedRelation relation, Path dataDir, List<Attribute> columns) {
+        this(relation, dataDir, columns, null);
+    }
+
+    /**
+     * @param selected 只读取位图中置位的行（按行号随机访问）；传 null 表示全部行
+     */
+    public ColumnScanIterator(NamedRelation relation, Path dataDir, List<Attribute> columns,
+                              CompressedBitmap selected) {
+        this.relation = relation;
+        this.dir = ColumnFile.directory(dataDir, relation);
+        this.columns = (columns == null) ? relation.getAttributes() : columns;
+        this.selected = selected;
+    }
+
+    public void open() {
+        mapped = new MappedColumn[columns.size()];
+        rows = -1;
+        for (int c = 0; c < mapped.length; c++) {
+            mapped[c] = new MappedColumn(ColumnFile.columnFile(dir, columns.get(c)));
+            if (rows < 0) {
+                rows = mapped[c].getRowCount();
+            } else if (rows != mapped[c].getRowCount()) {
+                throw new IllegalStateException("Column " + mapped[c] + " has " + mapped[c].getRowCount()
+                        + " rows, expected " + rows);
+            }
+        }
+        if (rows < 0) {
+            // 一列都不需要时仍要给出正确的行数
+            rows = new MappedColumn(ColumnFile.columnFile(dir, relation.getAttributes().get(0))).getRowCount();
+        }
+        pos = 0;
+    }
+
+    public String[] next() {
+        if (selected != null && pos < rows) {
+            pos = selected.nextSetBit(pos);
+            if (pos < 0) {
+                pos = rows;
+            }
+        }
+        if (pos >= rows) {
+            return null;
+        }
+        String[] t = new String[mapped.length];
+        for (int c = 0; c < t.length; c++) {
+            t[c] = mapped[c].getString(pos);
+        }
+        pos++;
+        return t;
+    }
+
+    public void close() {
+        // 映射区随对象回收释放
+        mapped = null;
+    }
+
+    public List<Attribute> getSchema() {
+        return columns;
+    }
+}
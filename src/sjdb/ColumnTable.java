@@ -0,0 +1,177 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 完全驻留内存的列式表：每列一个 long 数组。
+ * 用于没有列式存储的关系的 BatchScan 数据源和连接构建侧的物化结果。
+ */
+public class ColumnTable {
+    final List<Attribute> schema;
+    final boolean[] encoded;
+    long[][] columns;
+    int rows;
+
+    ColumnTable(List<Attribute> schema, boolean[] encoded, int capacity) {
+        this.schema = schema;
+        this.encoded = encoded;
+        this.columns = new long[schema.size()][Math.max(capacity, 16)];
+    }
+
+    /**
+     * 读取一个 CSV 数据文件。每列先假定为数值列，逐字符解析、不切分字符串；
+     * 一旦遇到不是规范整数写法的值，就把该列已读入的部分转成字典编码，之后整列按字符串处理。
+     */
+    static ColumnTable load(Path file, List<Attribute> schema, ValueDictionary dict) {
+        int width = schema.size();
+        ColumnTable table = new ColumnTable(schema, new boolean[width], 1024);
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                table.ensureCapacity(table.rows + 1);
+                int start = 0;
+                for (int c = 0; c < width; c++) {
+                    int end = (c == width - 1) ? line.length() : line.indexOf(',', start);
+                    if (end < 0 || (c == width - 1 && line.indexOf(',', start) >= 0)) {
+                        throw new IllegalStateException("Row in " + file + " does not have "
+                                + width + " fields: " + line);
+                    }
+                    long v;
+                    if (!table.encoded[c] && isCanonicalLong(line, start, end)) {
+                        v = Long.parseLong(line, start, end, 10);
+                    } else {
+                        if (!table.encoded[c]) {
+                            table.encodeColumn(c, dict);
+                        }
+                        v = dict.encode(line.substring(start, end));
+                    }
+                    table.columns[c][table.rows] = v;
+                    start = end + 1;
+                }
+                table.rows++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read data file " + file, e);
+        }
+        return table;
+    }
+
+    /**
+     * 从元组流载入（用于没有 CSV 或列式存储的数据源），编码规则同 CSV 载入。
+     */
+    static ColumnTable load(TupleIterator rows, ValueDictionary dict) {
+        List<Attribute> schema = rows.getSchema();
+        ColumnTable table = new ColumnTable(schema, new boolean[schema.size()], 1024);
+        try {
+            rows.open();
+            String[] t;
+            while ((t = rows.next()) != null) {
+                table.ensureCapacity(table.rows + 1);
+                for (int c = 0; c < t.length; c++) {
+                    long v;
+                    if (!table.encoded[c] && isCanonicalLong(t[c])) {
+                        v = Long.parseLong(t[c]);
+                    } else {
+                        if (!table.encoded[c]) {
+                            table.encodeColumn(c, dict);
+                        }
+                        v = dict.encode(t[c]);
+                    }
+                    table.columns[c][table.rows] = v;
+                }
+                table.rows++;
+            }
+        } finally {
+            rows.close();
+        }
+        return table;
+    }
+
+    /**
+     * 把一个目前按数值存放的列改成字典编码。
+     */
+    private void encodeColumn(int c, ValueDictionary dict) {
+        long[] col = columns[c];
+        for (int i = 0; i < rows; i++) {
+            col[i] = dict.encode(Long.toString(col[i]));
+        }
+        encoded[c] = true;
+    }
+
+    /**
+     * 追加一批中的所有有效行（压缩掉选择向量）。
+     */
+    void append(ColumnBatch b) {
+        int n = b.count();
+        ensureCapacity(rows + n);
+        for (int c = 0; c < columns.length; c++) {
+            long[] src = b.columns[c];
+            long[] dst = columns[c];
+            if (b.selection == null) {
+                System.arraycopy(src, 0, dst, rows, n);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    dst[rows + i] = src[b.selection[i]];
+                }
+            }
+        }
+        rows += n;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > columns[0].length) {
+            int cap = Math.max(needed, columns[0].length * 2);
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = Arrays.copyOf(columns[c], cap);
+            }
+        }
+    }
+
+    /**
+     * 只接受 Long.toString 能原样还原的写法（如 "007" 视为字符串），保证输出与输入一致。
+     */
+    static boolean isCanonicalLong(String s) {
+        return isCanonicalLong(s, 0, s.length());
+    }
+
+    static boolean isCanonicalLong(CharSequence s, int from, int to) {
+        int n = to - from;
+        if (n <= 0 || n > 19) {
+            return false;
+        }
+        int i = from;
+        if (s.charAt(i) == '-') {
+            i++;
+            if (i == to || s.charAt(i) == '0') {
+                return false;                                   // "-" 或 "-0..."
+            }
+        }
+        if (s.charAt(i) == '0' && to > i + 1) {
+            return false;                                       // 前导零
+        }
+        for (int k = i; k < to; k++) {
+            char ch = s.charAt(k);
+            if (ch < '0' || ch > '9') {
+                return false;
+            }
+        }
+        if (to - i == 19) {
+            try {
+                Long.parseLong(s, from, to, 10);               // 19 位时可能溢出
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
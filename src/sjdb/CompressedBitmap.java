@@ -0,0 +1,365 @@
+package sjdb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 压缩位图（roaring 风格）：行号按高 48 位分块，每块 65536 行一个容器。
+ *
+ * - 块内元素不超过 ARRAY_MAX 时用有序 char 数组（每个元素 2 字节）；
+ * - 超过时改用 1024 个 long 的定长位集（8 KB）；
+ * - 按需在两种表示间转换，稀疏与稠密数据的体积都接近其信息量。
+ *
+ * 提供按位 AND / OR（返回新位图，不修改操作数）和按行号递增的遍历。
+ */
+public final class CompressedBitmap {
+    /** 数组容器的最大元素个数；再多则位集更省空间 */
+    static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private int[] keys = new int[4];
+    /** char[]（数组容器）或 long[]（位集容器） */
+    private Object[] containers = new Object[4];
+    private int[] cards = new int[4];
+    private int size;
+
+    /**
+     * 置位一行。按行号递增追加时为 O(1)。
+     */
+    public void add(long row) {
+        int key = (int) (row >>> 16);
+        char low = (char) row;
+        int i = (size > 0 && keys[size - 1] == key) ? size - 1 : Arrays.binarySearch(keys, 0, size, key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key, new char[4], 0);
+        }
+        Object c = containers[i];
+        if (c instanceof long[]) {
+            long[] bits = (long[]) c;
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) == 0) {
+                bits[low >>> 6] |= mask;
+                cards[i]++;
+            }
+            return;
+        }
+        char[] arr = (char[]) c;
+        int card = cards[i];
+        int at = (card > 0 && arr[card - 1] < low) ? -card - 1 : Arrays.binarySearch(arr, 0, card, low);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        if (card == ARRAY_MAX) {
+            long[] bits = toBits(arr, card);
+            bits[low >>> 6] |= 1L << low;
+            containers[i] = bits;
+            cards[i] = card + 1;
+            return;
+        }
+        if (card == arr.length) {
+            arr = Arrays.copyOf(arr, Math.min(ARRAY_MAX, card * 2));
+            containers[i] = arr;
+        }
+        System.arraycopy(arr, at, arr, at + 1, card - at);
+        arr[at] = low;
+        cards[i] = card + 1;
+    }
+
+    public boolean contains(long row) {
+        int i = Arrays.binarySearch(keys, 0, size, (int) (row >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) row;
+        Object c = containers[i];
+        if (c instanceof long[]) {
+            return (((long[]) c)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) c, 0, cards[i], low) >= 0;
+    }
+
+    /**
+     * @return 置位的行数
+     */
+    public long cardinality() {
+        long n = 0;
+        for (int i = 0; i < size; i++) {
+            n += cards[i];
+        }
+        return n;
+    }
+
+    /**
+     * @return 不小于 from 的第一个置位行号；没有时返回 -1
+     */
+    public long nextSetBit(long from) {
+        int key = (int) (from >>> 16);
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        int low = (int) (from & 0xFFFF);
+        if (i < 0) {
+            i = -i - 1;
+            low = 0;
+        }
+        for (; i < size; i++) {
+            int found = nextInContainer(i, (keys[i] == key) ? low : 0);
+            if (found >= 0) {
+                return ((long) keys[i] << 16) | found;
+            }
+        }
+        return -1;
+    }
+
+    private int nextInContainer(int i, int low) {
+        Object c = containers[i];
+        if (c instanceof long[]) {
+            long[] bits = (long[]) c;
+            int w = low >>> 6;
+            long word = bits[w] & (-1L << low);
+            while (true) {
+                if (word != 0) {
+                    return (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++w == WORDS) {
+                    return -1;
+                }
+                word = bits[w];
+            }
+        }
+        char[] arr = (char[]) c;
+        int at = Arrays.binarySearch(arr, 0, cards[i], (char) low);
+        if (at < 0) {
+            at = -at - 1;
+        }
+        return (at < cards[i]) ? arr[at] : -1;
+    }
+
+    /* ─────────────────────────── 位运算 ─────────────────────────── */
+
+    public CompressedBitmap and(CompressedBitmap o) {
+        CompressedBitmap r = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < o.size) {
+            if (keys[i] < o.keys[j]) {
+                i++;
+            } else if (keys[i] > o.keys[j]) {
+                j++;
+            } else {
+                r.appendAnd(keys[i], containers[i], cards[i], o.containers[j], o.cards[j]);
+                i++;
+                j++;
+            }
+        }
+        return r;
+    }
+
+    public CompressedBitmap or(CompressedBitmap o) {
+        CompressedBitmap r = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < o.size) {
+            if (j >= o.size || (i < size && keys[i] < o.keys[j])) {
+                r.insertContainer(r.size, keys[i], copy(containers[i]), cards[i]);
+                i++;
+            } else if (i >= size || keys[i] > o.keys[j]) {
+                r.insertContainer(r.size, o.keys[j], copy(o.containers[j]), o.cards[j]);
+                j++;
+            } else {
+                r.appendOr(keys[i], containers[i], cards[i], o.containers[j], o.cards[j]);
+                i++;
+                j++;
+            }
+        }
+        return r;
+    }
+
+    private void appendAnd(int key, Object a, int ca, Object b, int cb) {
+        if (a instanceof long[] && b instanceof long[]) {
+            long[] x = (long[]) a, y = (long[]) b, z = new long[WORDS];
+            int card = 0;
+            for (int w = 0; w < WORDS; w++) {
+                z[w] = x[w] & y[w];
+                card += Long.bitCount(z[w]);
+            }
+            if (card > 0) {
+                insertContainer(size, key, (card <= ARRAY_MAX) ? toArray(z, card) : z, card);
+            }
+            return;
+        }
+        if (a instanceof long[]) {
+            // 保证数组容器在前
+            Object t = a;
+            a = b;
+            b = t;
+            int tc = ca;
+            ca = cb;
+            cb = tc;
+        }
+        char[] arr = (char[]) a;
+        char[] out = new char[ca];
+        int n = 0;
+        if (b instanceof long[]) {
+            long[] bits = (long[]) b;
+            for (int k = 0; k < ca; k++) {
+                if ((bits[arr[k] >>> 6] & (1L << arr[k])) != 0) {
+                    out[n++] = arr[k];
+                }
+            }
+        } else {
+            char[] other = (char[]) b;
+            int p = 0, q = 0;
+            while (p < ca && q < cb) {
+                if (arr[p] < other[q]) {
+                    p++;
+                } else if (arr[p] > other[q]) {
+                    q++;
+                } else {
+                    out[n++] = arr[p];
+                    p++;
+                    q++;
+                }
+            }
+        }
+        if (n > 0) {
+            insertContainer(size, key, out, n);
+        }
+    }
+
+    private void appendOr(int key, Object a, int ca, Object b, int cb) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] x = (char[]) a, y = (char[]) b, out = new char[ca + cb];
+            int p = 0, q = 0, n = 0;
+            while (p < ca || q < cb) {
+                if (q >= cb || (p < ca && x[p] < y[q])) {
+                    out[n++] = x[p++];
+                } else if (p >= ca || x[p] > y[q]) {
+                    out[n++] = y[q++];
+                } else {
+                    out[n++] = x[p++];
+                    q++;
+                }
+            }
+            insertContainer(size, key, (n <= ARRAY_MAX) ? out : toBits(out, n), n);
+            return;
+        }
+        long[] bits = (a instanceof long[]) ? ((long[]) a).clone() : toBits((char[]) a, ca);
+        if (b instanceof long[]) {
+            long[] y = (long[]) b;
+            for (int w = 0; w < WORDS; w++) {
+                bits[w] |= y[w];
+            }
+        } else {
+            char[] y = (char[]) b;
+            for (int k = 0; k < cb; k++) {
+                bits[y[k] >>> 6] |= 1L << y[k];
+            }
+        }
+        int card = 0;
+        for (long w : bits) {
+            card += Long.bitCount(w);
+        }
+        insertContainer(size, key, bits, card);
+    }
+
+    /* ─────────────────────────── 容器工具 ─────────────────────────── */
+
+    private void insertContainer(int at, int key, Object container, int card) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+            cards = Arrays.copyOf(cards, size * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        System.arraycopy(cards, at, cards, at + 1, size - at);
+        keys[at] = key;
+        containers[at] = container;
+        cards[at] = card;
+        size++;
+    }
+
+    private static Object copy(Object c) {
+        return (c instanceof long[]) ? ((long[]) c).clone() : ((char[]) c).clone();
+    }
+
+    private static long[] toBits(char[] arr, int card) {
+        long[] bits = new long[WORDS];
+        for (int k = 0; k < card; k++) {
+            bits[arr[k] >>> 6] |= 1L << arr[k];
+        }
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int card) {
+        char[] arr = new char[card];
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                arr[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return arr;
+    }
+
+    /* ─────────────────────────── 序列化 ─────────────────────────── */
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(keys[i]);
+            out.writeInt(cards[i]);
+            if (containers[i] instanceof long[]) {
+                out.writeByte(1);
+                for (long w : (long[]) containers[i]) {
+                    out.writeLong(w);
+                }
+            } else {
+                out.writeByte(0);
+                char[] arr = (char[]) containers[i];
+                for (int k = 0; k < cards[i]; k++) {
+                    out.writeChar(arr[k]);
+                }
+            }
+        }
+    }
+
+    static CompressedBitmap read(DataInputStream in) throws IOException {
+        CompressedBitmap b = new CompressedBitmap();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            int key = in.readInt();
+            int card = in.readInt();
+            Object c;
+            if (in.readByte() == 1) {
+                long[] bits = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) {
+                    bits[w] = in.readLong();
+                }
+                c = bits;
+            } else {
+                char[] arr = new char[Math.max(card, 1)];
+                for (int k = 0; k < card; k++) {
+                    arr[k] = in.readChar();
+                }
+                c = arr;
+            }
+            b.insertContainer(b.size, key, c, card);
+        }
+        return b;
+    }
+
+    /**
+     * @return 序列化后的大致字节数
+     */
+    public long sizeInBytes() {
+        long n = 4;
+        for (int i = 0; i < size; i++) {
+            n += 9 + ((containers[i] instanceof long[]) ? WORDS * 8L : cards[i] * 2L);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,68 @@
+package sjdb;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 并行哈希连接共享的构建侧哈希表：行数在构建前已知（各工作者的局部结果合并时得到），
+ * 每行占一个固定下标，桶头用 AtomicIntegerArray 以原子交换插入，多个工作者可无锁并发插入。
+ *
+ * 链表与 LongHashTable 相同：next[i] 指向同桶的下一行，-1 表示结束。
+ * 插入全部完成（所有插入任务 join 之后）才开始探测，探测只读、无需同步。
+ */
+public final class ConcurrentJoinTable {
+    private final String[][] rows;
+    private final int[] next;
+    private final AtomicIntegerArray heads;
+    private final int mask;
+    private final int key;
+
+    /**
+     * @param size      行数
+     * @param keyColumn 连接键在构建侧元组中的下标
+     */
+    public ConcurrentJoinTable(int size, int keyColumn) {
+        int buckets = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+        this.rows = new String[size][];
+        this.next = new int[size];
+        this.heads = new AtomicIntegerArray(buckets);
+        for (int b = 0; b < buckets; b++) {
+            heads.set(b, -1);
+        }
+        this.mask = buckets - 1;
+        this.key = keyColumn;
+    }
+
+    /**
+     * 把一行放在下标 i 处并挂入对应的桶。不同线程须使用互不相同的 i。
+     */
+    public void insert(int i, String[] row) {
+        rows[i] = row;
+        next[i] = heads.getAndSet(bucket(row[key]), i);
+    }
+
+    /**
+     * @return 与 key 同桶的第一行下标；没有时返回 -1（调用方需用 equals 校验）
+     */
+    public int first(String key) {
+        return heads.get(bucket(key));
+    }
+
+    /**
+     * @return 同桶的下一行下标，-1 表示结束
+     */
+    public int next(int i) {
+        return next[i];
+    }
+
+    public String[] row(int i) {
+        return rows[i];
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    private int bucket(String k) {
+        return LongHashTable.hash(k.hashCode()) & mask;
+    }
+}
@@ -1,14 +1,71 @@
 package sjdb;
 
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public class Estimator implements PlanVisitor {
 
+	/**
+	 * 增量估算用的备忘录：按子树对象身份记录已经算好的输出，
+	 * 一次优化内同一棵子树只估算一次。
+	 */
+	private final Map<Operator, Relation> memo = new IdentityHashMap<Operator, Relation>();
+
 	public Estimator() {
 		// 空构造函数
 	}
 
+	/**
+	 * 清空备忘录。Optimiser 在每次优化开始和结束时调用，
+	 * 避免跨查询复用、也避免长期持有旧计划。
+	 */
+	public void resetMemo() {
+		memo.clear();
+	}
+
+	/**
+	 * 增量估算：与 op.accept(this) 结果相同，但已在备忘录里的子树直接复用其输出，
+	 * 只为新出现的节点（通常是刚挂上去的 Join/Product）计算统计信息。
+	 * 这样连接枚举时每个候选的代价是 O(1) 个节点，而不是整棵左子树。
+	 *
+	 * @param op 要估算的子树根
+	 * @return 子树根的输出关系
+	 */
+	public Relation estimate(Operator op) {
+		Relation cached = memo.get(op);
+		if (cached != null) {
+			return cached;
+		}
+		if (op instanceof IndexScan) {
+			visit((IndexScan) op);
+		} else if (op instanceof BitmapScan) {
+			visit((BitmapScan) op);
+		} else if (op instanceof Scan) {
+			visit((Scan) op);
+		} else if (op instanceof Project) {
+			estimate(((Project) op).getInput());
+			visit((Project) op);
+		} else if (op instanceof Select) {
+			estimate(((Select) op).getInput());
+			visit((Select) op);
+		} else if (op instanceof Product) {
+			estimate(((Product) op).getLeft());
+			estimate(((Product) op).getRight());
+			visit((Product) op);
+		} else if (op instanceof Join) {
+			estimate(((Join) op).getLeft());
+			estimate(((Join) op).getRight());
+			visit((Join) op);
+		} else {
+			// 未知算子：退回完整遍历
+			op.accept(this);
+		}
+		memo.put(op, op.getOutput());
+		return op.getOutput();
+	}
+
 	/**
 	 * 对 Scan 操作符：
 	 * 直接将底层 NamedRelation 的统计数据复制到输出 Relation 中。
@@ -26,6 +83,34 @@ public class Estimator implements PlanVisitor {
 		op.setOutput(output);
 	}
 
+	/**
+	 * 对 IndexScan 操作符：
+	 * 输出与在整表 Scan 上做同一 attr=value 选择相同。
+	 */
+	public void visit(IndexScan op) {
+		Scan base = new Scan((NamedRelation) op.getRelation());
+		visit(base);
+		Select sel = new Select(base, op.getPredicate());
+		visit(sel);
+		op.setOutput(sel.getOutput());
+	}
+
+	/**
+	 * 对 BitmapScan 操作符：
+	 * 输出与在整表 Scan 上依次做各常量选择相同。
+	 */
+	public void visit(BitmapScan op) {
+		Scan base = new Scan((NamedRelation) op.getRelation());
+		visit(base);
+		Operator cur = base;
+		for (Predicate p : op.getPredicates()) {
+			Select sel = new Select(cur, p);
+			visit(sel);
+			cur = sel;
+		}
+		op.setOutput(cur.getOutput());
+	}
+
 	/**
 	 * 对 Project 操作符：
 	 * 输出元组数不变，且只保留投影列表中指定的属性，
@@ -35,7 +120,7 @@ public class Estimator implements PlanVisitor {
 		// 得到子算子的输出
 		Relation input = op.getInput().getOutput();
 		// 输出的行数
-		int tupleCount = input.getTupleCount();
+		long tupleCount = input.getTupleCount();
 		// project操作行数不变。
 		Relation output = new Relation(tupleCount);
 
@@ -61,26 +146,28 @@ public class Estimator implements PlanVisitor {
 
 			// 那个relation里面已经实现了
 			// 3.3 如果找到了，就获取 distinct 值并做常规处理
-			int distinct = found.getValueCount();
+			long distinct = found.getValueCount();
 			if (distinct > tupleCount) {
 				distinct = tupleCount;
 			}
-			output.addAttribute(new Attribute(projAttr.getName(), distinct));
+			output.addAttribute(new Attribute(found, distinct));
 		}
 		op.setOutput(output);
 	}
 
 	/**
 	 * 对 Select 操作符：
-	 * 根据谓词类型（attr=value 或 attr1=attr2）更新元组数和各属性的 distinct 值。
+	 * 根据谓词类型（attr=value、范围谓词 或 attr1=attr2）更新元组数和各属性的 distinct 值。
 	 */
 	public void visit(Select op) {
 		Relation input = op.getInput().getOutput();
-		int inputTuples = input.getTupleCount();
+		long inputTuples = input.getTupleCount();
 		Predicate pred = op.getPredicate();
 
 		// 这一部分是计算新的元组数
-		int newTuples;
+		long newTuples;
+		// 范围谓词的选择率，后面算该列 distinct 时还要用
+		double rangeSel = 1.0;
 		// 仔细看一下谓词的属性，有三个属性：左属性、右属性和常量
 		if (pred.equalsValue()) {
 			// 这种情况就是没有右属性，只有左属性和常量
@@ -103,17 +190,35 @@ public class Estimator implements PlanVisitor {
 								"' does not exist in input relation!"));
 			}
 			// distinct(attr) 如果没值就强制 =1, 避免除0
-			int d = selAttr.getValueCount();
+			long d = selAttr.getValueCount();
 			// 一般不会出现这种情况
 			if (d <= 0){
 				d = 1;
 			}
-			// T（R）/ V（R，attr）
-			newTuples = inputTuples / d;
+			if (selAttr.hasSynopses() && !pred.isParameter()) {
+				// 有 MCV / 直方图时，用谓词里的实际常量估算选择率（未绑定的参数按均匀分布）
+				newTuples = scaleTuples(inputTuples, valueSelectivity(selAttr, pred.getRightValue()));
+			} else {
+				// T（R）/ V（R，attr）
+				newTuples = inputTuples / d;
+			}
 			// 一般不会出现这种情况
 			if (newTuples < 1){
 				newTuples = 1;
 			}
+		} else if (pred.isRange()) {
+			// 范围谓词：attr < "v"、attr >= "v"、attr BETWEEN "lo" AND "hi" 等
+			Attribute selAttr = findAttr(input, pred.getLeftAttribute());
+			if (selAttr == null) {
+				throw new RuntimeException(new DatabaseException(
+						"Select error: attribute '" + pred.getLeftAttribute().getName() +
+								"' does not exist in input relation!"));
+			}
+			rangeSel = rangeSelectivity(selAttr, pred);
+			newTuples = scaleTuples(inputTuples, rangeSel);
+			if (newTuples < 1){
+				newTuples = 1;
+			}
 		} else {
 			// 这种情况就是有两个属性，没有常量
 			// 谓词形如 attr1 = attr2
@@ -138,15 +243,20 @@ public class Estimator implements PlanVisitor {
 								"' does not exist in input relation!"));
 			}
 			// 找到两个属性后，获取两个属性的 distinct 值
-			int d1 = attr1.getValueCount();
-			int d2 = attr2.getValueCount();
+			long d1 = attr1.getValueCount();
+			long d2 = attr2.getValueCount();
 			// 假如A有5个不同的值，B有10个不同的值，那么A=B的概率大约是1/10
-			int maxd = Math.max(d1, d2);
+			long maxd = Math.max(d1, d2);
 			// 一般不会出现这种情况，可以抛异常
 			if (maxd <= 0){
 				maxd = 1;
 			}
-			newTuples = inputTuples / maxd;
+			if (attr1.getMostCommonValues() != null && attr2.getMostCommonValues() != null) {
+				// 两边都有 MCV 时按 MCV 重叠估算等值选择率
+				newTuples = scaleTuples(inputTuples, joinSelectivity(attr1, attr2));
+			} else {
+				newTuples = inputTuples / maxd;
+			}
 			// 一般不会出现这种情况
 			if (newTuples < 1) {
 				newTuples = 1;
@@ -160,8 +270,8 @@ public class Estimator implements PlanVisitor {
 		for (Attribute a : input.getAttributes()) {
 			// 先初始化默认的值，distinct不能超过新的行数
 			// 这个默认值可以理解是未经过选择的列
-			int origDistinct = a.getValueCount();
-			int newDistinct = Math.min(origDistinct, newTuples);
+			long origDistinct = a.getValueCount();
+			long newDistinct = Math.min(origDistinct, newTuples);
 
 			// 情况1 对于 attr = constant，选择后的属性 distinct 为 1
 			if (pred.equalsValue() && a.equals(pred.getLeftAttribute())) {
@@ -170,7 +280,12 @@ public class Estimator implements PlanVisitor {
 			}
 			// 情况2 对于 attr1 = attr2，连接属性的新 distinct 值为两者中较小者与 newTuples 的较小值
 			// 假如当前属性是left或者right属性，那么distinct就是两者中较小者与newTuples的较小值
-			if (!pred.equalsValue() && (a.equals(pred.getLeftAttribute()) || a.equals(pred.getRightAttribute()))) {
+			// 情况3 对于范围谓词，该列 distinct 按选择率等比例缩小
+			if (pred.isRange() && a.equals(pred.getLeftAttribute())) {
+				long scaled = (long) Math.ceil(origDistinct * rangeSel);
+				newDistinct = Math.max(1, Math.min(scaled, newTuples));
+			}
+			if (!pred.comparesValue() && (a.equals(pred.getLeftAttribute()) || a.equals(pred.getRightAttribute()))) {
 				// 还需要重新找到这两个属性！
 				Attribute sel1 = null, sel2 = null;
 				for (Attribute b : input.getAttributes()) {
@@ -191,12 +306,18 @@ public class Estimator implements PlanVisitor {
 							pred.getRightAttribute().getName() + "' not found in input."));
 				}
 				// 得到这两个属性的distinct值
-				int dtemp1 = sel1.getValueCount();
-				int dtemp2 = sel2.getValueCount();
+				long dtemp1 = sel1.getValueCount();
+				long dtemp2 = sel2.getValueCount();
 				// 这个为了防止超过行数，所以多了一层Math.min
 				newDistinct = Math.min(Math.min(dtemp1, dtemp2), newTuples);
 			}
-			output.addAttribute(new Attribute(a.getName(), newDistinct));
+			if ((pred.comparesValue() && a.equals(pred.getLeftAttribute()))
+					|| (!pred.comparesValue() && (a.equals(pred.getLeftAttribute()) || a.equals(pred.getRightAttribute())))) {
+				// 被谓词约束过的列，原来的分布概要已不再成立；不同值草图仍描述其取值的超集，留给连接估计
+				output.addAttribute(new Attribute(a, newDistinct, false));
+			} else {
+				output.addAttribute(new Attribute(a, newDistinct));
+			}
 		}
 		op.setOutput(output);
 	}
@@ -211,25 +332,25 @@ public class Estimator implements PlanVisitor {
 		// 分别是左子算子的输出和右子算子的输出
 		Relation leftRel = op.getLeft().getOutput();
 		Relation rightRel = op.getRight().getOutput();
-		// 计算笛卡尔积后的行数
-		int newTuples = leftRel.getTupleCount() * rightRel.getTupleCount();
+		// 计算笛卡尔积后的行数（饱和乘法，溢出时停在 Long.MAX_VALUE 而不是变成负数）
+		long newTuples = saturatingMultiply(leftRel.getTupleCount(), rightRel.getTupleCount());
 		// 行数是两个输入的行数的乘积
 		Relation output = new Relation(newTuples);
 
 		// 直接复制左右两个输入的属性
 		for (Attribute a : leftRel.getAttributes()) {
-			int distinct = a.getValueCount();
+			long distinct = a.getValueCount();
 			if(distinct > newTuples) {
 				distinct = newTuples;
 			}
-			output.addAttribute(new Attribute(a.getName(), distinct));
+			output.addAttribute(new Attribute(a, distinct));
 		}
 		for (Attribute a : rightRel.getAttributes()) {
-			int distinct = a.getValueCount();
+			long distinct = a.getValueCount();
 			if(distinct > newTuples) {
 				distinct = newTuples;
 			}
-			output.addAttribute(new Attribute(a.getName(), distinct));
+			output.addAttribute(new Attribute(a, distinct));
 		}
 		op.setOutput(output);
 	}
@@ -239,6 +360,9 @@ public class Estimator implements PlanVisitor {
 	 * 假设连接谓词为 attr1 = attr2，
 	 * 输出元组数 = (左子元组数 * 右子元组数) / max(distinct(left_join), distinct(right_join))，
 	 * 并对连接属性，新 distinct 值取 min(左属性 distinct, 右属性 distinct)。
+	 * 两个连接属性都带 HyperLogLog 草图时，公共值个数 c 改由草图交集估计（见 commonValues），
+	 * 新 distinct 值取 c，输出元组数 = 左子元组数 * 右子元组数 * c / (dLeft * dRight)
+	 * （每个公共值在两边各有 T/d 行；c = min(dLeft, dRight) 时即上式）。
 	 */
 	// 看上面这个公式，这个和select的非常相似！！！
 	// 理解就是： 笛卡尔积得到总个数，乘上A=B的概率，就是最后的个数
@@ -275,15 +399,27 @@ public class Estimator implements PlanVisitor {
 
 		// 这里 leftJoin, rightJoin 就是对齐好的 pair
 		// distinct 计算
-		int dLeft = leftJoin.getValueCount();
-		int dRight = rightJoin.getValueCount();
+		long dLeft = leftJoin.getValueCount();
+		long dRight = rightJoin.getValueCount();
 
-		int maxd = Math.max(dLeft, dRight);
+		long maxd = Math.max(dLeft, dRight);
 		if (maxd == 0) {
 			maxd = 1;
 		}
+		// 连接后公共值个数：有草图时按交集估计，否则假设小的值集合包含在大的里面
+		long common = commonValues(leftJoin, rightJoin);
 		// 根据公式计算出新的行数！
-		int newTuples = (leftRel.getTupleCount() * rightRel.getTupleCount()) / maxd;
+		long newTuples;
+		if (leftJoin.getMostCommonValues() != null && rightJoin.getMostCommonValues() != null) {
+			// 两边都有 MCV：T(L)*T(R)*sel，sel 由 MCV 重叠得出
+			newTuples = scaleTuples(saturatingMultiply(leftRel.getTupleCount(), rightRel.getTupleCount()),
+					joinSelectivity(leftJoin, rightJoin));
+		} else if (leftJoin.hasSketch() && rightJoin.hasSketch()) {
+			newTuples = scaleTuples(saturatingMultiply(leftRel.getTupleCount(), rightRel.getTupleCount()),
+					(double) common / ((double) Math.max(1, dLeft) * Math.max(1, dRight)));
+		} else {
+			newTuples = joinSize(leftRel.getTupleCount(), rightRel.getTupleCount(), maxd);
+		}
 		if (newTuples < 1){
 			newTuples = 1;
 		}
@@ -291,24 +427,219 @@ public class Estimator implements PlanVisitor {
 		Relation output = new Relation(newTuples);
 		// 加入左子关系的属性
 		for (Attribute a : leftRel.getAttributes()) {
-			int newDistinct = Math.min(a.getValueCount(), newTuples);
+			long newDistinct = Math.min(a.getValueCount(), newTuples);
 			// 只动关联的属性，其他属性不变！
 			if (a.equals(leftJoin)) {
-				newDistinct = Math.min(newDistinct, Math.min(dLeft, dRight));
+				newDistinct = Math.min(newDistinct, common);
+				output.addAttribute(new Attribute(a, newDistinct, false));
+			} else {
+				output.addAttribute(new Attribute(a, newDistinct));
 			}
-			output.addAttribute(new Attribute(a.getName(), newDistinct));
 		}
 		// 加入右子关系的属性
 		for (Attribute a : rightRel.getAttributes()) {
-			int newDistinct = Math.min(a.getValueCount(), newTuples);
+			long newDistinct = Math.min(a.getValueCount(), newTuples);
 			if (a.equals(rightJoin)) {
-				newDistinct = Math.min(newDistinct, Math.min(dLeft, dRight));
+				newDistinct = Math.min(newDistinct, common);
+				output.addAttribute(new Attribute(a, newDistinct, false));
+			} else {
+				output.addAttribute(new Attribute(a, newDistinct));
 			}
-			output.addAttribute(new Attribute(a.getName(), newDistinct));
 		}
 		op.setOutput(output);
 	}
 
+	/**
+	 * 等值连接两边的公共值个数。
+	 * 两边都有 HyperLogLog 草图时，按容斥 |A| + |B| - |A ∪ B| 估计两列（ANALYZE 时的全部取值）的交集，
+	 * 再按各自当前 distinct 占草图估计的比例缩小：子计划中的选择只留下一部分值，假设留下哪些值与另一边无关。
+	 * 否则沿用包含假设：min(dLeft, dRight)。
+	 */
+	static long commonValues(Attribute left, Attribute right) {
+		long dLeft = left.getValueCount();
+		long dRight = right.getValueCount();
+		long contained = Math.min(dLeft, dRight);
+		HyperLogLog sl = left.getSketch();
+		HyperLogLog sr = right.getSketch();
+		if (sl == null || sr == null) {
+			return contained;
+		}
+		double inter = HyperLogLog.intersection(sl, sr);
+		double common = inter * Math.min(1.0, (double) dLeft / Math.max(1, sl.estimate()))
+				* Math.min(1.0, (double) dRight / Math.max(1, sr.estimate()));
+		// 交集接近 0 时容斥的误差与交集同量级，至少保留一个公共值
+		return Math.min(contained, Math.max(1, Math.round(common)));
+	}
+
+	/**
+	 * attr=value 的选择率：
+	 * 1) value 在 MCV 中 → 直接用它的比例；
+	 * 2) 有 MCV 但 value 不在其中 → 剩余比例均摊到其余 distinct 值上；
+	 * 3) 只有直方图 → 范围外为 0，范围内按直方图估算；
+	 * 4) 都没有 → 1/V。
+	 */
+	static double valueSelectivity(Attribute a, String value) {
+		long d = Math.max(1, a.getValueCount());
+		MostCommonValues mcv = a.getMostCommonValues();
+		Histogram hist = a.getHistogram();
+		if (hist != null && !hist.covers(value)) {
+			return 0.0;
+		}
+		if (mcv != null) {
+			double f = mcv.frequency(value);
+			if (f >= 0) {
+				return f;
+			}
+			long rest = d - mcv.size();
+			return (rest > 0) ? (1.0 - mcv.totalFrequency()) / rest : 0.0;
+		}
+		if (hist != null) {
+			return hist.equalityFraction(value, d);
+		}
+		return 1.0 / d;
+	}
+
+	/** 没有统计信息时开区间范围谓词（<、<=、>、>=）的默认选择率 */
+	static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+	/** 没有统计信息时 BETWEEN 的默认选择率 */
+	static final double DEFAULT_BETWEEN_SELECTIVITY = 1.0 / 4;
+
+	/**
+	 * 范围谓词的选择率：
+	 * 1) 有直方图 → 按桶累计（桶内线性插值）；
+	 * 2) 只有 MCV → 落在范围内的 MCV 比例精确累加，其余部分按默认比例；
+	 * 3) 都没有（或值是未绑定的参数）→ 默认比例（开区间 1/3，BETWEEN 1/4）。
+	 */
+	static double rangeSelectivity(Attribute a, Predicate p) {
+		String low = null, high = null;
+		boolean lowInc = false, highInc = false;
+		switch (p.getComparison()) {
+			case LT: high = p.getRightValue(); break;
+			case LE: high = p.getRightValue(); highInc = true; break;
+			case GT: low = p.getRightValue(); break;
+			case GE: low = p.getRightValue(); lowInc = true; break;
+			case BETWEEN:
+				low = p.getRightValue(); lowInc = true;
+				high = p.getUpperValue(); highInc = true;
+				break;
+			default:
+				throw new IllegalArgumentException("Not a range predicate: " + p);
+		}
+		double fallback = (p.getComparison() == Predicate.Comparison.BETWEEN)
+				? DEFAULT_BETWEEN_SELECTIVITY : DEFAULT_RANGE_SELECTIVITY;
+		if (p.isParameter()) {
+			// 未绑定的参数：值未知，只能用默认比例
+			return fallback;
+		}
+
+		if (a.getHistogram() != null) {
+			return a.getHistogram().rangeFraction(low, lowInc, high, highInc);
+		}
+		MostCommonValues mcv = a.getMostCommonValues();
+		if (mcv != null) {
+			double inRange = 0;
+			for (Map.Entry<String, Double> e : mcv.getFrequencies().entrySet()) {
+				if (inRange(e.getKey(), low, lowInc, high, highInc)) {
+					inRange += e.getValue();
+				}
+			}
+			return inRange + (1.0 - mcv.totalFrequency()) * fallback;
+		}
+		return fallback;
+	}
+
+	private static boolean inRange(String v, String low, boolean lowInc, String high, boolean highInc) {
+		if (low != null) {
+			int c = Histogram.compareValues(v, low);
+			if (c < 0 || (c == 0 && !lowInc)) {
+				return false;
+			}
+		}
+		if (high != null) {
+			int c = Histogram.compareValues(v, high);
+			if (c > 0 || (c == 0 && !highInc)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 两边都有 MCV 时 attr1=attr2 的选择率（与 PostgreSQL eqjoinsel 相同的思路）：
+	 * 两个 MCV 列表中共同出现的值按比例乘积精确累加，
+	 * 其余部分（未匹配的 MCV 和非 MCV 值）按均匀分布均摊，两个方向各算一次取较小者。
+	 */
+	static double joinSelectivity(Attribute a1, Attribute a2) {
+		MostCommonValues m1 = a1.getMostCommonValues();
+		MostCommonValues m2 = a2.getMostCommonValues();
+		double matchProd = 0, match1 = 0, match2 = 0;
+		int matches = 0;
+		for (Map.Entry<String, Double> e : m1.getFrequencies().entrySet()) {
+			double f2 = m2.frequency(e.getKey());
+			if (f2 >= 0) {
+				matchProd += e.getValue() * f2;
+				match1 += e.getValue();
+				match2 += f2;
+				matches++;
+			}
+		}
+		double unmatch1 = m1.totalFrequency() - match1;
+		double unmatch2 = m2.totalFrequency() - match2;
+		double other1 = 1.0 - m1.totalFrequency();
+		double other2 = 1.0 - m2.totalFrequency();
+		long nd1 = Math.max(1, a1.getValueCount());
+		long nd2 = Math.max(1, a2.getValueCount());
+
+		double sel1 = matchProd;
+		if (nd2 > m2.size()) {
+			sel1 += unmatch1 * other2 / (nd2 - m2.size());
+		}
+		if (nd2 > matches) {
+			sel1 += other1 * (other2 + unmatch2) / (nd2 - matches);
+		}
+		double sel2 = matchProd;
+		if (nd1 > m1.size()) {
+			sel2 += unmatch2 * other1 / (nd1 - m1.size());
+		}
+		if (nd1 > matches) {
+			sel2 += other2 * (other1 + unmatch1) / (nd1 - matches);
+		}
+		return Math.min(sel1, sel2);
+	}
+
+	/**
+	 * tuples * sel，向下取整并饱和到 Long.MAX_VALUE（调用方负责下限 1）。
+	 */
+	static long scaleTuples(long tuples, double sel) {
+		double d = tuples * sel;
+		return (d >= Long.MAX_VALUE) ? Long.MAX_VALUE : (long) d;
+	}
+
+	/**
+	 * 饱和乘法：a*b 溢出 long 时返回 Long.MAX_VALUE（基数均为非负数）。
+	 */
+	static long saturatingMultiply(long a, long b) {
+		long hi = Math.multiplyHigh(a, b);
+		long lo = a * b;
+		if ((hi == 0 && lo >= 0) || (hi == -1 && lo < 0)) {
+			return lo;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * 计算 T(L)*T(R)/maxd。乘积不溢出时用整数除法（与原公式逐位一致），
+	 * 溢出时改用 double 计算，结果再饱和到 Long.MAX_VALUE。
+	 */
+	static long joinSize(long leftTuples, long rightTuples, long maxd) {
+		long prod = saturatingMultiply(leftTuples, rightTuples);
+		if (prod != Long.MAX_VALUE) {
+			return prod / maxd;
+		}
+		double d = (double) leftTuples * (double) rightTuples / maxd;
+		return (d >= Long.MAX_VALUE) ? Long.MAX_VALUE : (long) d;
+	}
+
 	private Attribute findAttr(Relation rel, Attribute x) {
 		for(Attribute a: rel.getAttributes()) {
 			if(a.equals(x)) return a;
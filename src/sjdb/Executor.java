@@ -0,0 +1,409 @@
+package sjdb;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 物理执行层：把 Optimiser 产出的逻辑算子树翻译成 Volcano 风格的迭代器树并执行。
+ *
+ * 与 Estimator 一样实现 PlanVisitor：访问顺序是深度优先、先子后父，
+ * 因此每访问一个算子时，它的输入迭代器已经在栈顶，弹出后包一层再压回即可。
+ *
+ * 关系数据来自数据目录下的 &lt;关系名&gt;.csv（通常就是 cat.txt 所在目录）。
+ */
+public class Executor implements PlanVisitor {
+
+    private final Path dataDir;
+    private final long joinMemoryBudget;
+    private final Path spillDir;
+    private final BufferPool bufferPool;
+    private final Deque<TupleIterator> stack = new ArrayDeque<>();
+    /** 标注了布隆过滤器的连接及其过滤器；按对象身份索引 */
+    private final Map<Join, Sip> sips = new IdentityHashMap<>();
+    /** 每个探测侧扫描需要套上的过滤器 */
+    private final Map<Scan, List<Sip>> sipScans = new IdentityHashMap<>();
+    /** 最近一次 build 中下推到扫描上的过滤迭代器，用于报告剔除行数 */
+    private final List<BloomFilterIterator> sipFilters = new ArrayList<>();
+
+    /**
+     * 一个连接的旁路信息：构建侧填充、探测侧扫描检查的同一个过滤器。
+     */
+    private static final class Sip {
+        final BloomFilter filter;
+        final Attribute buildAttribute;
+        final Attribute probeAttribute;
+
+        Sip(BloomFilter filter, Attribute buildAttribute, Attribute probeAttribute) {
+            this.filter = filter;
+            this.buildAttribute = buildAttribute;
+            this.probeAttribute = probeAttribute;
+        }
+    }
+
+    /**
+     * 连接内存预算默认取最大堆的 1/4，溢写文件放在系统临时目录。
+     */
+    public Executor(Path dataDir) {
+        this(dataDir, Runtime.getRuntime().maxMemory() / 4,
+                Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param dataDir          关系数据文件所在目录
+     * @param joinMemoryBudget 每个哈希连接构建侧可占用的内存（字节），超出时分区溢写
+     * @param spillDir         溢写临时文件目录
+     */
+    public Executor(Path dataDir, long joinMemoryBudget, Path spillDir) {
+        this(dataDir, joinMemoryBudget, spillDir, new BufferPool(BufferPool.configuredPages()));
+    }
+
+    /**
+     * @param bufferPool 读取堆文件（&lt;关系名&gt;.heap）所用的缓冲池，可在多个执行器间共享
+     */
+    public Executor(Path dataDir, long joinMemoryBudget, Path spillDir, BufferPool bufferPool) {
+        this.dataDir = dataDir;
+        this.joinMemoryBudget = joinMemoryBudget;
+        this.spillDir = spillDir;
+        this.bufferPool = bufferPool;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * @return 最近一次 build 的计划中下推到各探测侧扫描的布隆过滤器（执行后可读取剔除行数）
+     */
+    public List<BloomFilterIterator> getSidewaysFilters() {
+        return new ArrayList<>(sipFilters);
+    }
+
+    /* ─────────────────────────── 入口 ─────────────────────────── */
+
+    /**
+     * 为计划构建迭代器树（尚未 open）。
+     */
+    public TupleIterator build(Operator plan) {
+        stack.clear();
+        sips.clear();
+        sipScans.clear();
+        sipFilters.clear();
+        planSideways(plan);
+        plan.accept(this);
+        if (stack.size() != 1) {
+            throw new IllegalStateException("Malformed plan: " + plan);
+        }
+        return stack.pop();
+    }
+
+    /**
+     * 执行计划，把结果逐行写到 out（首行为列名），返回结果行数。
+     */
+    public long run(Operator plan, PrintStream out) {
+        TupleIterator it = build(plan);
+        out.println(join(it.getSchema()));
+        long rows = 0;
+        try {
+            // open 也在 try 内：打开到一半失败时（如混合哈希连接已溢写分区）close 仍会删除临时文件
+            it.open();
+            String[] t;
+            while ((t = it.next()) != null) {
+                out.println(String.join(",", t));
+                rows++;
+            }
+        } finally {
+            it.close();
+        }
+        return rows;
+    }
+
+    /**
+     * 计划中所有关系的数据文件是否都存在。
+     */
+    public boolean hasData(Operator plan) {
+        if (plan instanceof Scan) {
+            NamedRelation rel = (NamedRelation) ((Scan) plan).getRelation();
+            return Files.isReadable(HeapFile.file(dataDir, rel)) || ColumnFile.exists(dataDir, rel)
+                    || Files.isReadable(ScanIterator.dataFile(dataDir, rel));
+        }
+        for (Operator in : plan.getInputs()) {
+            if (!hasData(in)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* ─────────────────────────── 访问者 ─────────────────────────── */
+
+    public void visit(Scan op) {
+        stack.push(sideways(op, scanIterator((NamedRelation) op.getRelation(), op.getColumns())));
+    }
+
+    /**
+     * 按存储格式选择扫描方式：列式存储、堆文件、CSV 依次优先。
+     * 三个引擎（本类、ParallelExecutor、BatchExecutor）都按这一顺序选择。
+     * 列式存储排在最前，这样只读优化器标注的列（列裁剪）在堆文件存在时也仍然生效。
+     *
+     * @param columns 列式存储时需读取的列；null 表示全部
+     */
+    private TupleIterator scanIterator(NamedRelation rel, List<Attribute> columns) {
+        if (ColumnFile.exists(dataDir, rel)) {
+            // 有列式存储时只映射优化器标注的列
+            return new ColumnScanIterator(rel, dataDir, columns);
+        } else if (Files.isReadable(HeapFile.file(dataDir, rel))) {
+            // 堆文件经共享缓冲池读取
+            return new HeapScanIterator(rel, dataDir, bufferPool);
+        }
+        return new ScanIterator(rel, dataDir);
+    }
+
+    public void visit(IndexScan op) {
+        NamedRelation rel = (NamedRelation) op.getRelation();
+        Path index = BTreeIndex.file(dataDir, rel, op.getPredicate().getLeftAttribute().getName());
+        if (Files.isReadable(index) && Files.isReadable(HeapFile.file(dataDir, rel))) {
+            stack.push(sideways(op, new IndexScanIterator(rel, op.getPredicate(), dataDir, bufferPool)));
+        } else {
+            // 索引文件尚未构建：退化为全表扫描加选择
+            stack.push(sideways(op, new SelectIterator(scanIterator(rel, op.getColumns()), op.getPredicate())));
+        }
+    }
+
+    public void visit(BitmapScan op) {
+        stack.push(sideways(op, bitmapIterator(op)));
+    }
+
+    private TupleIterator bitmapIterator(BitmapScan op) {
+        NamedRelation rel = (NamedRelation) op.getRelation();
+        CompressedBitmap rows = BitmapIndex.evaluate(dataDir, rel, op.getPredicates());
+        if (rows == null) {
+            // 位图文件尚未构建：退化为全表扫描加逐条选择（谓词列未必在标注的列中，读全部列）
+            TupleIterator it = scanIterator(rel, null);
+            for (Predicate p : op.getPredicates()) {
+                it = new SelectIterator(it, p);
+            }
+            return it;
+        } else if (ColumnFile.exists(dataDir, rel)) {
+            // 列式存储可按行号随机访问，只取置位的行
+            return new ColumnScanIterator(rel, dataDir, op.getColumns(), rows);
+        }
+        return new BitmapFilterIterator(scanIterator(rel, op.getColumns()), rows);
+    }
+
+    public void visit(Project op) {
+        stack.push(new ProjectIterator(stack.pop(), op.getAttributes()));
+    }
+
+    public void visit(Select op) {
+        stack.push(new SelectIterator(stack.pop(), op.getPredicate()));
+    }
+
+    public void visit(Product op) {
+        TupleIterator right = stack.pop();
+        TupleIterator left  = stack.pop();
+        stack.push(new ProductIterator(left, right));
+    }
+
+    public void visit(Join op) {
+        TupleIterator right = stack.pop();
+        TupleIterator left  = stack.pop();
+        if (op.getMethod() == JoinMethod.SORT_MERGE) {
+            // 优化器判定两侧都大且规模相近：外部排序后归并
+            stack.push(new SortMergeJoinIterator(left, right, op.getPredicate(),
+                    joinMemoryBudget, spillDir));
+            return;
+        }
+        boolean buildLeft = buildOnLeft(op);
+        Sip sip = sips.get(op);
+        if (sip != null) {
+            // 构建侧读取时顺带填充过滤器；两种哈希连接都在读完构建侧后才打开探测侧
+            if (buildLeft) {
+                left = new BloomBuildIterator(left, sip.filter, sip.buildAttribute);
+            } else {
+                right = new BloomBuildIterator(right, sip.filter, sip.buildAttribute);
+            }
+        }
+        Operator buildSide = buildLeft ? op.getLeft() : op.getRight();
+        long buildRows = buildSide.getOutput().getTupleCount();
+        long buildBytes = Estimator.saturatingMultiply(buildRows,
+                estimateRowBytes(buildSide.getOutput().getAttributes().size()));
+        if (buildBytes > joinMemoryBudget) {
+            // 预计构建侧放不进内存：走可溢写的混合哈希连接
+            stack.push(new HybridHashJoinIterator(left, right, op.getPredicate(), buildLeft,
+                    joinMemoryBudget, buildRows, spillDir));
+        } else {
+            stack.push(new HashJoinIterator(left, right, op.getPredicate(), buildLeft));
+        }
+    }
+
+    /* ─────────────────────────── 旁路信息传递 ─────────────────────────── */
+
+    /**
+     * 为标注了布隆过滤器的哈希连接建立过滤器，并找到探测侧中产生连接键的扫描。
+     * 过滤放在扫描上，中间经过的 Select / Project / 内连接都只会减少行，结果不变。
+     */
+    private void planSideways(Operator op) {
+        if (op instanceof Scan) {
+            return;
+        }
+        for (Operator in : op.getInputs()) {
+            planSideways(in);
+        }
+        if (!(op instanceof Join) || !((Join) op).hasBloomFilter()
+                || ((Join) op).getMethod() != JoinMethod.HASH) {
+            return;
+        }
+        Join j = (Join) op;
+        boolean buildLeft = buildOnLeft(j);
+        Operator buildSide = buildLeft ? j.getLeft() : j.getRight();
+        Operator probeSide = buildLeft ? j.getRight() : j.getLeft();
+        Attribute a = j.getPredicate().getLeftAttribute();
+        Attribute b = j.getPredicate().getRightAttribute();
+        if (findScan(buildSide, a) == null) {
+            Attribute t = a;
+            a = b;
+            b = t;
+        }
+        Scan target = findScan(probeSide, b);
+        if (target == null) {
+            return;
+        }
+        Sip sip = new Sip(new BloomFilter(buildSide.getOutput().getTupleCount(), BloomFilter.DEFAULT_FPP), a, b);
+        sips.put(j, sip);
+        sipScans.computeIfAbsent(target, k -> new ArrayList<>()).add(sip);
+    }
+
+    /**
+     * @return 子树中关系含有 attr 的扫描；没有时返回 null
+     */
+    private static Scan findScan(Operator op, Attribute attr) {
+        if (op instanceof Scan) {
+            return ((Scan) op).getRelation().getAttributes().contains(attr) ? (Scan) op : null;
+        }
+        for (Operator in : op.getInputs()) {
+            Scan s = findScan(in, attr);
+            if (s != null) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 给扫描套上下推到它的布隆过滤器。
+     */
+    private TupleIterator sideways(Scan op, TupleIterator it) {
+        List<Sip> list = sipScans.get(op);
+        if (list != null) {
+            for (Sip sip : list) {
+                BloomFilterIterator f = new BloomFilterIterator(it, sip.filter, sip.probeAttribute);
+                sipFilters.add(f);
+                it = f;
+            }
+        }
+        return it;
+    }
+
+    /* ─────────────────────────── 工具 ─────────────────────────── */
+
+    /**
+     * 按 Estimator 的输出行数选择哈希连接的构建侧：行数较小的一侧建表，相等时建右侧。
+     * 计划尚未估算时先补做一次估算。
+     *
+     * @return true 表示在左侧建表
+     */
+    static boolean buildOnLeft(Join op) {
+        if (op.getLeft().getOutput() == null || op.getRight().getOutput() == null) {
+            new Estimator().estimate(op);
+        }
+        return op.getLeft().getOutput().getTupleCount() < op.getRight().getOutput().getTupleCount();
+    }
+
+    /**
+     * 估算一条 width 列元组在堆上的大小（数组头 + 每列一个短字符串）。
+     */
+    static long estimateRowBytes(int width) {
+        return 16 + width * (4 + 48L);
+    }
+
+    /**
+     * 估算一条具体元组在堆上的大小。
+     */
+    static long estimateRowBytes(String[] t) {
+        long bytes = 16 + 4L * t.length;
+        for (String s : t) {
+            bytes += 40 + s.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * 属性在 schema 中的下标；不存在时抛异常（与 Estimator 的报错方式一致）。
+     */
+    static int columnIndex(List<Attribute> schema, Attribute attr) {
+        int idx = schema.indexOf(attr);
+        if (idx < 0) {
+            throw new RuntimeException(new DatabaseException(
+                    "Attribute '" + attr.getName() + "' does not exist in input relation!"));
+        }
+        return idx;
+    }
+
+    /**
+     * 连接谓词两侧在左右 schema 中的列下标 {左, 右}，谓词左右顺序可以与输入相反。
+     */
+    static int[] joinColumns(List<Attribute> left, List<Attribute> right, Predicate p) {
+        if (left.contains(p.getLeftAttribute()) && right.contains(p.getRightAttribute())) {
+            return new int[] { left.indexOf(p.getLeftAttribute()), right.indexOf(p.getRightAttribute()) };
+        }
+        if (left.contains(p.getRightAttribute()) && right.contains(p.getLeftAttribute())) {
+            return new int[] { left.indexOf(p.getRightAttribute()), right.indexOf(p.getLeftAttribute()) };
+        }
+        throw new RuntimeException(new DatabaseException(
+                "Join error: can't find " + p.getLeftAttribute() + " or "
+                        + p.getRightAttribute() + " in left/right relation!"));
+    }
+
+    /**
+     * 打开并读完一个迭代器，返回所有元组。
+     */
+    static List<String[]> materialise(TupleIterator it) {
+        List<String[]> rows = new ArrayList<>();
+        try {
+            it.open();
+            String[] t;
+            while ((t = it.next()) != null) {
+                rows.add(t);
+            }
+        } finally {
+            it.close();
+        }
+        return rows;
+    }
+
+    static String[] concat(String[] l, String[] r) {
+        String[] out = new String[l.length + r.length];
+        System.arraycopy(l, 0, out, 0, l.length);
+        System.arraycopy(r, 0, out, l.length, r.length);
+        return out;
+    }
+
+    private static String join(List<Attribute> schema) {
+        StringBuilder sb = new StringBuilder();
+        for (Attribute a : schema) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(a.getName());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,296 @@
+package sjdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 外部 k 路归并排序：按某一列排序输入元组。
+ *
+ * 1. 读入元组直到超出内存预算，在内存中排序后压缩（GZIP）写成一个有序段（run）；
+ * 2. 全部输入读完后，若只有内存中的一段则直接输出；
+ * 3. 否则用优先队列做 k 路归并，段数超过 MAX_FAN_IN 时先做中间归并，每轮最多合并 MAX_FAN_IN 段。
+ *
+ * 排序使用 String.compareTo，与 equals 一致，可直接用于等值归并连接。
+ */
+public class ExternalSortIterator implements TupleIterator {
+    /** 一次归并最多同时打开的段数 */
+    static final int MAX_FAN_IN = 64;
+
+    private final TupleIterator input;
+    private final int keyColumn;
+    private final long budget;
+    private final Path tmpDir;
+    private final Comparator<String[]> order;
+
+    private List<String[]> memoryRun;
+    private int memoryPos;
+    private List<Path> runs;
+    /** 本次排序写出的全部段文件（含写到一半的）；读完的段由 RunReader 删除，其余在出错或 close 时删除 */
+    private final List<Path> runFiles = new ArrayList<>();
+    private PriorityQueue<RunReader> heap;
+    private List<RunReader> readers;
+    private int runsWritten;
+
+    public ExternalSortIterator(TupleIterator input, int keyColumn, long budget, Path tmpDir) {
+        this.input = input;
+        this.keyColumn = keyColumn;
+        this.budget = budget;
+        this.tmpDir = tmpDir;
+        this.order = Comparator.comparing(t -> t[keyColumn]);
+    }
+
+    public void open() {
+        deleteRuns();
+        runs = new ArrayList<>();
+        runsWritten = 0;
+        try {
+            sortInput();
+        } catch (RuntimeException | Error e) {
+            // 例如写第 N 段时磁盘已满：已写出的段与写到一半的段都不再有用
+            try {
+                closeMerge();
+            } catch (RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            deleteRuns();
+            throw e;
+        }
+    }
+
+    /**
+     * 读入并排序全部输入：放得下时留在内存，否则写成有序段并打开归并。
+     */
+    private void sortInput() {
+        List<String[]> buffer = new ArrayList<>();
+        long bytes = 0;
+        try {
+            input.open();
+            String[] t;
+            while ((t = input.next()) != null) {
+                buffer.add(t);
+                bytes += Executor.estimateRowBytes(t);
+                if (bytes > budget) {
+                    runs.add(writeRun(buffer));
+                    buffer = new ArrayList<>();
+                    bytes = 0;
+                }
+            }
+        } finally {
+            input.close();
+        }
+
+        buffer.sort(order);
+        if (runs.isEmpty()) {
+            // 全部放得下：不落盘
+            memoryRun = buffer;
+            memoryPos = 0;
+            return;
+        }
+        if (!buffer.isEmpty()) {
+            runs.add(writeSorted(buffer.iterator()));
+        }
+        while (runs.size() > MAX_FAN_IN) {
+            List<Path> merged = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                List<Path> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+                merged.add(mergeToRun(group));
+            }
+            runs = merged;
+        }
+        openMerge(runs);
+    }
+
+    private Path writeRun(List<String[]> buffer) {
+        buffer.sort(order);
+        return writeSorted(buffer.iterator());
+    }
+
+    private Path writeSorted(Iterator<String[]> rows) {
+        try {
+            Path run = Files.createTempFile(tmpDir, "sjdb-run", ".gz");
+            runFiles.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(run), 64 * 1024)))) {
+                while (rows.hasNext()) {
+                    String[] t = rows.next();
+                    out.writeInt(t.length);
+                    for (String f : t) {
+                        byte[] b = f.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(b.length);
+                        out.write(b);
+                    }
+                }
+            }
+            runsWritten++;
+            return run;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write sorted run in " + tmpDir, e);
+        }
+    }
+
+    /**
+     * 中间归并：把若干段合并成一个新段，并删除原来的段。
+     */
+    private Path mergeToRun(List<Path> group) {
+        openMerge(group);
+        Path merged = writeSorted(new Iterator<String[]>() {
+            String[] nextRow = pollMerge();
+
+            public boolean hasNext() {
+                return nextRow != null;
+            }
+
+            public String[] next() {
+                String[] t = nextRow;
+                nextRow = pollMerge();
+                return t;
+            }
+        });
+        closeMerge();
+        return merged;
+    }
+
+    private void openMerge(List<Path> group) {
+        heap = new PriorityQueue<>((a, b) -> order.compare(a.head, b.head));
+        readers = new ArrayList<>();
+        for (Path p : group) {
+            RunReader r = new RunReader(p);
+            readers.add(r);
+            if (r.advance()) {
+                heap.add(r);
+            }
+        }
+    }
+
+    private String[] pollMerge() {
+        RunReader r = heap.poll();
+        if (r == null) {
+            return null;
+        }
+        String[] t = r.head;
+        if (r.advance()) {
+            heap.add(r);
+        }
+        return t;
+    }
+
+    private void closeMerge() {
+        if (readers != null) {
+            for (RunReader r : readers) {
+                r.close();
+            }
+            readers = null;
+        }
+        heap = null;
+    }
+
+    public String[] next() {
+        if (memoryRun != null) {
+            return (memoryPos < memoryRun.size()) ? memoryRun.get(memoryPos++) : null;
+        }
+        return pollMerge();
+    }
+
+    public void close() {
+        memoryRun = null;
+        try {
+            closeMerge();
+        } finally {
+            deleteRuns();
+        }
+    }
+
+    /**
+     * 删除尚未被读完删除的段文件（包括还没交给 RunReader 的）。
+     */
+    private void deleteRuns() {
+        for (Path run : runFiles) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                // 尽力清理：删除失败的临时文件留给系统清理
+            }
+        }
+        runFiles.clear();
+    }
+
+    public List<Attribute> getSchema() {
+        return input.getSchema();
+    }
+
+    /**
+     * @return 本次排序写出的有序段个数（含中间归并产生的段）
+     */
+    public int getRunsWritten() {
+        return runsWritten;
+    }
+
+    /**
+     * 顺序读取一个压缩有序段；读完或关闭时删除文件。
+     */
+    private static class RunReader {
+        private final Path path;
+        private DataInputStream in;
+        String[] head;
+
+        RunReader(Path path) {
+            this.path = path;
+            try {
+                this.in = new DataInputStream(new BufferedInputStream(
+                        new GZIPInputStream(Files.newInputStream(path), 64 * 1024)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        boolean advance() {
+            try {
+                int n;
+                try {
+                    n = in.readInt();
+                } catch (EOFException eof) {
+                    head = null;
+                    close();
+                    return false;
+                }
+                String[] t = new String[n];
+                for (int i = 0; i < n; i++) {
+                    byte[] b = new byte[in.readInt()];
+                    in.readFully(b);
+                    t[i] = new String(b, StandardCharsets.UTF_8);
+                }
+                head = t;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void close() {
+            try {
+                if (in != null) {
+                    in.close();
+                    in = null;
+                }
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 行式哈希等值连接：open 时物化构建侧并以键的 hashCode 装入 LongHashTable，
+ * 之后流式读取探测侧，逐条查表并用 equals 校验（排除哈希冲突）。
+ *
+ * 构建侧由 Estimator 的输出行数决定；输出列顺序总是左侧列在前、右侧列在后。
+ * 探测时只做数组访问，除输出元组本身外不分配对象。
+ */
+public class HashJoinIterator implements TupleIterator {
+    private final TupleIterator probe;
+    private final TupleIterator build;
+    private final boolean buildLeft;
+    private final List<Attribute> schema;
+    private final int probeKey;
+    private final int buildKey;
+
+    private List<String[]> buildRows;
+    private LongHashTable hash;
+    private String[] current;
+    private int chain = -1;
+
+    public HashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate, boolean buildLeft) {
+        this.buildLeft = buildLeft;
+        this.probe = buildLeft ? right : left;
+        this.build = buildLeft ? left : right;
+        this.schema = new ArrayList<Attribute>(left.getSchema());
+        this.schema.addAll(right.getSchema());
+        int[] cols = Executor.joinColumns(left.getSchema(), right.getSchema(), predicate);
+        this.probeKey = buildLeft ? cols[1] : cols[0];
+        this.buildKey = buildLeft ? cols[0] : cols[1];
+    }
+
+    public void open() {
+        buildRows = Executor.materialise(build);
+        hash = new LongHashTable(buildRows.size());
+        for (int j = buildRows.size() - 1; j >= 0; j--) {
+            hash.put(buildRows.get(j)[buildKey].hashCode(), j);
+        }
+        probe.open();
+        current = null;
+        chain = -1;
+    }
+
+    public String[] next() {
+        while (true) {
+            while (chain >= 0) {
+                String[] b = buildRows.get(chain);
+                chain = hash.next(chain);
+                if (b[buildKey].equals(current[probeKey])) {
+                    return buildLeft ? Executor.concat(b, current) : Executor.concat(current, b);
+                }
+            }
+            current = probe.next();
+            if (current == null) {
+                return null;
+            }
+            chain = hash.first(current[probeKey].hashCode());
+        }
+    }
+
+    public void close() {
+        probe.close();
+        buildRows = null;
+        hash = null;
+    }
+
+    public List<Attribute> getSchema() {
+        return schema;
+    }
+}
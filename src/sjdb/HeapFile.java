@@ -0,0 +1,153 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 关系的行式堆文件（&lt;数据目录&gt;/&lt;关系名&gt;.heap）：由定长分槽页（{@link SlottedPage}）顺序组成。
+ * 读取经由 {@link BufferPool}，本类只负责按页号做文件 I/O。
+ */
+public class HeapFile {
+    private final Path path;
+    private FileChannel channel;
+
+    public HeapFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @return 关系对应的堆文件路径
+     */
+    public static Path file(Path dataDir, Relation relation) {
+        return dataDir.resolve(relation.toString() + ".heap");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return 文件中的页数
+     */
+    public synchronized int getPageCount() {
+        try {
+            return (int) (channel().size() / SlottedPage.PAGE_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read heap file " + path, e);
+        }
+    }
+
+    /**
+     * 从 first 页起连续读入 dst 剩余空间能容纳的页（一次 I/O，供预读使用）。
+     *
+     * @return 实际读入的页数
+     */
+    synchronized int readPages(int first, ByteBuffer dst) {
+        try {
+            long pos = (long) first * SlottedPage.PAGE_SIZE;
+            int start = dst.position();
+            while (dst.hasRemaining()) {
+                int n = channel().read(dst, pos + (dst.position() - start));
+                if (n < 0) {
+                    break;
+                }
+            }
+            return (dst.position() - start) / SlottedPage.PAGE_SIZE;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read heap file " + path, e);
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    public String toString() {
+        return path.toString();
+    }
+
+    /**
+     * 把一个关系的元组流写成堆文件（顺序填页，不经缓冲池）。
+     *
+     * @return 写入的页数
+     */
+    public static int write(Relation relation, TupleIterator rows, Path dataDir) {
+        Path path = file(dataDir, relation);
+        ByteBuffer page = ByteBuffer.allocate(SlottedPage.PAGE_SIZE);
+        SlottedPage.init(page);
+        int pages = 0;
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            try {
+                rows.open();
+                String[] t;
+                while ((t = rows.next()) != null) {
+                    byte[] record = SlottedPage.encode(t);
+                    if (SlottedPage.insert(page, record) < 0) {
+                        writePage(out, page);
+                        pages++;
+                        SlottedPage.init(page);
+                        SlottedPage.insert(page, record);
+                    }
+                }
+            } finally {
+                rows.close();
+            }
+            if (SlottedPage.slotCount(page) > 0) {
+                writePage(out, page);
+                pages++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write heap file " + path, e);
+        }
+        return pages;
+    }
+
+    private static void writePage(FileChannel out, ByteBuffer page) throws IOException {
+        page.clear();
+        while (page.hasRemaining()) {
+            out.write(page);
+        }
+        page.clear();
+        // 清掉上一页的残留字节，保证文件内容确定
+        Arrays.fill(page.array(), (byte) 0);
+    }
+
+    /**
+     * 把目录中所有有 CSV 数据的关系转换成堆文件。
+     * 用法：java sjdb.HeapFile &lt;cat.txt&gt;（CSV 与输出文件均在 cat.txt 同目录）
+     */
+    public static void main(String[] args) throws Exception {
+        Catalogue cat = new Catalogue();
+        new CatalogueParser(args[0], cat).parse();
+        Path dataDir = Paths.get(args[0]).toAbsolutePath().getParent();
+        for (NamedRelation rel : cat.getRelations()) {
+            if (Files.isReadable(ScanIterator.dataFile(dataDir, rel))) {
+                int pages = write(rel, new ScanIterator(rel, dataDir), dataDir);
+                System.out.println(rel + ": " + pages + " pages -> " + file(dataDir, rel));
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package sjdb;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 经缓冲池顺序扫描关系的堆文件。同一时刻只 pin 当前页，翻页时先 unpin；
+ * 未命中时由缓冲池预读后续页。
+ */
+public class HeapScanIterator implements TupleIterator {
+    private final NamedRelation relation;
+    private final Path path;
+    private final BufferPool pool;
+    private final int readAhead;
+    private final int width;
+    private HeapFile file;
+    private int pages;
+    private int page;
+    private ByteBuffer current;
+    private int slots;
+    private int slot;
+
+    public HeapScanIterator(NamedRelation relation, Path dataDir, BufferPool pool) {
+        this(relation, dataDir, pool, BufferPool.DEFAULT_READ_AHEAD);
+    }
+
+    public HeapScanIterator(NamedRelation relation, Path dataDir, BufferPool pool, int readAhead) {
+        this.relation = relation;
+        this.path = HeapFile.file(dataDir, relation);
+        this.pool = pool;
+        this.readAhead = readAhead;
+        this.width = relation.getAttributes().size();
+    }
+
+    public void open() {
+        file = new HeapFile(path);
+        pages = file.getPageCount();
+        page = -1;
+        current = null;
+    }
+
+    public String[] next() {
+        while (current == null || slot >= slots) {
+            release();
+            if (++page >= pages) {
+                return null;
+            }
+            current = pool.pin(file, page, readAhead);
+            slots = SlottedPage.slotCount(current);
+            slot = 0;
+        }
+        return SlottedPage.read(current, slot++, width);
+    }
+
+    private void release() {
+        if (current != null) {
+            current = null;
+            pool.unpin(file, page);
+        }
+    }
+
+    public void close() {
+        if (file != null) {
+            release();
+            file.close();
+            file = null;
+        }
+    }
+
+    public List<Attribute> getSchema() {
+        return relation.getAttributes();
+    }
+}
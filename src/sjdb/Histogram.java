@@ -0,0 +1,155 @@
+package sjdb;
+
+/**
+ * 等深（equi-depth）直方图：k 个桶由 k+1 个有序边界给出，每个桶约含 1/k 的元组。
+ *
+ * 在系统目录中写作属性的可选项：
+ *
+ * <attr name>,<value count>,hist=<b0>;<b1>;...;<bk>
+ *
+ * 边界值按 compareValues() 的顺序排列：两边都能解析为数字时按数值比较，否则按字符串比较。
+ */
+public class Histogram {
+	private final String[] bounds;
+
+	/**
+	 * @param bounds 有序的桶边界，至少两个
+	 */
+	public Histogram(String[] bounds) {
+		if (bounds.length < 2) {
+			throw new IllegalArgumentException("Histogram needs at least two bounds");
+		}
+		this.bounds = bounds.clone();
+	}
+
+	/**
+	 * 解析目录中 "hist=" 之后的部分，形如 b0;b1;...;bk
+	 */
+	public static Histogram parse(String spec) {
+		return new Histogram(spec.split(";", 0));
+	}
+
+	/**
+	 * @return 桶的个数
+	 */
+	public int getBucketCount() {
+		return bounds.length - 1;
+	}
+
+	/**
+	 * @return 桶边界（副本）
+	 */
+	public String[] getBounds() {
+		return bounds.clone();
+	}
+
+	/**
+	 * 值是否落在直方图的 [最小值, 最大值] 范围内；范围外的等值谓词几乎选不到任何元组。
+	 */
+	public boolean covers(String value) {
+		return compareValues(value, bounds[0]) >= 0
+				&& compareValues(value, bounds[bounds.length - 1]) <= 0;
+	}
+
+	/**
+	 * 估算 attr=value 的选择率。
+	 * 若 value 同时是若干相邻边界（即它独占了若干整桶），按这些桶的占比计算；
+	 * 否则在范围内按均匀分布取 1/distinct。
+	 *
+	 * @param value    常量值
+	 * @param distinct 该属性的 distinct 值个数
+	 */
+	public double equalityFraction(String value, long distinct) {
+		if (!covers(value)) {
+			return 0.0;
+		}
+		int k = getBucketCount();
+		int full = 0;
+		for (int i = 0; i < k; i++) {
+			if (compareValues(bounds[i], value) == 0 && compareValues(bounds[i + 1], value) == 0) {
+				full++;
+			}
+		}
+		double uniform = 1.0 / Math.max(1, distinct);
+		return Math.max(uniform, (double) full / k);
+	}
+
+	/**
+	 * 估算范围谓词的选择率：落在 (low, high) 之间的元组比例。
+	 *
+	 * @param low           下界，null 表示无下界
+	 * @param lowInclusive  下界是否包含
+	 * @param high          上界，null 表示无上界
+	 * @param highInclusive 上界是否包含
+	 */
+	public double rangeFraction(String low, boolean lowInclusive, String high, boolean highInclusive) {
+		double upper = (high == null) ? 1.0 : fractionBelow(high, highInclusive);
+		double lower = (low == null) ? 0.0 : fractionBelow(low, !lowInclusive);
+		return Math.max(0.0, Math.min(1.0, upper - lower));
+	}
+
+	/**
+	 * 小于 value（inclusive 时为小于等于）的元组比例。
+	 * 完全在 value 之下的桶整桶计入；value 落在桶内时，数值型按线性插值，
+	 * 非数值型按半个桶计。
+	 */
+	double fractionBelow(String value, boolean inclusive) {
+		int k = getBucketCount();
+		double acc = 0;
+		for (int i = 0; i < k; i++) {
+			int cHi = compareValues(value, bounds[i + 1]);
+			int cLo = compareValues(value, bounds[i]);
+			if (cHi > 0 || (cHi == 0 && inclusive)) {
+				acc += 1.0;
+			} else if (cLo > 0) {
+				acc += interpolate(bounds[i], bounds[i + 1], value);
+			}
+		}
+		return acc / k;
+	}
+
+	private static double interpolate(String lo, String hi, String value) {
+		Double l = toNumber(lo), h = toNumber(hi), v = toNumber(value);
+		if (l == null || h == null || v == null || h <= l) {
+			return 0.5;
+		}
+		return Math.max(0.0, Math.min(1.0, (v - l) / (h - l)));
+	}
+
+	/**
+	 * 值的比较规则：两边都是数字则按数值比较，否则按字符串字典序比较。
+	 */
+	public static int compareValues(String a, String b) {
+		Double da = toNumber(a);
+		Double db = toNumber(b);
+		if (da != null && db != null) {
+			return Double.compare(da, db);
+		}
+		return a.compareTo(b);
+	}
+
+	/**
+	 * @return 数值形式；不是数字时返回 null
+	 */
+	static Double toNumber(String s) {
+		if (s == null || s.isEmpty()) {
+			return null;
+		}
+		char c = s.charAt(0);
+		if (!(Character.isDigit(c) || c == '-' || c == '+' || c == '.')) {
+			return null;
+		}
+		try {
+			return Double.valueOf(s);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 序列化为目录中的写法（不含 "hist=" 前缀）
+	 */
+	public String render() {
+		return String.join(";", bounds);
+	}
+}
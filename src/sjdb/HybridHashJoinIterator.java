@@ -0,0 +1,295 @@
+package sjdb;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 混合（hybrid / Grace）哈希等值连接：构建侧超出内存预算时按键哈希分区，
+ * 预算允许的分区留在内存，其余分区溢写到临时文件（SpillFile，基于 FileChannel）。
+ *
+ * 1. 构建：逐条读取构建侧并分区；内存占用超出预算时，把最大的内存分区整体溢写，
+ *    之后落入该分区的元组直接追加到文件。
+ * 2. 探测：探测侧元组若落在内存分区，立即查表输出；否则写入该分区的探测溢写文件。
+ * 3. 收尾：对每对溢写分区递归执行同一算法（换一个哈希种子重新分区），
+ *    因此倾斜导致过大的分区会被继续切分；递归到 MAX_LEVEL 层仍过大时（如单个热点键）
+ *    不再切分，直接在内存中连接。
+ *
+ * 输出列顺序总是左侧列在前、右侧列在后。溢写分区的结果在所有内存分区结果之后输出。
+ */
+public class HybridHashJoinIterator implements TupleIterator {
+    /** 最大递归分区层数 */
+    static final int MAX_LEVEL = 4;
+    /** 每层分区数上限 */
+    static final int MAX_PARTITIONS = 256;
+
+    private final TupleIterator probe;
+    private final TupleIterator build;
+    private final boolean buildLeft;
+    private final List<Attribute> schema;
+    private final int probeKey;
+    private final int buildKey;
+    private final long budget;
+    private final int partitions;
+    private final int level;
+    private final Path spillDir;
+
+    /* 每个分区的状态：内存中的行 + 哈希表，或两侧的溢写文件 */
+    private List<List<String[]>> resident;
+    private LongHashTable[] tables;
+    private SpillFile[] buildSpill;
+    private SpillFile[] probeSpill;
+    private long residentBytes;
+    private int spilledPartitions;
+
+    private String[] current;
+    private List<String[]> currentRows;
+    private LongHashTable currentTable;
+    private int chain = -1;
+    private boolean probeDone;
+    private int nextSpilled;
+    private TupleIterator sub;
+
+    /**
+     * @param estimatedBuildRows Estimator 给出的构建侧元组数，用于确定初始分区数
+     */
+    public HybridHashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate,
+                                  boolean buildLeft, long budget, long estimatedBuildRows, Path spillDir) {
+        this(buildLeft ? left : right, buildLeft ? right : left, buildLeft,
+                concatSchema(left, right), keys(left, right, predicate, buildLeft), budget,
+                partitionCount(Estimator.saturatingMultiply(estimatedBuildRows, Executor.estimateRowBytes(
+                        (buildLeft ? left : right).getSchema().size())), budget),
+                0, spillDir);
+    }
+
+    private HybridHashJoinIterator(TupleIterator build, TupleIterator probe, boolean buildLeft,
+                                   List<Attribute> schema, int[] keys, long budget,
+                                   int partitions, int level, Path spillDir) {
+        this.build = build;
+        this.probe = probe;
+        this.buildLeft = buildLeft;
+        this.schema = schema;
+        this.buildKey = keys[0];
+        this.probeKey = keys[1];
+        this.budget = budget;
+        this.partitions = partitions;
+        this.level = level;
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * 初始分区数：预计构建侧字节数 / 预算，留 20% 余量，限定在 [2, MAX_PARTITIONS]。
+     */
+    static int partitionCount(long estimatedBytes, long budget) {
+        long n = (long) Math.ceil(estimatedBytes * 1.2 / Math.max(1, budget));
+        return (int) Math.max(2, Math.min(MAX_PARTITIONS, n));
+    }
+
+    public void open() {
+        resident = new ArrayList<>();
+        tables = new LongHashTable[partitions];
+        buildSpill = new SpillFile[partitions];
+        probeSpill = new SpillFile[partitions];
+        for (int p = 0; p < partitions; p++) {
+            resident.add(new ArrayList<String[]>());
+        }
+        residentBytes = 0;
+        spilledPartitions = 0;
+
+        /* 1. 构建侧分区，超预算时溢写最大的内存分区 */
+        try {
+            build.open();
+            String[] t;
+            while ((t = build.next()) != null) {
+                int p = partition(t[buildKey]);
+                if (buildSpill[p] != null) {
+                    buildSpill[p].append(t);
+                    continue;
+                }
+                resident.get(p).add(t);
+                residentBytes += Executor.estimateRowBytes(t);
+                while (residentBytes > budget && spillLargest()) {
+                    // 继续溢写直到回到预算以内或已无内存分区
+                }
+            }
+        } finally {
+            build.close();
+        }
+
+        for (int p = 0; p < partitions; p++) {
+            if (buildSpill[p] != null) {
+                buildSpill[p].finishWrite();
+                continue;
+            }
+            List<String[]> rows = resident.get(p);
+            tables[p] = new LongHashTable(rows.size());
+            for (int j = rows.size() - 1; j >= 0; j--) {
+                tables[p].put(rows.get(j)[buildKey].hashCode(), j);
+            }
+        }
+
+        probe.open();
+        current = null;
+        chain = -1;
+        probeDone = false;
+        nextSpilled = 0;
+        sub = null;
+    }
+
+    /**
+     * 把当前最大的内存分区溢写到文件。
+     * @return 是否溢写了分区（没有可溢写的内存分区时返回 false）
+     */
+    private boolean spillLargest() {
+        int victim = -1;
+        long most = 0;
+        for (int p = 0; p < partitions; p++) {
+            if (buildSpill[p] == null && resident.get(p).size() > most) {
+                most = resident.get(p).size();
+                victim = p;
+            }
+        }
+        if (victim < 0) {
+            return false;
+        }
+        SpillFile f = new SpillFile(spillDir);
+        for (String[] t : resident.get(victim)) {
+            f.append(t);
+            residentBytes -= Executor.estimateRowBytes(t);
+        }
+        resident.set(victim, null);
+        buildSpill[victim] = f;
+        probeSpill[victim] = new SpillFile(spillDir);
+        spilledPartitions++;
+        return true;
+    }
+
+    public String[] next() {
+        /* 2. 探测内存分区，溢写分区的探测元组写入文件 */
+        while (!probeDone) {
+            while (chain >= 0) {
+                String[] b = currentRows.get(chain);
+                chain = currentTable.next(chain);
+                if (b[buildKey].equals(current[probeKey])) {
+                    return buildLeft ? Executor.concat(b, current) : Executor.concat(current, b);
+                }
+            }
+            current = probe.next();
+            if (current == null) {
+                probeDone = true;
+                probe.close();
+                for (SpillFile f : probeSpill) {
+                    if (f != null) {
+                        f.finishWrite();
+                    }
+                }
+                break;
+            }
+            int p = partition(current[probeKey]);
+            if (probeSpill[p] != null) {
+                probeSpill[p].append(current);
+            } else {
+                currentRows = resident.get(p);
+                currentTable = tables[p];
+                chain = currentTable.first(current[probeKey].hashCode());
+            }
+        }
+
+        /* 3. 逐对处理溢写分区：递归分区或直接在内存中连接 */
+        while (true) {
+            if (sub != null) {
+                String[] t = sub.next();
+                if (t != null) {
+                    return t;
+                }
+                sub.close();
+                sub = null;
+            }
+            while (nextSpilled < partitions && buildSpill[nextSpilled] == null) {
+                nextSpilled++;
+            }
+            if (nextSpilled >= partitions) {
+                return null;
+            }
+            int p = nextSpilled++;
+            sub = subJoin(p);
+            sub.open();
+        }
+    }
+
+    /**
+     * 为溢写分区 p 构造子连接：下一层换哈希种子重新分区；
+     * 已到最大层数时预算视为无限，整个分区在内存中连接。
+     */
+    private TupleIterator subJoin(int p) {
+        SpillFile b = buildSpill[p];
+        SpillFile pr = probeSpill[p];
+        TupleIterator bIn = b.reader(build.getSchema());
+        TupleIterator pIn = pr.reader(probe.getSchema());
+        boolean last = level + 1 >= MAX_LEVEL;
+        long subBudget = last ? Long.MAX_VALUE : budget;
+        int subParts = last ? 1 : partitionCount(b.getBytes(), budget);
+        return new HybridHashJoinIterator(bIn, pIn, buildLeft, schema,
+                new int[] { buildKey, probeKey }, subBudget, subParts, level + 1, spillDir) {
+            @Override
+            public void close() {
+                super.close();
+                b.delete();
+                pr.delete();
+            }
+        };
+    }
+
+    /**
+     * 分区号：按层换用不同的哈希种子，保证递归时同一分区内的键能被重新打散。
+     */
+    private int partition(String key) {
+        if (partitions == 1) {
+            return 0;
+        }
+        int h = LongHashTable.hash(key.hashCode() ^ (0x9E3779B97F4A7C15L * (level + 1)));
+        return Math.floorMod(h, partitions);
+    }
+
+    /**
+     * @return 本层溢写到磁盘的分区数
+     */
+    public int getSpilledPartitions() {
+        return spilledPartitions;
+    }
+
+    public void close() {
+        if (!probeDone) {
+            probe.close();
+        }
+        if (sub != null) {
+            sub.close();
+            sub = null;
+        }
+        if (buildSpill != null) {
+            for (int p = 0; p < partitions; p++) {
+                if (buildSpill[p] != null) {
+                    buildSpill[p].delete();
+                    probeSpill[p].delete();
+                }
+            }
+        }
+        resident = null;
+        tables = null;
+    }
+
+    public List<Attribute> getSchema() {
+        return schema;
+    }
+
+    private static List<Attribute> concatSchema(TupleIterator left, TupleIterator right) {
+        List<Attribute> schema = new ArrayList<Attribute>(left.getSchema());
+        schema.addAll(right.getSchema());
+        return schema;
+    }
+
+    private static int[] keys(TupleIterator left, TupleIterator right, Predicate predicate, boolean buildLeft) {
+        int[] cols = Executor.joinColumns(left.getSchema(), right.getSchema(), predicate);
+        return buildLeft ? new int[] { cols[0], cols[1] } : new int[] { cols[1], cols[0] };
+    }
+}
@@ -0,0 +1,51 @@
+package sjdb;
+
+/**
+ * This class implements an index scan: it feeds into a query plan the
+ * tuples of a NamedRelation that satisfy an attr=value predicate, found
+ * through a B+-tree secondary index on the attribute instead of by
+ * reading the whole relation.
+ */
+public class IndexScan extends Scan {
+	/**
+	 * The attr=value predicate answered by the index
+	 */
+	private Predicate predicate;
+
+	/**
+	 * Create a new index scan of a given named relation
+	 * @param relation Named relation to be scanned
+	 * @param predicate attr=value predicate on an indexed attribute
+	 */
+	public IndexScan(NamedRelation relation, Predicate predicate) {
+		super(relation);
+		if (!predicate.equalsValue()) {
+			throw new IllegalArgumentException("Index scan needs an attr=value predicate: " + predicate);
+		}
+		this.predicate = predicate;
+	}
+
+	/**
+	 * Return the predicate answered by the index
+	 * @return attr=value predicate
+	 */
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "INDEX [" + this.predicate.toString() + "] (" + super.toString() + ")";
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#accept(sjdb.OperatorVisitor)
+	 */
+	@Override
+	public void accept(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+}
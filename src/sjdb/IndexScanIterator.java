@@ -0,0 +1,78 @@
+package sjdb;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 经 B+ 树索引读取满足 attr=value 的元组：先在索引中查出 RID（已按 RID 排序），
+ * 再经缓冲池按页取出堆文件中的记录；连续落在同一页的 RID 只 pin 一次。
+ */
+public class IndexScanIterator implements TupleIterator {
+    private final NamedRelation relation;
+    private final Predicate predicate;
+    private final Path heapPath;
+    private final Path indexPath;
+    private final BufferPool pool;
+    private final int width;
+    private HeapFile heap;
+    private long[] rids;
+    private int pos;
+    private int pinned = -1;
+    private ByteBuffer page;
+
+    public IndexScanIterator(NamedRelation relation, Predicate predicate, Path dataDir, BufferPool pool) {
+        this.relation = relation;
+        this.predicate = predicate;
+        this.heapPath = HeapFile.file(dataDir, relation);
+        this.indexPath = BTreeIndex.file(dataDir, relation, predicate.getLeftAttribute().getName());
+        this.pool = pool;
+        this.width = relation.getAttributes().size();
+    }
+
+    public void open() {
+        HeapFile index = new HeapFile(indexPath);
+        try {
+            rids = BTreeIndex.lookup(index, pool, predicate.getRightValue());
+        } finally {
+            index.close();
+        }
+        heap = new HeapFile(heapPath);
+        pos = 0;
+    }
+
+    public String[] next() {
+        if (pos >= rids.length) {
+            release();
+            return null;
+        }
+        long rid = rids[pos++];
+        int p = BTreeIndex.ridPage(rid);
+        if (p != pinned) {
+            release();
+            page = pool.pin(heap, p);
+            pinned = p;
+        }
+        return SlottedPage.read(page, BTreeIndex.ridSlot(rid), width);
+    }
+
+    private void release() {
+        if (pinned >= 0) {
+            pool.unpin(heap, pinned);
+            pinned = -1;
+            page = null;
+        }
+    }
+
+    public void close() {
+        if (heap != null) {
+            release();
+            heap.close();
+            heap = null;
+        }
+    }
+
+    public List<Attribute> getSchema() {
+        return relation.getAttributes();
+    }
+}
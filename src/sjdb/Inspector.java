@@ -14,6 +14,20 @@ public class Inspector implements PlanVisitor {
 		System.out.println("  out: " + op.getOutput().render());
 	}
 
+	@Override
+	public void visit(IndexScan op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getRelation().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(BitmapScan op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getRelation().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
 	@Override
 	public void visit(Project op) {
 		// TODO Auto-generated method stub
@@ -43,6 +57,12 @@ public class Inspector implements PlanVisitor {
 	public void visit(Join op) {
 		// TODO Auto-generated method stub
 		System.out.println(op.toString());
+		if (op.getMethod() != JoinMethod.HASH) {
+			System.out.println("  via: " + op.getMethod());
+		}
+		if (op.hasBloomFilter()) {
+			System.out.println("  sip: bloom filter on " + (Executor.buildOnLeft(op) ? "left" : "right") + " input");
+		}
 		System.out.println("  inl: " + op.getLeft().getOutput().render());
 		System.out.println("  inr: " + op.getRight().getOutput().render());
 		System.out.println("  out: " + op.getOutput().render());
@@ -6,6 +6,8 @@ package sjdb;
  */
 public class Join extends BinaryOperator {
 	private Predicate predicate;
+	private JoinMethod method = JoinMethod.HASH;
+	private boolean bloomFilter;
 	/**
 	 * Create a new join operator.
 	 * @param left Left child operator
@@ -20,6 +22,37 @@ public class Join extends BinaryOperator {
 	public Predicate getPredicate() {
 		return this.predicate;
 	}
+
+	/**
+	 * @return Physical join method chosen by the optimiser (HASH by default)
+	 */
+	public JoinMethod getMethod() {
+		return this.method;
+	}
+
+	/**
+	 * Set the physical join method used by the executor.
+	 * @param method Join method
+	 */
+	public void setMethod(JoinMethod method) {
+		this.method = method;
+	}
+
+	/**
+	 * @return Whether the optimiser asked for a Bloom filter to be built on the
+	 * hash build side and pushed into the probe-side scan
+	 */
+	public boolean hasBloomFilter() {
+		return this.bloomFilter;
+	}
+
+	/**
+	 * Mark this join for sideways information passing via a Bloom filter.
+	 * @param bloomFilter true to build and push down a filter
+	 */
+	public void setBloomFilter(boolean bloomFilter) {
+		this.bloomFilter = bloomFilter;
+	}
 	
 	/* (non-Javadoc)
 	 * @see sjdb.BinaryOperator#accept(sjdb.OperatorVisitor)
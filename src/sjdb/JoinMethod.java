@@ -0,0 +1,11 @@
+package sjdb;
+
+/**
+ * 逻辑 Join 的物理实现方式，由 Optimiser 根据 Estimator 的基数选择，执行器据此构造算子。
+ */
+public enum JoinMethod {
+    /** 哈希连接（构建侧放不进内存时由执行器退化为可溢写的混合哈希连接） */
+    HASH,
+    /** 排序归并连接：两侧都很大且规模相近时使用 */
+    SORT_MERGE
+}
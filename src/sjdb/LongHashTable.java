@@ -0,0 +1,80 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * 专门用于整数键的开放寻址哈希表（线性探测），供哈希连接的构建侧使用。
+ *
+ * 构建侧的行号 0..rows-1 事先已知：每个槽位保存键和该键的第一行，
+ * 同键的其余行通过 next[] 串成链。整个表只有几个原始数组，
+ * 查找和遍历链都不分配对象，也不装箱。
+ */
+public class LongHashTable {
+    private final long[] keys;
+    private final int[] heads;
+    private final int[] next;
+    private final int mask;
+
+    /**
+     * @param rows 构建侧行数（行号范围 0..rows-1）
+     */
+    public LongHashTable(int rows) {
+        int cap = 16;
+        while (cap < rows * 2) {
+            cap <<= 1;                                      // 装填因子不超过 1/2，永远不需要扩容
+        }
+        this.keys = new long[cap];
+        this.heads = new int[cap];
+        this.next = new int[rows];
+        this.mask = cap - 1;
+        Arrays.fill(heads, -1);
+    }
+
+    /**
+     * 把第 row 行以 key 加入表中。新行挂在链头，因此按行号倒序插入可让链保持升序。
+     */
+    public void put(long key, int row) {
+        int slot = slot(key);
+        next[row] = heads[slot];
+        keys[slot] = key;
+        heads[slot] = row;
+    }
+
+    /**
+     * @return 键为 key 的第一行，没有时返回 -1
+     */
+    public int first(long key) {
+        int slot = slot(key);
+        return heads[slot];
+    }
+
+    /**
+     * @return 与 row 同键的下一行，没有时返回 -1
+     */
+    public int next(int row) {
+        return next[row];
+    }
+
+    /**
+     * 找到 key 所在槽位；键不存在时返回第一个空槽位。
+     */
+    private int slot(long key) {
+        int i = hash(key) & mask;
+        while (heads[i] >= 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * 64 位混合函数（MurmurHash3 fmix64），让连续的整数键也能均匀分布。
+     */
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,235 @@
+package sjdb;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 直接在列式存储（见 {@link ColumnFile}）的映射区上做向量化扫描，不预先载入整表。
+ *
+ * 每批只从映射区取本批的行：先取下推到扫描里的谓词所需的列并判断谓词，
+ * 其余列只为通过的行填充，字符串列也只为这些行做字典编码。
+ * 像 data/q2.txt 这样选择率低的查询，冷启动时只付出谓词列的顺序读取，
+ * 而不是整表的解析与编码。
+ *
+ * 字符串列上与常量的等值谓词直接比较映射区中的 UTF-8 字节，不编码；
+ * 其余谓词填好所需的列后交给 BatchSelect 的过滤逻辑。
+ */
+public class MappedBatchScan implements BatchOperator {
+    private final NamedRelation relation;
+    private final Path dir;
+    private final List<Attribute> columns;
+    private final ValueDictionary dict;
+    private final int batchSize;
+    private final CompressedBitmap selected;
+    private final boolean[] encoded;
+    private final List<Filter> filters = new ArrayList<>();
+    private MappedColumn[] mapped;
+    private ColumnBatch batch;
+    /** 本批第 i 行对应的存储行号 */
+    private long[] rowIds;
+    private boolean[] filled;
+    private int[] scratch;
+    private long rows;
+    private long pos;
+
+    /** 一个下推的谓词 */
+    private static final class Filter {
+        final Predicate predicate;
+        /** 字符串列与常量等值时按字节比较：该列下标与常量的 UTF-8 字节；否则 key 为 null */
+        final int column;
+        final byte[] key;
+        /** 不能按字节比较时所用的过滤逻辑 */
+        final BatchSelect select;
+
+        Filter(Predicate predicate, int column, byte[] key, BatchSelect select) {
+            this.predicate = predicate;
+            this.column = column;
+            this.key = key;
+            this.select = select;
+        }
+    }
+
+    /**
+     * @param columns  需要读取的列；传 null 表示读取全部列
+     * @param selected 只读取位图中置位的行；传 null 表示全部行
+     */
+    public MappedBatchScan(NamedRelation relation, Path dataDir, List<Attribute> columns, ValueDictionary dict,
+                           int batchSize, CompressedBitmap selected) {
+        this.relation = relation;
+        this.dir = ColumnFile.directory(dataDir, relation);
+        this.columns = (columns == null) ? relation.getAttributes() : columns;
+        this.dict = dict;
+        this.batchSize = batchSize;
+        this.selected = selected;
+        this.mapped = map();
+        this.encoded = new boolean[mapped.length];
+        for (int c = 0; c < mapped.length; c++) {
+            encoded[c] = !mapped[c].isNumeric();
+        }
+    }
+
+    /**
+     * 谓词的属性都在扫描的列中时返回 true：这时 BatchExecutor 可以把它下推进来。
+     */
+    boolean accepts(Predicate p) {
+        return Executor.columnIndex(columns, p.getLeftAttribute()) >= 0
+                && (p.comparesValue() || Executor.columnIndex(columns, p.getRightAttribute()) >= 0);
+    }
+
+    /**
+     * 下推一个谓词：扫描只输出满足全部下推谓词的行。
+     */
+    void addFilter(Predicate p) {
+        int c = Executor.columnIndex(columns, p.getLeftAttribute());
+        if (p.equalsValue() && encoded[c]) {
+            filters.add(new Filter(p, c, p.getRightValue().getBytes(StandardCharsets.UTF_8), null));
+        } else {
+            filters.add(new Filter(p, c, null, new BatchSelect(this, p, dict)));
+        }
+    }
+
+    private MappedColumn[] map() {
+        MappedColumn[] m = new MappedColumn[columns.size()];
+        rows = -1;
+        for (int c = 0; c < m.length; c++) {
+            m[c] = new MappedColumn(ColumnFile.columnFile(dir, columns.get(c)));
+            if (rows < 0) {
+                rows = m[c].getRowCount();
+            } else if (rows != m[c].getRowCount()) {
+                throw new IllegalStateException("Column " + m[c] + " has " + m[c].getRowCount()
+                        + " rows, expected " + rows);
+            }
+        }
+        if (rows < 0) {
+            // 一列都不需要时仍要给出正确的行数
+            rows = new MappedColumn(ColumnFile.columnFile(dir, relation.getAttributes().get(0))).getRowCount();
+        }
+        return m;
+    }
+
+    public void open() {
+        if (mapped == null) {
+            mapped = map();
+        }
+        batch = new ColumnBatch(columns, encoded, batchSize);
+        rowIds = new long[batchSize];
+        filled = new boolean[mapped.length];
+        scratch = new int[batchSize];
+        pos = 0;
+    }
+
+    public ColumnBatch nextBatch() {
+        while (pos < rows) {
+            batch.reset();
+            int n = nextRows();
+            if (n == 0) {
+                return null;
+            }
+            batch.size = n;
+            Arrays.fill(filled, false);
+            boolean any = true;
+            for (int f = 0; f < filters.size() && any; f++) {
+                Filter filter = filters.get(f);
+                if (filter.key != null) {
+                    matchBytes(filter.column, filter.key);
+                } else {
+                    fill(filter.column);
+                    if (!filter.predicate.comparesValue()) {
+                        fill(Executor.columnIndex(columns, filter.predicate.getRightAttribute()));
+                    }
+                    filter.select.filter(batch);
+                }
+                any = batch.count() > 0;
+            }
+            if (!any) {
+                continue;
+            }
+            for (int c = 0; c < mapped.length; c++) {
+                fill(c);
+            }
+            return batch;
+        }
+        return null;
+    }
+
+    /**
+     * 确定本批的存储行号，推进 pos。
+     *
+     * @return 本批行数
+     */
+    private int nextRows() {
+        int n = 0;
+        if (selected == null) {
+            n = (int) Math.min(batchSize, rows - pos);
+            for (int i = 0; i < n; i++) {
+                rowIds[i] = pos + i;
+            }
+            pos += n;
+            return n;
+        }
+        long r = selected.nextSetBit(pos);
+        while (r >= 0 && r < rows && n < batchSize) {
+            rowIds[n++] = r;
+            r = selected.nextSetBit(r + 1);
+        }
+        pos = (r < 0 || r >= rows) ? rows : r;
+        return n;
+    }
+
+    /**
+     * 为本批当前有效的行填充第 c 列。
+     */
+    private void fill(int c) {
+        if (filled[c]) {
+            return;
+        }
+        filled[c] = true;
+        MappedColumn m = mapped[c];
+        long[] col = batch.columns[c];
+        if (batch.selection == null && selected == null && m.isNumeric()) {
+            m.getLongs(rowIds[0], col, batch.size);
+            return;
+        }
+        int n = batch.count();
+        for (int i = 0; i < n; i++) {
+            int r = batch.row(i);
+            col[r] = m.isNumeric() ? m.getLong(rowIds[r]) : dict.encode(m.getString(rowIds[r]));
+        }
+    }
+
+    /**
+     * 在映射区上按字节判断字符串列与常量相等，结果写入选择向量。
+     * 选择向量可能就是 scratch：写入位置不超过读取位置，原地压缩是安全的。
+     */
+    private void matchBytes(int c, byte[] key) {
+        MappedColumn m = mapped[c];
+        int n = batch.count();
+        int[] sel = scratch;
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            int r = batch.row(i);
+            if (m.equalsAt(rowIds[r], key)) {
+                sel[k++] = r;
+            }
+        }
+        batch.selection = sel;
+        batch.selected = k;
+    }
+
+    public void close() {
+        // 映射区随对象回收释放
+        mapped = null;
+        batch = null;
+    }
+
+    public List<Attribute> getSchema() {
+        return columns;
+    }
+
+    public boolean[] getEncoding() {
+        return encoded;
+    }
+}
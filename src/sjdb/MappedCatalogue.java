@@ -0,0 +1,247 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 映射二进制目录快照（格式见 {@link CatalogueImage}）的 Catalogue。
+ *
+ * 打开时只映射文件并读头部，不解析任何记录，启动耗时与目录大小无关；
+ * getRelation / getAttribute 在目录的当前版本中查不到时，才在两个有序目录上二分查找
+ * （直接比较映射区中的 UTF-8 字节），把该关系连同属性、统计与索引声明物化出来并缓存，
+ * 之后的查找直接命中缓存（不加锁）。getRelations 会物化全部关系。
+ *
+ * 物化出的关系由目录的所有版本共享、不再修改；打开后仍可 createRelation / createAttribute 等，
+ * 新建或修改的条目进入目录的新版本（修改前先复制），优先于快照中的同名条目。
+ */
+public class MappedCatalogue extends Catalogue {
+    private final Path file;
+    private final ByteBuffer map;
+    private final int relationCount;
+    private final int attributeCount;
+    private final int relDir;
+    private final int attrDir;
+    /** 已物化的关系 */
+    private final Map<String, NamedRelation> loaded = new ConcurrentHashMap<>();
+    /** 已物化且 attrDir 指向的属性（值个数未截断） */
+    private final Map<String, Attribute> loadedAttributes = new ConcurrentHashMap<>();
+    private volatile List<NamedRelation> all;
+    /** 旁边的草图文件，没有时为 null；物化关系时给属性挂上其中的条目 */
+    private volatile CatalogueSketches sketches;
+
+    public MappedCatalogue(Path file) {
+        this.file = file;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Catalogue image " + file + " exceeds 2 GB and cannot be mapped");
+            }
+            if (size < CatalogueImage.HEADER) {
+                throw new IllegalStateException("Catalogue image " + file + " is truncated");
+            }
+            this.map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.BIG_ENDIAN);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map catalogue image " + file, e);
+        }
+        if (map.getInt(0) != CatalogueImage.MAGIC) {
+            throw new IllegalStateException("Catalogue image " + file + " has a bad magic number");
+        }
+        if (map.getInt(4) != CatalogueImage.FORMAT) {
+            throw new IllegalStateException("Catalogue image " + file + " has unsupported format " + map.getInt(4));
+        }
+        this.relationCount = map.getInt(8);
+        this.attributeCount = map.getInt(12);
+        this.relDir = (int) map.getLong(16);
+        this.attrDir = (int) map.getLong(24);
+        if (relDir + 8L * relationCount != attrDir || attrDir + 24L * attributeCount != map.capacity()) {
+            throw new IllegalStateException("Catalogue image " + file + " is truncated");
+        }
+    }
+
+    /**
+     * @return 快照中的关系个数（无需物化）
+     */
+    public int getRelationCount() {
+        return relationCount;
+    }
+
+    /**
+     * @return 已物化的关系个数
+     */
+    public int getMaterialisedCount() {
+        return loaded.size();
+    }
+
+    public String toString() {
+        return file + " [" + relationCount + " relations, " + getMaterialisedCount() + " materialised]";
+    }
+
+    /**
+     * 只记下草图文件，不物化任何关系：之后物化的关系在文件中查找各属性的草图条目。
+     * 须在第一次查找之前调用（CatalogueImage.open 打开后立即调用）。
+     */
+    void attachSketches(CatalogueSketches sketches) {
+        if (!loaded.isEmpty()) {
+            throw new IllegalStateException("Sketches must be attached to " + file + " before any lookup");
+        }
+        this.sketches = sketches;
+    }
+
+    /* ─────────────────────────── 按需物化 ─────────────────────────── */
+
+    NamedRelation loadRelation(String name) {
+        NamedRelation reln = loaded.get(name);
+        return (reln != null) ? reln : find(name);
+    }
+
+    private synchronized NamedRelation find(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = relationCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int record = (int) map.getLong(relDir + 8 * mid);
+            int c = CatalogueImage.compareAt(map, record, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return materialise(record);
+            }
+        }
+        return null;
+    }
+
+    Attribute loadAttribute(String name) {
+        Attribute a = loadedAttributes.get(name);
+        return (a != null) ? a : findAttribute(name);
+    }
+
+    private synchronized Attribute findAttribute(String name) {
+        int entry = attributeEntry(name);
+        if (entry < 0) {
+            return null;
+        }
+        materialise((int) map.getLong(entry));
+        return loadedAttributes.get(name);
+    }
+
+    List<NamedRelation> loadAll() {
+        List<NamedRelation> list = all;
+        return (list != null) ? list : findAll();
+    }
+
+    private synchronized List<NamedRelation> findAll() {
+        if (all == null) {
+            List<NamedRelation> list = new ArrayList<>(relationCount);
+            for (int i = 0; i < relationCount; i++) {
+                list.add(materialise((int) map.getLong(relDir + 8 * i)));
+            }
+            all = list;
+        }
+        return all;
+    }
+
+    /**
+     * 物化 record 处的关系并缓存；已物化时返回缓存的那个。
+     * 只有 attrDir 指回本关系的属性才进入属性缓存，同名属性的归属与写快照时一致；
+     * 关系中的值个数被行数截断过的，属性缓存中放未截断的副本，与 Catalogue.createAttribute 一致。
+     */
+    private NamedRelation materialise(int record) {
+        ByteBuffer buf = map.duplicate().order(ByteOrder.BIG_ENDIAN);
+        buf.position(record);
+        String name = readString(buf);
+        NamedRelation existing = loaded.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        NamedRelation reln = new NamedRelation(name, buf.getLong());
+        int count = buf.getInt();
+        for (int i = 0; i < count; i++) {
+            int at = buf.position();
+            Attribute a = readAttribute(buf, reln);
+            CatalogueSketches.Entry sketch = (sketches == null) ? null : sketches.find(name, a.getName());
+            if (sketch != null) {
+                a = new Attribute(a, sketch);
+            }
+            reln.addAttribute(a);
+            int entry = attributeEntry(a.getName());
+            if (entry >= 0 && map.getLong(entry + 8) == at) {
+                long values = map.getLong(entry + 16);
+                loadedAttributes.put(a.getName(), values == a.getValueCount() ? a : new Attribute(a, values));
+            }
+        }
+        // 属性先于关系可见：不加锁的 loadRelation 命中关系时，其属性也已在缓存中
+        loaded.put(name, reln);
+        return reln;
+    }
+
+    private static Attribute readAttribute(ByteBuffer buf, NamedRelation reln) {
+        String name = readString(buf);
+        long values = buf.getLong();
+        int flags = buf.get();
+        MostCommonValues mcv = null;
+        Histogram hist = null;
+        if ((flags & CatalogueImage.MCV) != 0) {
+            int n = buf.getInt();
+            Map<String, Double> freqs = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                String v = readString(buf);
+                freqs.put(v, buf.getDouble());
+            }
+            mcv = new MostCommonValues(freqs);
+        }
+        if ((flags & CatalogueImage.HIST) != 0) {
+            String[] bounds = new String[buf.getInt()];
+            for (int i = 0; i < bounds.length; i++) {
+                bounds[i] = readString(buf);
+            }
+            hist = new Histogram(bounds);
+        }
+        if ((flags & CatalogueImage.INDEX) != 0) {
+            reln.addIndex(name);
+        }
+        if ((flags & CatalogueImage.BITMAP) != 0) {
+            reln.addBitmapIndex(name);
+        }
+        return new Attribute(name, values, mcv, hist);
+    }
+
+    /**
+     * @return attrDir 中该属性名的条目位置；没有时为 -1
+     */
+    private int attributeEntry(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = attributeCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = attrDir + 24 * mid;
+            int c = CatalogueImage.compareAt(map, (int) map.getLong(entry + 8), key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] b = new byte[buf.getShort() & 0xFFFF];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
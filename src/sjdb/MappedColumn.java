@@ -0,0 +1,148 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 通过 FileChannel.map 只读映射一个列文件（格式见 {@link ColumnFile}）。
+ * LONG 列按下标直接从映射区读取定长值，不经过堆内缓冲；STRING 列按偏移解码。
+ *
+ * 单个映射区最多 2 GB，更大的列文件需要拆分，目前直接拒绝。
+ */
+public class MappedColumn {
+    private final Path file;
+    private final ByteBuffer data;
+    private final boolean numeric;
+    private final long rows;
+    private final Attribute attribute;
+    /** STRING 列偏移数组的起点 */
+    private final int offsetsPos;
+
+    public MappedColumn(Path file) {
+        this.file = file;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Column file " + file + " exceeds 2 GB and cannot be mapped");
+            }
+            if (size < ColumnFile.TRAILER_BYTES) {
+                throw new IllegalStateException("Column file " + file + " is truncated");
+            }
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.BIG_ENDIAN);
+            int end = (int) size;
+            if (map.getInt(end - 4) != ColumnFile.MAGIC) {
+                throw new IllegalStateException("Column file " + file
+                        + " has a bad magic number (written by another version? rerun java sjdb.ColumnFile)");
+            }
+            int footerLength = map.getInt(end - 8);
+            ByteBuffer footer = map.duplicate();
+            footer.position(end - ColumnFile.TRAILER_BYTES - footerLength);
+            byte type = footer.get();
+            this.rows = footer.getLong();
+            long values = footer.getLong();
+            long dataEnd = footer.getLong();
+            String name = readUTF(footer);
+            String mcv = readUTF(footer);
+            String hist = readUTF(footer);
+            this.numeric = (type == ColumnFile.LONG);
+            this.offsetsPos = numeric ? 0 : (int) (dataEnd - (rows + 1) * 8);
+            this.attribute = new Attribute(name, values,
+                    mcv.isEmpty() ? null : MostCommonValues.parse(mcv),
+                    hist.isEmpty() ? null : Histogram.parse(hist));
+            this.data = map.duplicate();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map column file " + file, e);
+        }
+    }
+
+    /** 与 DataOutputStream.writeUTF 对应（内容仅含 BMP 字符时与标准 UTF-8 一致） */
+    private static String readUTF(ByteBuffer buf) {
+        int len = buf.getShort() & 0xFFFF;
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return footer 中记录的统计量（属性名、值个数、MCV、直方图）
+     */
+    public Attribute getAttribute() {
+        return attribute;
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    /**
+     * 读取 LONG 列第 row 行的值。
+     */
+    public long getLong(long row) {
+        if (!numeric) {
+            throw new IllegalStateException("Column " + attribute.getName() + " in " + file + " is not numeric");
+        }
+        return data.getLong((int) (row * 8));
+    }
+
+    /**
+     * 把 LONG 列从 from 行起的 n 个值批量拷贝到 dst[0..n)。
+     */
+    public void getLongs(long from, long[] dst, int n) {
+        if (!numeric) {
+            throw new IllegalStateException("Column " + attribute.getName() + " in " + file + " is not numeric");
+        }
+        data.asLongBuffer().get((int) from, dst, 0, n);
+    }
+
+    /**
+     * 第 row 行的值的 UTF-8 字节是否等于 key；STRING 列直接在映射区比较，不解码。
+     */
+    public boolean equalsAt(long row, byte[] key) {
+        if (numeric) {
+            return getString(row).equals(new String(key, StandardCharsets.UTF_8));
+        }
+        int at = offsetsPos + (int) (row * 8);
+        int from = (int) data.getLong(at);
+        int to = (int) data.getLong(at + 8);
+        if (to - from != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (data.get(from + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取第 row 行的值的文本形式。
+     */
+    public String getString(long row) {
+        if (numeric) {
+            return Long.toString(getLong(row));
+        }
+        int at = offsetsPos + (int) (row * 8);
+        int from = (int) data.getLong(at);
+        int to = (int) data.getLong(at + 8);
+        byte[] b = new byte[to - from];
+        data.get(from, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    public String toString() {
+        return file.toString();
+    }
+}
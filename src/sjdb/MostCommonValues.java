@@ -0,0 +1,87 @@
+package sjdb;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 最常见值（MCV）列表：记录一个属性中出现最频繁的若干个值及其在关系中所占的比例。
+ *
+ * 在系统目录中写作属性的可选项：
+ *
+ * <attr name>,<value count>,mcv=<value>/<fraction>;<value>/<fraction>;...
+ */
+public class MostCommonValues {
+	private final Map<String, Double> freqs;
+	private final double total;
+
+	/**
+	 * @param freqs 值 → 所占比例（0~1）
+	 */
+	public MostCommonValues(Map<String, Double> freqs) {
+		this.freqs = new LinkedHashMap<String, Double>(freqs);
+		double sum = 0;
+		for (double f : this.freqs.values()) {
+			sum += f;
+		}
+		this.total = Math.min(1.0, sum);
+	}
+
+	/**
+	 * 解析目录中 "mcv=" 之后的部分，形如 v1/f1;v2/f2
+	 */
+	public static MostCommonValues parse(String spec) {
+		Map<String, Double> freqs = new LinkedHashMap<String, Double>();
+		for (String entry : spec.split(";", 0)) {
+			int slash = entry.lastIndexOf('/');
+			if (slash <= 0) {
+				throw new IllegalArgumentException("Malformed MCV entry: " + entry);
+			}
+			freqs.put(entry.substring(0, slash), Double.valueOf(entry.substring(slash + 1)));
+		}
+		return new MostCommonValues(freqs);
+	}
+
+	/**
+	 * @return value 的比例；不在列表中时返回 -1
+	 */
+	public double frequency(String value) {
+		Double f = freqs.get(value);
+		return (f == null) ? -1.0 : f;
+	}
+
+	/**
+	 * @return 列表中所有值的比例之和
+	 */
+	public double totalFrequency() {
+		return total;
+	}
+
+	/**
+	 * @return 列表中值的个数
+	 */
+	public int size() {
+		return freqs.size();
+	}
+
+	/**
+	 * @return 值 → 比例（只读视图）
+	 */
+	public Map<String, Double> getFrequencies() {
+		return Collections.unmodifiableMap(freqs);
+	}
+
+	/**
+	 * 序列化为目录中的写法（不含 "mcv=" 前缀）
+	 */
+	public String render() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Double> e : freqs.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append(';');
+			}
+			sb.append(e.getKey()).append('/').append(e.getValue());
+		}
+		return sb.toString();
+	}
+}
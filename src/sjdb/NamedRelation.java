@@ -3,6 +3,9 @@
  */
 package sjdb;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 /**
  * This class represents a named relation which is fed into a query plan
  * @author nmg
@@ -13,16 +16,92 @@ public class NamedRelation extends Relation {
 	 */
 	private String name;
 	
+	/**
+	 * Names of the attributes with a B+-tree secondary index
+	 */
+	private Set<String> indexes = new LinkedHashSet<String>();
+	
+	/**
+	 * Names of the attributes with a compressed bitmap index
+	 */
+	private Set<String> bitmapIndexes = new LinkedHashSet<String>();
+	
 	/**
 	 * Create a new named relation with a given name and tuple count
 	 * @param name The name of the relation
 	 * @param size The tuple count
 	 */
-	public NamedRelation(String name, int size) {
+	public NamedRelation(String name, long size) {
 		super(size);
 		this.name = name;
 	}
 
+	/**
+	 * Copy a named relation, its attributes and its index declarations, so
+	 * that the copy can be changed without affecting the original (the
+	 * attributes themselves are immutable and are shared)
+	 * @param reln The relation to copy
+	 */
+	NamedRelation(NamedRelation reln) {
+		super(reln.getTupleCount());
+		this.name = reln.name;
+		for (Attribute a : reln.getAttributes()) {
+			addAttribute(a);
+		}
+		this.indexes.addAll(reln.indexes);
+		this.bitmapIndexes.addAll(reln.bitmapIndexes);
+	}
+
+	/**
+	 * Declare a B+-tree secondary index on one of this relation's attributes
+	 * @param attribute Name of the indexed attribute
+	 */
+	public void addIndex(String attribute) {
+		this.indexes.add(attribute);
+	}
+	
+	/**
+	 * Check whether an attribute of this relation has a B+-tree index
+	 * @param attribute Attribute (compared by name)
+	 * @return true if the attribute is indexed
+	 */
+	public boolean hasIndex(Attribute attribute) {
+		return this.indexes.contains(attribute.getName());
+	}
+	
+	/**
+	 * Return the names of the indexed attributes
+	 * @return Indexed attribute names in declaration order
+	 */
+	public Set<String> getIndexes() {
+		return this.indexes;
+	}
+	
+	/**
+	 * Declare a bitmap index on one of this relation's (low-cardinality) attributes
+	 * @param attribute Name of the indexed attribute
+	 */
+	public void addBitmapIndex(String attribute) {
+		this.bitmapIndexes.add(attribute);
+	}
+	
+	/**
+	 * Check whether an attribute of this relation has a bitmap index
+	 * @param attribute Attribute (compared by name)
+	 * @return true if the attribute has a bitmap index
+	 */
+	public boolean hasBitmapIndex(Attribute attribute) {
+		return this.bitmapIndexes.contains(attribute.getName());
+	}
+	
+	/**
+	 * Return the names of the attributes with bitmap indexes
+	 * @return Attribute names in declaration order
+	 */
+	public Set<String> getBitmapIndexes() {
+		return this.bitmapIndexes;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -5,13 +5,136 @@ import java.util.function.BiConsumer;
 
 public class Optimiser {
 
-    private final Estimator est = new Estimator();
+    /** 默认 DP 上限：关系数不超过该值时用 DP 枚举，否则退回贪婪（DP 状态数为 2^n） */
+    public static final int DEFAULT_DP_LIMIT = 14;
+    /**
+     * DP 上限的最大允许值：DP 为每个关系子集保存一个计划与代价并枚举 n·2^n 个候选连接，
+     * 20 个关系时已是约百万个子集、两千万个候选；再大则数组与候选会耗尽堆，31 个起 1 &lt;&lt; n 还会溢出
+     */
+    public static final int MAX_DP_LIMIT = 20;
+
+    /** 排序归并连接的默认门槛：两侧估计行数都不少于该值 */
+    public static final long DEFAULT_SORT_MERGE_MIN_ROWS = 1_000_000L;
+    /** 排序归并连接的默认门槛：较大侧与较小侧的行数比不超过该值 */
+    public static final double DEFAULT_SORT_MERGE_MAX_RATIO = 4.0;
+
+    /** 布隆过滤器的默认门槛：探测侧估计行数不少于该值 */
+    public static final long DEFAULT_BLOOM_MIN_PROBE_ROWS = 1_000L;
+    /** 布隆过滤器的默认门槛：探测侧预计能通过过滤器的比例不超过该值 */
+    public static final double DEFAULT_BLOOM_MAX_PASS_FRACTION = 0.5;
+
+    /**
+     * 覆盖上面四个默认门槛的系统属性，如 -Dsjdb.bloomMinProbeRows=0；
+     * 对所有未显式调用 set*Thresholds 的 Optimiser 生效（SJDB、QueryServer 的计划缓存等）
+     */
+    public static final String SORT_MERGE_MIN_ROWS_PROPERTY = "sjdb.sortMergeMinRows";
+    public static final String SORT_MERGE_MAX_RATIO_PROPERTY = "sjdb.sortMergeMaxRatio";
+    public static final String BLOOM_MIN_PROBE_ROWS_PROPERTY = "sjdb.bloomMinProbeRows";
+    public static final String BLOOM_MAX_PASS_FRACTION_PROPERTY = "sjdb.bloomMaxPassFraction";
+
+    /** 经索引取一行（随机读一页）相对顺序扫描一行的代价 */
+    static final long INDEX_FETCH_COST = 4;
+
+    /**
+     * 每个线程一个 Estimator：估算会写算子的 output 并使用备忘录，各线程的计划互不共享，
+     * 因此同一个 Optimiser 可被多个线程同时调用（门槛设置须在共享之前完成）。
+     */
+    private final ThreadLocal<Estimator> estimators = ThreadLocal.withInitial(Estimator::new);
+    private final int dpLimit;
+    private long sortMergeMinRows;
+    private double sortMergeMaxRatio;
+    private long bloomMinProbeRows;
+    private double bloomMaxPassFraction;
+
+    public Optimiser(Catalogue cat) {
+        this(cat, DEFAULT_DP_LIMIT);
+    }
+
+    /**
+     * 门槛取系统属性指定的值（见 {@link #BLOOM_MIN_PROBE_ROWS_PROPERTY} 等），未指定时取默认值。
+     *
+     * @param cat     系统目录
+     * @param dpLimit 使用 DP 连接枚举的最大关系数，在 [0, {@link #MAX_DP_LIMIT}] 之内；传 0 表示总是走贪婪路径
+     * @throws IllegalArgumentException dpLimit 超出范围
+     */
+    public Optimiser(Catalogue cat, int dpLimit) {
+        if (dpLimit < 0 || dpLimit > MAX_DP_LIMIT) {
+            throw new IllegalArgumentException("DP limit " + dpLimit + " is outside [0, " + MAX_DP_LIMIT + "]");
+        }
+        this.dpLimit = dpLimit;
+        setSortMergeThresholds(
+                property(SORT_MERGE_MIN_ROWS_PROPERTY, DEFAULT_SORT_MERGE_MIN_ROWS),
+                property(SORT_MERGE_MAX_RATIO_PROPERTY, DEFAULT_SORT_MERGE_MAX_RATIO));
+        setBloomFilterThresholds(
+                property(BLOOM_MIN_PROBE_ROWS_PROPERTY, DEFAULT_BLOOM_MIN_PROBE_ROWS),
+                property(BLOOM_MAX_PASS_FRACTION_PROPERTY, DEFAULT_BLOOM_MAX_PASS_FRACTION));
+    }
+
+    private static long property(String name, long def) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value, e);
+        }
+    }
 
-    public Optimiser(Catalogue cat) {}
+    private static double property(String name, double def) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value, e);
+        }
+    }
+
+    /**
+     * 设置选择排序归并连接的门槛：两侧估计行数都不少于 minRows，
+     * 且大小之比不超过 maxRatio 时用 SORT_MERGE，否则用哈希连接。
+     */
+    public void setSortMergeThresholds(long minRows, double maxRatio) {
+        if (minRows < 0 || maxRatio < 1.0) {
+            throw new IllegalArgumentException("Invalid sort-merge thresholds: " + minRows + ", " + maxRatio);
+        }
+        this.sortMergeMinRows = minRows;
+        this.sortMergeMaxRatio = maxRatio;
+    }
+
+    /**
+     * 设置为哈希连接启用布隆过滤器（SIP）的门槛：探测侧估计行数不少于 minProbeRows，
+     * 且探测侧连接键能在构建侧找到的估计比例不超过 maxPassFraction。
+     */
+    public void setBloomFilterThresholds(long minProbeRows, double maxPassFraction) {
+        if (minProbeRows < 0 || maxPassFraction < 0 || maxPassFraction > 1.0) {
+            throw new IllegalArgumentException("Invalid Bloom filter thresholds: "
+                    + minProbeRows + ", " + maxPassFraction);
+        }
+        this.bloomMinProbeRows = minProbeRows;
+        this.bloomMaxPassFraction = maxPassFraction;
+    }
 
     /* ─────────────────────────── 主流程 ─────────────────────────── */
 
+    private Estimator est() {
+        return estimators.get();
+    }
+
     public Operator optimise(Operator canonical) {
+        est().resetMemo();                                // 每次优化使用独立的备忘录
+        try {
+            return optimiseInner(canonical);
+        } finally {
+            est().resetMemo();
+        }
+    }
+
+    private Operator optimiseInner(Operator canonical) {
 
         /* 0. 拆掉顶层 Project（若有） */
 //        若 canonical 计划最外层是 Project，先把待输出列 topProj 取出并把内部算子作为新的根。
@@ -35,7 +158,7 @@ public class Optimiser {
 //
 //        遇到 Select，按谓词类型分流：
 //
-//        attr=value → restPreds（常量选择）
+//        attr=value、attr<value、attr BETWEEN … → restPreds（常量选择，含范围谓词）
 //
 //        attr1=attr2 → eqPreds（等值谓词）
 //
@@ -62,27 +185,20 @@ public class Optimiser {
 
         /* 3. 为每张表构造 leaf（常量选择下推 + 必要列裁剪） */
         Map<String,Operator> base = new LinkedHashMap<>();
-        Map<String,Integer>  origSize = new HashMap<>();      // 原始行数
-        buildLeaves(info, need, starQuery, base, origSize);
+        Map<String,Long>     origSize = new HashMap<>();      // 原始行数
+        buildLeaves(info, need, topProj, starQuery, base, origSize);
 
-        /* 4. 选择根表（原始行数最小） */
-        Operator leftTree = pickRoot(base, origSize);
-        Set<String> joined = new HashSet<>();
-        joined.add(scanName(leftTree));
-
-        /* 5. 贪婪扩展 + 1-step look-ahead */
-        while (joined.size() < base.size()) {
-            JoinChoice best = chooseNext(leftTree, joined, base, info);
-            if (best.pred != null) info.eqPreds.remove(best.pred);
-            leftTree = best.plan;
-            joined.add(best.rel);
-        }
+        /* 4+5. 连接顺序：关系数不超过 dpLimit 走 DP，否则走贪婪 */
+        Operator leftTree = (base.size() <= dpLimit)
+                ? orderByDP(base, info)
+                : orderGreedy(base, origSize, info);
 
         /* 6. 把剩余 attr=value 谓词挂在顶端 */
         // restPreds 中未被下推的 attr=value（跨表或无法下推）依次包在树顶。
         for (Predicate p : info.restPreds){
             leftTree = new Select(leftTree, p);
         }
+        chooseJoinMethods(leftTree);
 
         /* 7. 恢复顶层 Project；若已冗余则省掉 */
 //        若最初没有 Project，直接返回优化后的 Operator；
@@ -100,6 +216,58 @@ public class Optimiser {
         return new Project(leftTree, topProj);
     }
 
+    /* ────────────────── 步骤 6'：物理连接方式 ────────────────── */
+
+    /**
+     * 为计划中的每个 Join 选择物理实现：两侧都很大且规模相近时用排序归并，
+     * 此时哈希表放不进内存、而两侧外部排序的代价相当；否则用哈希连接。
+     * 哈希连接再按 {@link #bloomWorthwhile} 决定是否向探测侧下推布隆过滤器。
+     */
+    private void chooseJoinMethods(Operator op) {
+        if (op instanceof Join) {
+            Join j = (Join) op;
+            long l = est().estimate(j.getLeft()).getTupleCount();
+            long r = est().estimate(j.getRight()).getTupleCount();
+            long small = Math.min(l, r), large = Math.max(l, r);
+            boolean merge = small >= sortMergeMinRows && small > 0
+                    && (double) large / small <= sortMergeMaxRatio;
+            j.setMethod(merge ? JoinMethod.SORT_MERGE : JoinMethod.HASH);
+            j.setBloomFilter(!merge && bloomWorthwhile(j));
+        }
+        if (op instanceof UnaryOperator) {
+            chooseJoinMethods(((UnaryOperator) op).getInput());
+        } else if (op instanceof BinaryOperator) {
+            chooseJoinMethods(((BinaryOperator) op).getLeft());
+            chooseJoinMethods(((BinaryOperator) op).getRight());
+        }
+    }
+
+    /**
+     * 构建侧与执行器一致取估计行数较小的一侧。探测侧的行能通过过滤器的比例按包含假设估计为
+     * min(1, V(构建侧, a) / V(探测侧, b))；探测侧足够大且大部分行会被剔除时才值得建过滤器。
+     */
+    private boolean bloomWorthwhile(Join j) {
+        Relation l = est().estimate(j.getLeft());
+        Relation r = est().estimate(j.getRight());
+        boolean buildLeft = l.getTupleCount() < r.getTupleCount();
+        Relation build = buildLeft ? l : r;
+        Relation probe = buildLeft ? r : l;
+        if (probe.getTupleCount() < bloomMinProbeRows || probe.getTupleCount() == 0) {
+            return false;
+        }
+        Predicate p = j.getPredicate();
+        Attribute a = p.getLeftAttribute(), b = p.getRightAttribute();
+        if (!build.getAttributes().contains(a)) {
+            Attribute t = a;
+            a = b;
+            b = t;
+        }
+        long vBuild = build.getAttribute(a).getValueCount();
+        long vProbe = probe.getAttribute(b).getValueCount();
+        double pass = (vProbe == 0) ? 0.0 : Math.min(1.0, (double) vBuild / vProbe);
+        return pass <= bloomMaxPassFraction;
+    }
+
     /* ────────────────── 步骤 2：列需求计算 ────────────────── */
 
     private Map<String, Set<Attribute>> computeNeed(Info info,
@@ -154,39 +322,70 @@ public class Optimiser {
 
     private void buildLeaves(Info info,
                              Map<String, Set<Attribute>> need,
+                             List<Attribute> topProj,
                              boolean star,
                              Map<String,Operator> base,
-                             Map<String,Integer> origSize) {
+                             Map<String,Long> origSize) {
 
         for (Scan s : info.scans) {
             String rel = s.getRelation().toString();
             Operator op = s;
             origSize.put(rel, s.getRelation().getTupleCount());
 
-            /* 3.1 下推 attr=value 谓词，记录只此处用到的列 */
+            /* 3.1 下推 attr=value 与范围谓词，记录只此处用到的列 */
             Set<Attribute> consumed = new HashSet<>();
+            List<Predicate> local = new ArrayList<>();
             for (Iterator<Predicate> it = info.restPreds.iterator(); it.hasNext();) {
                 Predicate p = it.next();
                 Attribute a = p.getLeftAttribute();
-                if (p.equalsValue() && hasAttr(s.getRelation(), a)) {
-                    op = new Select(op, p);
+                if (p.comparesValue() && hasAttr(s.getRelation(), a)) {
+                    local.add(p);
                     it.remove();
                     consumed.add(a);
                 }
             }
 
-            /* 3.2 如需列裁剪则添加 Project */
+            /* 3.1' 选择访问路径：位图能回答整个合取时用 BitmapScan；否则有 B+ 树索引且更便宜时
+                   用 IndexScan 回答一个 attr=value；剩下的谓词仍做 Select */
+            Scan leaf = chooseAccessPath(s, local);
+            List<Predicate> answered = (leaf instanceof BitmapScan)
+                    ? ((BitmapScan) leaf).getPredicates() : Collections.<Predicate>emptyList();
+            Set<Attribute> filtered = new HashSet<>();        // Select 仍需读取的谓词列
+            op = leaf;
+            for (Predicate p : local) {
+                if (answered.contains(p)) {
+                    continue;
+                }
+                filtered.add(p.getLeftAttribute());
+                if (!(leaf instanceof IndexScan) || p != ((IndexScan) leaf).getPredicate()) {
+                    op = new Select(op, p);
+                }
+            }
+
+            /* 3.2 如需列裁剪则添加 Project，并告知 Scan 只需读取哪些列 */
+            leaf.setColumns(null);
             if (!star) {
                 Set<Attribute> keep = need.get(rel);
                 if (keep != null) {
                     /* 把“只在已下推谓词里用过”的列剔除 */
                     for (Attribute a : new ArrayList<>(keep)){
                         if (consumed.contains(a) &&
-                                !appearsElsewhere(a, null, info.eqPreds, info.restPreds)){
+                                !appearsElsewhere(a, topProj, info.eqPreds, info.restPreds)){
                             keep.remove(a);
                         }
                     }
 
+                    /* 存储层只需读取保留列与 Select 用到的谓词列（位图回答的谓词列不必读） */
+                    List<Attribute> read = new ArrayList<>();
+                    for (Attribute a : s.getRelation().getAttributes()){
+                        if (keep.contains(a) || filtered.contains(a)){
+                            read.add(a);
+                        }
+                    }
+                    if (!read.isEmpty() && read.size() < s.getRelation().getAttributes().size()) {
+                        leaf.setColumns(read);
+                    }
+
                     if (keep.size() < s.getRelation().getAttributes().size()) {
                         List<Attribute> ordered = new ArrayList<>();
                         for (Attribute a : s.getRelation().getAttributes()){
@@ -202,16 +401,163 @@ public class Optimiser {
         }
     }
 
+    /**
+     * 在全表扫描、位图扫描与索引扫描之间选择。全部常量谓词都有位图索引时用 BitmapScan；
+     * 否则取估计输出最小的有索引 attr=value 谓词，若经索引逐行回表的代价
+     * （行数 × INDEX_FETCH_COST）低于顺序读全表，则用 IndexScan；再否则若部分谓词有位图，用 BitmapScan 回答这部分。
+     */
+    private Scan chooseAccessPath(Scan s, List<Predicate> local) {
+        NamedRelation rel = (NamedRelation) s.getRelation();
+        List<Predicate> covered = bitmapCovered(rel, local);
+        if (!local.isEmpty() && covered.size() == local.size()) {
+            // 整个合取都能由位图回答：读元组之前就得到结果行
+            return new BitmapScan(rel, covered);
+        }
+
+        IndexScan best = null;
+        long bestRows = Long.MAX_VALUE;
+        for (Predicate p : local) {
+            if (!p.equalsValue() || !rel.hasIndex(p.getLeftAttribute())) {
+                continue;
+            }
+            IndexScan cand = new IndexScan(rel, p);
+            long rows = est().estimate(cand).getTupleCount();
+            if (rows < bestRows) {
+                best = cand;
+                bestRows = rows;
+            }
+        }
+        if (best != null && Estimator.saturatingMultiply(bestRows, INDEX_FETCH_COST) < rel.getTupleCount()) {
+            return best;
+        }
+        if (!covered.isEmpty()) {
+            // 部分谓词有位图：先用位图缩小行集，其余谓词在上面做 Select
+            return new BitmapScan(rel, covered);
+        }
+        return s;
+    }
+
+    /**
+     * @return local 中属性带位图索引、可由位图回答的常量谓词
+     */
+    static List<Predicate> bitmapCovered(NamedRelation rel, List<Predicate> local) {
+        List<Predicate> covered = new ArrayList<>();
+        for (Predicate p : local) {
+            if (p.comparesValue() && rel.hasBitmapIndex(p.getLeftAttribute())) {
+                covered.add(p);
+            }
+        }
+        return covered;
+    }
+
+    /* ───────── 贪婪路径：选根表 + 逐表扩展 ───────── */
+
+    private Operator orderGreedy(Map<String,Operator> base,
+                                 Map<String,Long> origSize,
+                                 Info info) {
+        /* 4. 选择根表（原始行数最小） */
+        Operator leftTree = pickRoot(base, origSize);
+        Set<String> joined = new HashSet<>();
+        joined.add(scanName(leftTree));
+
+        /* 5. 贪婪扩展 + 1-step look-ahead */
+        while (joined.size() < base.size()) {
+            JoinChoice best = chooseNext(leftTree, joined, base, info);
+            if (best.pred != null) info.eqPreds.remove(best.pred);
+            leftTree = best.plan;
+            joined.add(best.rel);
+        }
+        return leftTree;
+    }
+
+    /* ───────── DP 路径：Selinger 式自底向上枚举左深树 ───────── */
+
+//    以关系子集的位掩码为状态：plan[mask] 是覆盖 mask 中所有表的最优左深树，
+//    cost[mask] 是该树所有中间结果行数之和（C_out 代价）。
+//
+//    按 mask 递增顺序处理，保证子集先于超集求出；对每个 mask 尝试在右侧
+//    再挂一张未加入的表 r：
+//
+//    有等值谓词连接 → Join，否则 → Product；
+//
+//    新代价 = cost[mask] + 本次输出行数，更小则覆盖 plan[mask | r]。
+//
+//    plan[mask] 求出后就固定下来，所有超集都在它上面挂表，不会为同一子集
+//    重复枚举。估算候选时不重走左子树：子树的输出由 Estimator 的备忘录
+//    （Estimator.estimate）按对象身份记住，只计算新挂上的 Join/Product。
+//    最终 plan[全集] 即为结果。
+
+    private Operator orderByDP(Map<String,Operator> base, Info info) {
+        List<String> rels = new ArrayList<>(base.keySet());
+        int n = rels.size();
+        int full = (1 << n) - 1;
+
+        Operator[] plan = new Operator[full + 1];
+        long[]     cost = new long[full + 1];
+
+        /* 单表子集：叶子本身，代价为 0 */
+        for (int i = 0; i < n; i++) {
+            Operator leaf = base.get(rels.get(i));
+            est().estimate(leaf);
+            plan[1 << i] = leaf;
+        }
+
+        for (int mask = 1; mask < full; mask++) {
+            Operator left = plan[mask];
+            if (left == null) {
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    continue;
+                }
+                Operator right = base.get(rels.get(i));
+                Predicate pred = peekPred(left, right, info.eqPreds);
+
+                Operator cand = (pred == null)
+                        ? new Product(left, right)
+                        : new Join   (left, right, pred);
+                est().estimate(cand);
+
+                long rows = cand.getOutput().getTupleCount();
+                long c    = cost[mask] + rows;
+                if (c < 0) {
+                    c = Long.MAX_VALUE;                               // 溢出饱和
+                }
+
+                int next = mask | (1 << i);
+                if (plan[next] == null || c < cost[next]) {
+                    plan[next] = cand;
+                    cost[next] = c;
+                }
+            }
+        }
+
+        /* 已被 Join 消耗的等值谓词从 eqPreds 移除，与贪婪路径保持一致 */
+        removeJoinPreds(plan[full], info.eqPreds);
+        return plan[full];
+    }
+
+    private void removeJoinPreds(Operator op, List<Predicate> eqs) {
+        if (op instanceof Join) {
+            eqs.remove(((Join) op).getPredicate());
+        }
+        if (op instanceof BinaryOperator) {
+            removeJoinPreds(((BinaryOperator) op).getLeft(),  eqs);
+            removeJoinPreds(((BinaryOperator) op).getRight(), eqs);
+        }
+    }
+
     /* ──────────── 选根表：原始行数最小 ──────────── */
 
 //    4 选根表 pickRoot
 //    直接取 origSize 最小的表作为根，避免被常量筛选的 1 行表误导。
 
     private Operator pickRoot(Map<String,Operator> base,
-                              Map<String,Integer> origSize) {
-        String best = null; int min = Integer.MAX_VALUE;
+                              Map<String,Long> origSize) {
+        String best = null; long min = Long.MAX_VALUE;
         for (String r : base.keySet()) {
-            int sz = origSize.get(r);
+            long sz = origSize.get(r);
             if (sz < min) {
                 min = sz;
                 best = r;
@@ -267,14 +613,14 @@ public class Optimiser {
                         ? new Product(leftTree, right)
                         : new Join   (leftTree, right, pred);
 
-                cand.accept(est);
-                int outRows   = cand.getOutput().getTupleCount();
-                int leftRows  = leftTree.getOutput().getTupleCount();
-                int rightRows = right   .getOutput().getTupleCount();
-                long inProd   = (long) leftRows * rightRows;
+                est().estimate(cand);
+                long outRows   = cand.getOutput().getTupleCount();
+                long leftRows  = leftTree.getOutput().getTupleCount();
+                long rightRows = right   .getOutput().getTupleCount();
+                long inProd    = Estimator.saturatingMultiply(leftRows, rightRows);
 
                 /* 1-step look-ahead */
-                int finalRows = outRows;
+                long finalRows = outRows;
                 if (base.size() - joined.size() - 1 == 1) {           // 只剩最后一表
                     Operator last = null;
                     for (String r2 : base.keySet()) {
@@ -287,7 +633,7 @@ public class Optimiser {
                     Operator end = (p2 == null)
                             ? new Product(cand, last)
                             : new Join   (cand, last, p2);
-                    end.accept(est);
+                    est().estimate(end);
                     finalRows = end.getOutput().getTupleCount();
                 }
 
@@ -386,14 +732,14 @@ public class Optimiser {
     private static class Info {
         final List<Scan>      scans     = new ArrayList<>();
         final List<Predicate> eqPreds   = new ArrayList<>();  // attr=attr
-        final List<Predicate> restPreds = new ArrayList<>();  // attr=value
+        final List<Predicate> restPreds = new ArrayList<>();  // attr=value / attr<value / BETWEEN …
     }
     private void collect(Operator op, Info I) {
         if (op instanceof Scan) {
             I.scans.add((Scan) op);
         } else if (op instanceof Select) {
             Predicate p = ((Select) op).getPredicate();
-            (p.equalsValue() ? I.restPreds : I.eqPreds).add(p);
+            (p.comparesValue() ? I.restPreds : I.eqPreds).add(p);
             collect(((Select) op).getInput(), I);
         } else if (op instanceof Project) {
             collect(((Project) op).getInput(), I);
@@ -0,0 +1,286 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 并行解析大型文本目录（格式同 {@link CatalogueParser}）。
+ *
+ * 文件在行边界处切成若干块，每块单独经 FileChannel.map 映射（因此文件可以超过 2 GB），
+ * 交给 ForkJoinPool 并行解析：逐字节找 ':' 与 ','，名字直接从字节解码，十进制数字就地累加，
+ * 不用正则或 String.split；只有少见的 mcv= / hist= 选项交给 MostCommonValues / Histogram 解析。
+ * 每块产出完整的 NamedRelation（属性、统计、索引声明都已就位），
+ * 按块的顺序依次登记到 Catalogue，同名关系、同名属性仍以文件中靠后的为准，与逐行解析一致。
+ *
+ * 与 CatalogueParser 不同，格式错误时抛出 IllegalArgumentException（指明文件中的字节位置），
+ * 而不是打印后停止；空行被跳过。
+ */
+public class ParallelCatalogueParser {
+    /** 每块的最大字节数 */
+    public static final int DEFAULT_CHUNK_BYTES = 8 << 20;
+    /** 每块的最小字节数，小文件不再切分 */
+    static final int MIN_CHUNK_BYTES = 64 << 10;
+
+    private static final byte[] MCV = "mcv=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HIST = "hist=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INDEX = "index".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BITMAP = "bitmap".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path file;
+    private final Catalogue catalogue;
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+    private int chunks;
+
+    public ParallelCatalogueParser(String catFilename, Catalogue catalogue) {
+        this(Paths.get(catFilename), catalogue, ForkJoinPool.commonPool(), DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * @param chunkBytes 每块的最大字节数（块在其后的第一个换行处结束）
+     */
+    public ParallelCatalogueParser(Path file, Catalogue catalogue, ForkJoinPool pool, int chunkBytes) {
+        if (chunkBytes <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkBytes);
+        }
+        this.file = file;
+        this.catalogue = catalogue;
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * @return 最近一次 parse 切出的块数
+     */
+    public int getChunkCount() {
+        return chunks;
+    }
+
+    /** 一块解析出的关系，及各关系在属性目录中的条目（值个数未按行数截断） */
+    private static final class Chunk {
+        final List<NamedRelation> relations = new ArrayList<>();
+        final List<List<Attribute>> attributes = new ArrayList<>();
+    }
+
+    public void parse() {
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long target = Math.min(chunkBytes,
+                    Math.max(MIN_CHUNK_BYTES, size / (4L * pool.getParallelism())));
+            for (long start = 0; start < size; ) {
+                long end = (start + target >= size) ? size : lineEnd(ch, start + target - 1, size);
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Catalogue line at byte " + start + " exceeds 2 GB");
+                }
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                long base = start;
+                tasks.add(pool.submit(() -> parseChunk(map, base)));
+                start = end;
+            }
+            chunks = tasks.size();
+            // 按块的顺序登记，与后面的块的解析重叠进行；整个文件作为目录的一个新版本发布
+            catalogue.update(() -> {
+                for (ForkJoinTask<Chunk> t : tasks) {
+                    Chunk c = t.join();
+                    for (int i = 0; i < c.relations.size(); i++) {
+                        catalogue.register(c.relations.get(i), c.attributes.get(i));
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read catalogue " + file, e);
+        } finally {
+            for (ForkJoinTask<Chunk> t : tasks) {
+                t.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @return pos 处或其后第一个换行之后的位置；没有换行时为文件末尾
+     */
+    private static long lineEnd(FileChannel ch, long pos, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        while (pos < size) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /* ─────────────────────────── 解析一块 ─────────────────────────── */
+
+    private static Chunk parseChunk(MappedByteBuffer map, long base) {
+        Chunk out = new Chunk();
+        byte[] line = new byte[256];
+        int len = map.capacity();
+        int pos = 0;
+        while (pos < len) {
+            int end = pos;
+            while (end < len && map.get(end) != '\n') {
+                end++;
+            }
+            int n = end - pos;
+            if (n > line.length) {
+                line = new byte[Math.max(n, 2 * line.length)];
+            }
+            map.get(pos, line, 0, n);
+            if (n > 0 && line[n - 1] == '\r') {
+                n--;
+            }
+            if (n > 0) {
+                parseRelation(line, n, base + pos, out);
+            }
+            pos = end + 1;
+        }
+        return out;
+    }
+
+    /**
+     * &lt;relation name&gt;:&lt;tuple count&gt;:&lt;attribute&gt;:...
+     */
+    private static void parseRelation(byte[] b, int n, long at, Chunk out) {
+        int c1 = indexOf(b, ':', 0, n);
+        if (c1 <= 0) {
+            throw new IllegalArgumentException("Malformed catalogue line at byte " + at);
+        }
+        int c2 = indexOf(b, ':', c1 + 1, n);
+        if (c2 < 0) {
+            c2 = n;
+        }
+        NamedRelation reln = new NamedRelation(string(b, 0, c1), number(b, c1 + 1, c2, at));
+        List<Attribute> attrs = new ArrayList<>();
+        for (int p = c2 + 1; p < n; ) {
+            int e = indexOf(b, ':', p, n);
+            if (e < 0) {
+                e = n;
+            }
+            parseAttribute(b, p, e, at, reln, attrs);
+            p = e + 1;
+        }
+        out.relations.add(reln);
+        out.attributes.add(attrs);
+    }
+
+    /**
+     * &lt;attr name&gt;,&lt;value count&gt;[,mcv=...][,hist=...][,index][,bitmap]
+     */
+    private static void parseAttribute(byte[] b, int from, int to, long at, NamedRelation reln, List<Attribute> attrs) {
+        int c = indexOf(b, ',', from, to);
+        if (c <= from) {
+            throw new IllegalArgumentException("Malformed attribute '" + string(b, from, to)
+                    + "' at byte " + at);
+        }
+        String name = string(b, from, c);
+        int e = indexOf(b, ',', c + 1, to);
+        if (e < 0) {
+            e = to;
+        }
+        long values = number(b, c + 1, e, at);
+        MostCommonValues mcv = null;
+        Histogram hist = null;
+        boolean index = false;
+        boolean bitmap = false;
+
+        for (int o = e + 1; o < to; o = e + 1) {
+            e = indexOf(b, ',', o, to);
+            if (e < 0) {
+                e = to;
+            }
+            if (startsWith(b, o, e, MCV)) {
+                mcv = MostCommonValues.parse(string(b, o + MCV.length, e));
+            } else if (startsWith(b, o, e, HIST)) {
+                hist = Histogram.parse(string(b, o + HIST.length, e));
+            } else if (e - o == INDEX.length && startsWith(b, o, e, INDEX)) {
+                index = true;
+            } else if (e - o == BITMAP.length && startsWith(b, o, e, BITMAP)) {
+                bitmap = true;
+            } else {
+                throw new IllegalArgumentException("Unknown option '" + string(b, o, e)
+                        + "' on attribute " + name + " at byte " + at);
+            }
+        }
+
+        Attribute attr = new Attribute(name, values, mcv, hist);
+        reln.addAttribute(attr);
+        if (index) {
+            reln.addIndex(name);
+        }
+        if (bitmap) {
+            reln.addBitmapIndex(name);
+        }
+        attrs.add(attr);
+    }
+
+    private static int indexOf(byte[] b, char ch, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] b, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(byte[] b, int from, int to) {
+        return new String(b, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 十进制数字就地累加；带符号、前导零（八进制）、0x / # 前缀或过长时按 Long.decode 解析，与 CatalogueParser 一致。
+     */
+    private static long number(byte[] b, int from, int to, long at) {
+        int n = to - from;
+        if (n > 0 && n <= 18 && (b[from] != '0' || n == 1)) {
+            long v = 0;
+            int i = from;
+            for (; i < to; i++) {
+                int d = b[i] - '0';
+                if (d < 0 || d > 9) {
+                    break;
+                }
+                v = v * 10 + d;
+            }
+            if (i == to) {
+                return v;
+            }
+        }
+        try {
+            return Long.decode(string(b, from, to));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number '" + string(b, from, to) + "' at byte " + at);
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package sjdb;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 基于 morsel 的并行执行器：与 Executor 一样以 PlanVisitor 方式翻译逻辑计划，元组同为 String[]，
+ * 但计划按流水线切分并在 ForkJoinPool 上并行执行。
+ *
+ * - 一条流水线从一个叶子（扫描）出发，经过 Select / Project / 哈希探测 / 积等逐行算子，
+ *   直到流水线断点：哈希连接的构建侧、积的物化侧或最终结果；
+ * - 叶子被切成固定行数（堆文件按页）的 morsel，工作者任务按原子计数器领取，先做完的多领，
+ *   负载自动均衡；池本身的工作窃取负责把任务分到空闲线程；
+ * - 每个工作者把输出写进自己的缓冲区，断点处合并：连接构建侧并行插入共享的
+ *   {@link ConcurrentJoinTable}；最终结果由各工作者直接写出（行序因此不确定）。
+ *
+ * 每条流水线的并行度由 Estimator 对叶子行数的估计决定，不超过 ceil(行数 / morsel 行数)：
+ * 像 Department 这样的小表只有一个 morsel，直接在调用线程上执行。
+ * 连接走内存哈希连接（SORT_MERGE 与布隆过滤器标注被忽略），构建侧选择同 Executor；
+ * 估计构建侧超出连接内存预算时，整个连接子树交给串行执行器（可溢写的混合哈希连接），
+ * 其输出再流入上层流水线。
+ */
+public class ParallelExecutor implements PlanVisitor {
+
+    /** 默认每个 morsel 的行数 */
+    public static final int DEFAULT_MORSEL_ROWS = 16_384;
+
+    private final Path dataDir;
+    private final ForkJoinPool pool;
+    private final int morselRows;
+    private final BufferPool bufferPool;
+    private final long joinMemoryBudget;
+    private final Executor serial;
+    private final Deque<Pipeline> stack = new ArrayDeque<>();
+    private final List<String> report = new ArrayList<>();
+
+    /**
+     * 使用公共 ForkJoinPool 和默认 morsel 大小。
+     */
+    public ParallelExecutor(Path dataDir) {
+        this(dataDir, ForkJoinPool.commonPool(), DEFAULT_MORSEL_ROWS, new BufferPool(BufferPool.configuredPages()));
+    }
+
+    /**
+     * @param pool       执行 morsel 的线程池；其并行度是任一流水线并行度的上限
+     * @param morselRows 每个 morsel 的行数
+     * @param bufferPool 读取堆文件所用的缓冲池（线程安全，各工作者共享）
+     */
+    public ParallelExecutor(Path dataDir, ForkJoinPool pool, int morselRows, BufferPool bufferPool) {
+        if (morselRows <= 0) {
+            throw new IllegalArgumentException("Invalid morsel size: " + morselRows);
+        }
+        this.dataDir = dataDir;
+        this.pool = pool;
+        this.morselRows = morselRows;
+        this.bufferPool = bufferPool;
+        this.joinMemoryBudget = Runtime.getRuntime().maxMemory() / 4;
+        this.serial = new Executor(dataDir, joinMemoryBudget,
+                Paths.get(System.getProperty("java.io.tmpdir")), bufferPool);
+    }
+
+    /**
+     * @return 最近一次执行中每条流水线的 morsel 数与并行度，按执行顺序
+     */
+    public List<String> getPipelineReport() {
+        return new ArrayList<>(report);
+    }
+
+    /* ─────────────────────────── 入口 ─────────────────────────── */
+
+    /**
+     * 执行计划，把结果逐行写到 out（首行为列名，格式与 Executor 相同），返回结果行数。
+     */
+    public long run(Operator plan, PrintStream out) {
+        Pipeline p = build(plan);
+        List<String> names = new ArrayList<>();
+        for (Attribute a : p.schema) {
+            names.add(a.getName());
+        }
+        out.println(String.join(",", names));
+        // 各工作者直接写出结果行，不在内存中收集整个结果
+        AtomicLong rows = new AtomicLong();
+        Consumer<String[]> sink = t -> {
+            String line = String.join(",", t);
+            synchronized (out) {
+                out.println(line);
+            }
+            rows.incrementAndGet();
+        };
+        p.run(() -> sink);
+        return rows.get();
+    }
+
+    /**
+     * 把计划切成流水线，返回产生最终结果的那条（尚未执行）。
+     */
+    private Pipeline build(Operator plan) {
+        stack.clear();
+        report.clear();
+        if (plan.getOutput() == null) {
+            new Estimator().estimate(plan);
+        }
+        plan.accept(this);
+        if (stack.size() != 1) {
+            throw new IllegalStateException("Malformed plan: " + plan);
+        }
+        return stack.pop();
+    }
+
+    /* ─────────────────────────── 访问者 ─────────────────────────── */
+
+    public void visit(Scan op) {
+        NamedRelation rel = (NamedRelation) op.getRelation();
+        Source source;
+        // 与行式引擎相同：列式存储、堆文件、CSV 依次优先
+        if (ColumnFile.exists(dataDir, rel)) {
+            source = new ColumnSource(rel, op.getColumns());
+        } else if (Files.isReadable(HeapFile.file(dataDir, rel))) {
+            source = new HeapSource(rel);
+        } else {
+            // CSV 不能按行号定位：由串行执行器顺序读出，按 morsel 分给工作者
+            source = new StreamSource(op);
+        }
+        stack.push(new Pipeline(rel.toString(), source, op.getOutput().getTupleCount()));
+    }
+
+    public void visit(IndexScan op) {
+        // 索引查找按 RID 随机读取：串行取回，按 morsel 分给工作者
+        stack.push(new Pipeline(op.getRelation().toString(), new StreamSource(op), op.getOutput().getTupleCount()));
+    }
+
+    public void visit(BitmapScan op) {
+        stack.push(new Pipeline(op.getRelation().toString(), new StreamSource(op), op.getOutput().getTupleCount()));
+    }
+
+    public void visit(Project op) {
+        Pipeline p = stack.peek();
+        int[] columns = new int[op.getAttributes().size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Executor.columnIndex(p.schema, op.getAttributes().get(i));
+        }
+        p.add(down -> t -> {
+            String[] out = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                out[i] = t[columns[i]];
+            }
+            down.accept(out);
+        });
+        p.schema = op.getAttributes();
+    }
+
+    public void visit(Select op) {
+        Pipeline p = stack.peek();
+        Predicate pred = op.getPredicate();
+        int left = Executor.columnIndex(p.schema, pred.getLeftAttribute());
+        int right = pred.comparesValue() ? -1 : Executor.columnIndex(p.schema, pred.getRightAttribute());
+        p.add(down -> t -> {
+            if (pred.test(t[left], (right < 0) ? null : t[right])) {
+                down.accept(t);
+            }
+        });
+    }
+
+    public void visit(Product op) {
+        Pipeline right = stack.pop();
+        Pipeline left = stack.peek();
+        // 右侧物化为断点，左侧继续流水
+        List<String[]> inner = new ArrayList<>();
+        left.before(() -> {
+            for (List<String[]> part : right.run()) {
+                inner.addAll(part);
+            }
+        });
+        left.add(down -> t -> {
+            for (String[] r : inner) {
+                down.accept(Executor.concat(t, r));
+            }
+        });
+        left.schema = concat(left.schema, right.schema);
+    }
+
+    public void visit(Join op) {
+        Pipeline right = stack.pop();
+        Pipeline left = stack.pop();
+        boolean buildLeft = Executor.buildOnLeft(op);
+        Relation buildSide = (buildLeft ? op.getLeft() : op.getRight()).getOutput();
+        long buildBytes = Estimator.saturatingMultiply(buildSide.getTupleCount(),
+                Executor.estimateRowBytes(buildSide.getAttributes().size()));
+        if (buildBytes > joinMemoryBudget) {
+            // 共享哈希表放不进内存：两侧的流水线不再执行，整个子树由串行执行器的混合哈希连接分区溢写
+            stack.push(new Pipeline("hybrid join " + op.getPredicate(), new StreamSource(op),
+                    op.getOutput().getTupleCount()));
+            return;
+        }
+        Pipeline build = buildLeft ? left : right;
+        Pipeline probe = buildLeft ? right : left;
+        int[] cols = Executor.joinColumns(left.schema, right.schema, op.getPredicate());
+        int buildKey = buildLeft ? cols[0] : cols[1];
+        int probeKey = buildLeft ? cols[1] : cols[0];
+
+        ConcurrentJoinTable[] table = new ConcurrentJoinTable[1];
+        probe.before(() -> table[0] = buildTable(build.run(), buildKey));
+        probe.add(down -> t -> {
+            ConcurrentJoinTable h = table[0];
+            String k = t[probeKey];
+            for (int i = h.first(k); i >= 0; i = h.next(i)) {
+                String[] b = h.row(i);
+                if (b[buildKey].equals(k)) {
+                    down.accept(buildLeft ? Executor.concat(b, t) : Executor.concat(t, b));
+                }
+            }
+        });
+        probe.schema = concat(left.schema, right.schema);
+        stack.push(probe);
+    }
+
+    /* ─────────────────────────── 流水线 ─────────────────────────── */
+
+    /**
+     * 各工作者的局部结果合并进一个共享哈希表：按局部结果的前缀和分配下标，每份由一个任务并行插入。
+     */
+    private ConcurrentJoinTable buildTable(List<List<String[]>> parts, int key) {
+        int size = 0;
+        for (List<String[]> part : parts) {
+            size += part.size();
+        }
+        ConcurrentJoinTable table = new ConcurrentJoinTable(size, key);
+        List<Runnable> tasks = new ArrayList<>();
+        int offset = 0;
+        for (List<String[]> part : parts) {
+            int base = offset;
+            tasks.add(() -> {
+                for (int i = 0; i < part.size(); i++) {
+                    table.insert(base + i, part.get(i));
+                }
+            });
+            offset += part.size();
+        }
+        invokeAll(tasks);
+        return table;
+    }
+
+    /**
+     * 在池中并行执行一组任务并等待全部完成；只有一个任务时直接在调用线程上执行。
+     */
+    private void invokeAll(List<Runnable> tasks) {
+        if (tasks.size() == 1) {
+            tasks.get(0).run();
+            return;
+        }
+        pool.invoke(new RecursiveAction() {
+            protected void compute() {
+                List<ForkJoinTask<?>> forks = new ArrayList<>();
+                for (Runnable r : tasks) {
+                    forks.add(ForkJoinTask.adapt(r));
+                }
+                ForkJoinTask.invokeAll(forks);
+            }
+        });
+    }
+
+    /**
+     * 流水线的并行度：不超过池的并行度，也不超过按估计行数切出的 morsel 数。
+     */
+    int degreeOfParallelism(long estimatedRows, int morsels) {
+        long wanted = Math.max(1, (estimatedRows + morselRows - 1) / morselRows);
+        return (int) Math.max(1, Math.min(Math.min(wanted, morsels), pool.getParallelism()));
+    }
+
+    private static List<Attribute> concat(List<Attribute> l, List<Attribute> r) {
+        List<Attribute> schema = new ArrayList<>(l);
+        schema.addAll(r);
+        return schema;
+    }
+
+    /**
+     * 一个逐行算子：给定下游，返回处理一条输入元组的函数。每个工作者各自组装一条链。
+     */
+    private interface Stage {
+        Consumer<String[]> wrap(Consumer<String[]> down);
+    }
+
+    private final class Pipeline {
+        final String name;
+        final Source source;
+        final long estimatedRows;
+        final List<Stage> stages = new ArrayList<>();
+        /** 运行前须完成的断点（连接构建、积的物化），按加入顺序执行 */
+        final List<Runnable> prerequisites = new ArrayList<>();
+        List<Attribute> schema;
+
+        Pipeline(String name, Source source, long estimatedRows) {
+            this.name = name;
+            this.source = source;
+            this.estimatedRows = estimatedRows;
+            this.schema = source.getSchema();
+        }
+
+        void add(Stage stage) {
+            stages.add(stage);
+        }
+
+        void before(Runnable r) {
+            prerequisites.add(r);
+        }
+
+        /**
+         * 运行流水线，每个工作者的输出收集在各自的列表中。
+         */
+        List<List<String[]>> run() {
+            List<List<String[]>> parts = new ArrayList<>();
+            run(() -> {
+                List<String[]> out = new ArrayList<>();
+                parts.add(out);
+                return out::add;
+            });
+            return parts;
+        }
+
+        /**
+         * 运行流水线。
+         *
+         * @param sinks 在调用线程上为每个工作者取一个输出；各工作者的输出可以是同一个线程安全的 Consumer
+         */
+        void run(Supplier<Consumer<String[]>> sinks) {
+            for (Runnable r : prerequisites) {
+                r.run();
+            }
+            try {
+                int morsels = source.open();
+                int dop = degreeOfParallelism(estimatedRows, morsels);
+                List<Runnable> workers = new ArrayList<>();
+                AtomicInteger nextMorsel = new AtomicInteger();
+                AtomicInteger done = new AtomicInteger();
+                for (int w = 0; w < dop; w++) {
+                    Consumer<String[]> out = sinks.get();
+                    workers.add(() -> {
+                        Consumer<String[]> sink = out;
+                        for (int s = stages.size() - 1; s >= 0; s--) {
+                            sink = stages.get(s).wrap(sink);
+                        }
+                        int m;
+                        while ((m = nextMorsel.getAndIncrement()) < morsels && source.read(m, sink)) {
+                            done.incrementAndGet();
+                        }
+                    });
+                }
+                invokeAll(workers);
+                synchronized (report) {
+                    report.add(name + ": " + done.get() + " morsels, DOP " + dop);
+                }
+            } finally {
+                source.close();
+            }
+        }
+    }
+
+    /* ─────────────────────────── 叶子 ─────────────────────────── */
+
+    /**
+     * 可按 morsel 并发读取的数据源。open 之后 read 可由多个线程对不同 morsel 同时调用。
+     */
+    private interface Source {
+        /** @return morsel 个数；事先不知道时返回 Integer.MAX_VALUE，读完后 read 返回 false */
+        int open();
+
+        /** @return 没有这个 morsel（数据已读完）时返回 false */
+        boolean read(int morsel, Consumer<String[]> out);
+
+        void close();
+
+        List<Attribute> getSchema();
+    }
+
+    /**
+     * 列式存储：按行号区间切分，映射区只做绝对位置读取，可被多个线程共享。
+     */
+    private final class ColumnSource implements Source {
+        private final NamedRelation relation;
+        private final List<Attribute> columns;
+        private MappedColumn[] mapped;
+        private long rows;
+
+        ColumnSource(NamedRelation relation, List<Attribute> columns) {
+            this.relation = relation;
+            this.columns = (columns == null) ? relation.getAttributes() : columns;
+        }
+
+        public int open() {
+            Path dir = ColumnFile.directory(dataDir, relation);
+            mapped = new MappedColumn[columns.size()];
+            for (int c = 0; c < mapped.length; c++) {
+                mapped[c] = new MappedColumn(ColumnFile.columnFile(dir, columns.get(c)));
+            }
+            rows = (mapped.length > 0) ? mapped[0].getRowCount()
+                    : new MappedColumn(ColumnFile.columnFile(dir, relation.getAttributes().get(0))).getRowCount();
+            return (int) ((rows + morselRows - 1) / morselRows);
+        }
+
+        public boolean read(int morsel, Consumer<String[]> out) {
+            long from = (long) morsel * morselRows;
+            long to = Math.min(rows, from + morselRows);
+            for (long r = from; r < to; r++) {
+                String[] t = new String[mapped.length];
+                for (int c = 0; c < t.length; c++) {
+                    t[c] = mapped[c].getString(r);
+                }
+                out.accept(t);
+            }
+            return true;
+        }
+
+        public void close() {
+            mapped = null;
+        }
+
+        public List<Attribute> getSchema() {
+            return columns;
+        }
+    }
+
+    /**
+     * 堆文件：按页区间切分，页数按目录行数折算成约 morselRows 行，页经共享缓冲池读取。
+     */
+    private final class HeapSource implements Source {
+        private final NamedRelation relation;
+        private final int width;
+        private HeapFile file;
+        private int pages;
+        private int pagesPerMorsel;
+
+        HeapSource(NamedRelation relation) {
+            this.relation = relation;
+            this.width = relation.getAttributes().size();
+        }
+
+        public int open() {
+            file = new HeapFile(HeapFile.file(dataDir, relation));
+            pages = file.getPageCount();
+            long rowsPerPage = Math.max(1, relation.getTupleCount() / Math.max(1, pages));
+            pagesPerMorsel = (int) Math.max(1, morselRows / rowsPerPage);
+            return (pages + pagesPerMorsel - 1) / pagesPerMorsel;
+        }
+
+        public boolean read(int morsel, Consumer<String[]> out) {
+            int from = morsel * pagesPerMorsel;
+            int to = Math.min(pages, from + pagesPerMorsel);
+            for (int p = from; p < to; p++) {
+                ByteBuffer page = bufferPool.pin(file, p);
+                try {
+                    int slots = SlottedPage.slotCount(page);
+                    for (int s = 0; s < slots; s++) {
+                        out.accept(SlottedPage.read(page, s, width));
+                    }
+                } finally {
+                    bufferPool.unpin(file, p);
+                }
+            }
+            return true;
+        }
+
+        public void close() {
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+        }
+
+        public List<Attribute> getSchema() {
+            return relation.getAttributes();
+        }
+    }
+
+    /**
+     * 不能按位置并发读取的输入（CSV、索引扫描、位图扫描、溢写的连接子树）：由串行执行器产出，
+     * 工作者每次在锁内取走下一个 morsel 的行，处理在锁外进行。
+     * 内存中最多同时有 DOP 个 morsel，不物化整个输入。
+     */
+    private final class StreamSource implements Source {
+        private final TupleIterator input;
+        private boolean exhausted;
+
+        StreamSource(Operator op) {
+            this.input = serial.build(op);
+        }
+
+        public int open() {
+            input.open();
+            exhausted = false;
+            return Integer.MAX_VALUE;
+        }
+
+        public boolean read(int morsel, Consumer<String[]> out) {
+            List<String[]> rows = new ArrayList<>();
+            synchronized (this) {
+                String[] t;
+                while (!exhausted && rows.size() < morselRows) {
+                    if ((t = input.next()) == null) {
+                        exhausted = true;
+                    } else {
+                        rows.add(t);
+                    }
+                }
+            }
+            for (String[] t : rows) {
+                out.accept(t);
+            }
+            return !rows.isEmpty();
+        }
+
+        public void close() {
+            input.close();
+        }
+
+        public List<Attribute> getSchema() {
+            return input.getSchema();
+        }
+    }
+}
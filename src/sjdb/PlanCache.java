@@ -0,0 +1,285 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 优化后计划的有界 LRU 缓存：相同形状的查询只解析、优化一次。
+ *
+ * - 键是规范化的查询指纹：空白归一，FROM 列表与 WHERE 谓词排序（与书写顺序无关），
+ *   attr=attr 两侧按名字排序；SELECT 列表决定输出列顺序，保持原样；
+ *   SELECT * 的输出列顺序跟随 FROM 顺序，此时 FROM 列表不排序；
+ * - 每个条目记下所引用关系在 {@link Catalogue} 中的统计版本；命中时若任一版本已变化，
+ *   条目失效并移除，按未命中处理，重新优化；版本与解析都取自同一个目录快照，
+ *   计划所依据的统计与记下的版本一致；
+ * - 统计命中率与命中所省下的解析 + 优化时间。
+ *
+ * 缓存的计划会被多个调用方共享，调用方不得修改它。查找与放入在锁内进行，解析与优化在锁外：
+ * 未命中的调用方先放入一个未完成的条目再去优化，同一指纹的其他调用方等待这个条目，
+ * 不同指纹的查询可以同时优化。
+ */
+public class PlanCache {
+    /** 默认容量（条目数） */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final Catalogue catalogue;
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> entries;
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long savedNanos;
+
+    private static final class Entry {
+        /** 优化完成（或失败）时完成 */
+        final CompletableFuture<Operator> plan = new CompletableFuture<>();
+        final Map<String, Long> versions;
+        /** 在 plan 完成之前写入，完成之后读取 */
+        long optimiseNanos;
+
+        Entry(Map<String, Long> versions) {
+            this.versions = versions;
+        }
+    }
+
+    public PlanCache(Catalogue catalogue) {
+        this(catalogue, DEFAULT_CAPACITY);
+    }
+
+    public PlanCache(Catalogue catalogue, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid plan cache capacity: " + capacity);
+        }
+        this.catalogue = catalogue;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PlanCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * 返回查询的优化计划（已估算）：缓存中有且统计未变时直接返回，否则解析、优化后放入缓存。
+     * 同一指纹正在由其他调用方优化时等待其结果；优化失败时异常抛给所有等待者，条目被移除。
+     */
+    public Operator plan(String query) throws Exception {
+        Query q = normalise(query);
+        CatalogueSnapshot snapshot = catalogue.snapshot();
+        Map<String, Long> versions = versions(snapshot, q.relations);
+        Entry e;
+        boolean owner = false;
+        synchronized (this) {
+            e = entries.get(q.fingerprint);
+            if (e != null && !e.versions.equals(versions)) {
+                entries.remove(q.fingerprint);
+                invalidations++;
+                e = null;
+            }
+            if (e == null) {
+                misses++;
+                e = new Entry(versions);
+                entries.put(q.fingerprint, e);
+                owner = true;
+            } else {
+                hits++;
+            }
+        }
+        if (owner) {
+            return optimise(q, snapshot, e);
+        }
+        Operator plan;
+        try {
+            plan = e.plan.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+        synchronized (this) {
+            savedNanos += e.optimiseNanos;
+        }
+        return plan;
+    }
+
+    /**
+     * 在锁外解析、优化查询并完成条目。
+     */
+    private Operator optimise(Query q, CatalogueSnapshot snapshot, Entry e) throws Exception {
+        long start = System.nanoTime();
+        try {
+            // 解析规范化后的文本：它本身是合法查询，空白也已符合 QueryParser 的要求
+            Operator plan = new QueryParser(snapshot, new StringReader(q.fingerprint)).parse();
+            Estimator est = new Estimator();
+            plan.accept(est);
+            Operator optPlan = new Optimiser(catalogue).optimise(plan);
+            optPlan.accept(est);
+            e.optimiseNanos = System.nanoTime() - start;
+            e.plan.complete(optPlan);
+            return optPlan;
+        } catch (Exception | Error ex) {
+            synchronized (this) {
+                entries.remove(q.fingerprint, e);
+            }
+            e.plan.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * 移除引用了指定关系的全部条目（统计已知变化时可主动调用；否则在命中时按版本检查）。
+     *
+     * @return 移除的条目数
+     */
+    public synchronized int invalidate(String relation) {
+        int n = 0;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (it.next().versions.containsKey(relation)) {
+                it.remove();
+                n++;
+            }
+        }
+        invalidations += n;
+        return n;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return 各关系在 snapshot 中的统计版本（PreparedStatement 也用它判断计划是否过期）
+     */
+    static Map<String, Long> versions(CatalogueSnapshot snapshot, Collection<String> relations) {
+        Map<String, Long> v = new HashMap<>();
+        for (String r : relations) {
+            v.put(r, snapshot.getStatsVersion(r));
+        }
+        return v;
+    }
+
+    /* ─────────────────────────── 统计 ─────────────────────────── */
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return 因统计变化而失效的条目数
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return 命中次数占查找次数的比例；尚无查找时为 0
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return (lookups == 0) ? 0.0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return 命中所省下的解析 + 优化时间（按各条目首次优化的耗时累计），纳秒
+     */
+    public synchronized long getSavedNanos() {
+        return savedNanos;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized String toString() {
+        return String.format("plan cache: %d entries, %d hits, %d misses (%.1f%% hit rate), "
+                        + "%d invalidated, %.3f ms optimisation saved",
+                entries.size(), hits, misses, 100 * getHitRate(), invalidations, savedNanos / 1e6);
+    }
+
+    /* ─────────────────────────── 指纹 ─────────────────────────── */
+
+    /**
+     * @return 查询的规范化指纹，本身也是一条 QueryParser 可解析的查询
+     */
+    public static String fingerprint(String query) {
+        return normalise(query).fingerprint;
+    }
+
+    private static final class Query {
+        final String fingerprint;
+        final List<String> relations;
+
+        Query(String fingerprint, List<String> relations) {
+            this.fingerprint = fingerprint;
+            this.relations = relations;
+        }
+    }
+
+    /**
+     * 按 QueryParser 的行格式（SELECT / FROM / 可选 WHERE 三行）规范化查询文本。
+     */
+    private static Query normalise(String query) {
+        String[] lines = query.split("\n");
+        if (lines.length < 2) {
+            throw new IllegalArgumentException("Malformed query: " + query);
+        }
+        List<String> select = items(lines[0], "SELECT");
+        List<String> from = items(lines[1], "FROM");
+        List<String> where = new ArrayList<>();
+        if (lines.length > 2 && lines[2].trim().startsWith("WHERE")) {
+            for (String p : items(lines[2], "WHERE")) {
+                where.add(predicate(p));
+            }
+        }
+        List<String> relations = new ArrayList<>(from);
+        if (!select.equals(Arrays.asList("*"))) {
+            from.sort(null);
+        }
+        where.sort(null);
+        String text = "SELECT " + String.join(",", select) + "\nFROM " + String.join(",", from);
+        if (!where.isEmpty()) {
+            text += "\nWHERE " + String.join(",", where);
+        }
+        return new Query(text, relations);
+    }
+
+    private static List<String> items(String line, String keyword) {
+        line = line.trim();
+        if (!line.startsWith(keyword)) {
+            throw new IllegalArgumentException("Expected " + keyword + ": " + line);
+        }
+        List<String> out = new ArrayList<>();
+        for (String item : line.substring(keyword.length()).split(",")) {
+            out.add(item.trim().replaceAll("\\s+", " "));
+        }
+        return out;
+    }
+
+    /**
+     * 去掉比较符两侧的空白；attr=attr 两侧按名字排序。
+     */
+    private static String predicate(String p) {
+        p = p.replaceAll("\\s*(<=|>=|<|>|=)\\s*", "$1");
+        int eq = p.indexOf('=');
+        if (eq > 0 && p.indexOf('"') < 0 && p.indexOf('?') < 0 && p.indexOf('<') < 0 && p.indexOf('>') < 0) {
+            String l = p.substring(0, eq), r = p.substring(eq + 1);
+            return (l.compareTo(r) <= 0) ? l + "=" + r : r + "=" + l;
+        }
+        return p;
+    }
+}
@@ -11,6 +11,16 @@ public interface PlanVisitor {
 	 * @param op Scan operator to be visited
 	 */
 	public void visit(Scan op);
+	/**
+	 * Visit an IndexScan operator.
+	 * @param op IndexScan operator to be visited
+	 */
+	public void visit(IndexScan op);
+	/**
+	 * Visit a BitmapScan operator.
+	 * @param op BitmapScan operator to be visited
+	 */
+	public void visit(BitmapScan op);
 	/**
 	 * Visit a Project operator.
 	 * @param op Project operator to be visited
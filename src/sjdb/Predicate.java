@@ -2,17 +2,38 @@ package sjdb;
 
 /**
  * This class is used to represent the predicates associated with 
- * joins and select operators. Note that, while a string value is
- * required for predicates of the form attr=value, this values is 
- * only used by the toString() method; a future version of
- * Attribute which uses more expressive synopses may change this.
+ * joins and select operators. For predicates of the form attr=value,
+ * the value is used by the Estimator when the attribute carries 
+ * distribution synopses (most common values or a histogram); otherwise 
+ * it is only used by the toString() method.
  * 
  * @author nmg
  */
 public class Predicate {
+	/**
+	 * The comparison applied between the left attribute and the value(s)
+	 * of a predicate of the form attr OP value.
+	 */
+	public enum Comparison {
+		EQ("="), LT("<"), LE("<="), GT(">"), GE(">="), BETWEEN(" BETWEEN ");
+
+		private final String symbol;
+
+		Comparison(String symbol) {
+			this.symbol = symbol;
+		}
+
+		public String getSymbol() {
+			return symbol;
+		}
+	}
+
 	private Attribute leftAttribute;
 	private Attribute rightAttribute;
 	private String rightValue;
+	private String upperValue;
+	private Comparison comparison = Comparison.EQ;
+	private int parameter = -1;
 
 	/**
 	 * Create a predicate of the form attr=attr
@@ -34,14 +55,114 @@ public class Predicate {
 		this.rightValue = value;
 	}
 
+	/**
+	 * Create a predicate of the form attr OP value, where OP is one of
+	 * =, <, <=, >, >=
+	 * @param left
+	 * @param comparison
+	 * @param value
+	 */
+	public Predicate(Attribute left, Comparison comparison, String value) {
+		if (comparison == Comparison.BETWEEN) {
+			throw new IllegalArgumentException("BETWEEN needs a lower and an upper value");
+		}
+		this.leftAttribute = left;
+		this.comparison = comparison;
+		this.rightValue = value;
+	}
+
+	/**
+	 * Create a predicate of the form attr BETWEEN low AND high (both 
+	 * bounds inclusive)
+	 * @param left
+	 * @param low
+	 * @param high
+	 */
+	public Predicate(Attribute left, String low, String high) {
+		this.leftAttribute = left;
+		this.comparison = Comparison.BETWEEN;
+		this.rightValue = low;
+		this.upperValue = high;
+	}
+
+	/**
+	 * Create a predicate of the form attr OP ?, where OP is one of
+	 * =, <, <=, >, >= and the value is the index'th parameter of a
+	 * prepared statement, supplied when the statement is executed
+	 * @param left
+	 * @param comparison
+	 * @param index zero-based parameter index
+	 * @return
+	 */
+	public static Predicate parameter(Attribute left, Comparison comparison, int index) {
+		Predicate p = new Predicate(left, comparison, "?");
+		p.parameter = index;
+		return p;
+	}
+
+	/**
+	 * Return true if this predicate compares against an unbound parameter
+	 * @return
+	 */
+	public boolean isParameter() {
+		return this.parameter >= 0;
+	}
+
+	/**
+	 * Return the parameter index of an attr OP ? predicate, or -1
+	 * @return
+	 */
+	public int getParameterIndex() {
+		return this.parameter;
+	}
+
+	/**
+	 * Return a copy of this parameter predicate with the value bound
+	 * @param value
+	 * @return
+	 */
+	public Predicate bind(String value) {
+		if (!isParameter()) {
+			throw new IllegalStateException("Predicate " + this + " has no parameter");
+		}
+		return new Predicate(this.leftAttribute, this.comparison, value);
+	}
+
 	/**
 	 * Return true if this predicate is of the form attr=value
 	 * @return
 	 */
 	public boolean equalsValue() {
+		return this.rightValue != null && this.comparison == Comparison.EQ;
+	}
+	
+	/**
+	 * Return true if this predicate is a range predicate of the form
+	 * attr<value, attr<=value, attr>value, attr>=value or 
+	 * attr BETWEEN low AND high
+	 * @return
+	 */
+	public boolean isRange() {
+		return this.rightValue != null && this.comparison != Comparison.EQ;
+	}
+	
+	/**
+	 * Return true if this predicate compares an attribute with constant 
+	 * value(s), i.e. it is either an equality or a range predicate
+	 * @return
+	 */
+	public boolean comparesValue() {
 		return this.rightValue != null;
 	}
 	
+	/**
+	 * Return the comparison used by this predicate (EQ for attr=attr)
+	 * @return comparison
+	 */
+	public Comparison getComparison() {
+		return this.comparison;
+	}
+	
 	/**
 	 * Return ATTR for predicates of the form ATTR=attr or ATTR=value
 	 * @return left attribute
@@ -59,21 +180,65 @@ public class Predicate {
 	}
 	
 	/**
-	 * Return VALUE for predicates of the form attr=VALUE
+	 * Return VALUE for predicates of the form attr OP VALUE, or the lower
+	 * bound LOW for attr BETWEEN LOW AND high
 	 * @return right value
 	 */
 	public String getRightValue() {
 		return this.rightValue;
 	}
 	
+	/**
+	 * Return HIGH for predicates of the form attr BETWEEN low AND HIGH
+	 * @return upper value, or null for other predicates
+	 */
+	public String getUpperValue() {
+		return this.upperValue;
+	}
+	
+	/**
+	 * Evaluate this predicate against the values of a tuple. For attr=attr
+	 * predicates, otherValue is the tuple's value of the right attribute;
+	 * for predicates against constants it is ignored. Equality is exact
+	 * string equality; range comparisons are numeric when both sides are
+	 * numbers and lexicographic otherwise.
+	 * @param leftValue
+	 * @param otherValue
+	 * @return true if the tuple satisfies this predicate
+	 */
+	public boolean test(String leftValue, String otherValue) {
+		if (isParameter()) {
+			throw new IllegalStateException("Parameter " + this.parameter + " of " + this + " is not bound");
+		}
+		if (this.rightValue == null) {
+			return leftValue.equals(otherValue);
+		}
+		switch (this.comparison) {
+			case EQ: return leftValue.equals(this.rightValue);
+			case LT: return Histogram.compareValues(leftValue, this.rightValue) < 0;
+			case LE: return Histogram.compareValues(leftValue, this.rightValue) <= 0;
+			case GT: return Histogram.compareValues(leftValue, this.rightValue) > 0;
+			case GE: return Histogram.compareValues(leftValue, this.rightValue) >= 0;
+			default:
+				return Histogram.compareValues(leftValue, this.rightValue) >= 0
+						&& Histogram.compareValues(leftValue, this.upperValue) <= 0;
+		}
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
 		if (this.rightValue == null) {
 			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString(); 
+		} else if (isParameter()) {
+			return this.leftAttribute.toString() + this.comparison.getSymbol() + "?";
+		} else if (this.comparison == Comparison.BETWEEN) {
+			return this.leftAttribute.toString() + " BETWEEN \"" + this.rightValue
+					+ "\" AND \"" + this.upperValue + "\"";
 		} else {
-			return this.leftAttribute.toString() + "=\"" + this.rightValue + "\"";
+			return this.leftAttribute.toString() + this.comparison.getSymbol()
+					+ "\"" + this.rightValue + "\"";
 		}
 	}
 }
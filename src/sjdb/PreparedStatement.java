@@ -0,0 +1,293 @@
+package sjdb;
+
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带 ? 参数的预编译查询：prepare 时解析并按均匀分布假设优化一次，得到通用计划；
+ * 执行时把参数值代入计划中的谓词，不再重新优化。
+ *
+ * 绑定值若有 MCV / 直方图统计，先按 Estimator 的公式算出各参数的实际选择率，
+ * 与通用计划假设的选择率（等值 1/V，范围取默认比例）比较，按比值的 log4 取整分档：
+ * 各参数都在 0 档（相差不到 2 倍）时直接用通用计划；否则按档位组合查已有计划，
+ * 没有时才用绑定值重新优化。新计划与通用计划形状相同时记为通用计划，
+ * 之后同一档位组合也不再重新优化。
+ *
+ * 规范计划、模板与分档所用的统计都来自 prepare 时的同一个目录快照；绑定时若查询所涉关系的
+ * 统计版本（见 Catalogue.getStatsVersion）已变化（如 ANALYZE 之后），先对新的快照重新解析、优化，
+ * 丢弃旧的模板，单次 bind 不会混用两个版本的统计。
+ *
+ * 计划以参数谓词为模板保存（优化器会原样搬动谓词对象，按对象身份换回参数），
+ * 绑定时复制算子树并替换谓词，缓存的模板本身不被修改；所有方法都是同步的。
+ */
+public class PreparedStatement {
+    private final Catalogue catalogue;
+    private final String query;
+    /** 当前一次解析、优化的结果；统计版本变化时整体替换 */
+    private Prepared prepared;
+    private long executions;
+    private long reoptimisations;
+    private long reparses;
+
+    /** 对一个目录快照解析、优化的结果 */
+    private static final class Prepared {
+        final CatalogueSnapshot snapshot;
+        /** 查询所涉关系 → 解析时的统计版本 */
+        final Map<String, Long> versions;
+        final Operator canonical;
+        final Predicate[] parameters;
+        final Operator generic;
+        /** 选择率档位组合 → 计划模板 */
+        final Map<String, Operator> plans = new HashMap<>();
+
+        Prepared(CatalogueSnapshot snapshot, Map<String, Long> versions, Operator canonical,
+                 Predicate[] parameters, Operator generic) {
+            this.snapshot = snapshot;
+            this.versions = versions;
+            this.canonical = canonical;
+            this.parameters = parameters;
+            this.generic = generic;
+            plans.put(signature(new int[parameters.length]), generic);
+        }
+    }
+
+    /**
+     * 解析并优化查询。
+     *
+     * @throws IllegalArgumentException 查询中的参数不是 attr OP ? 形式时
+     */
+    public PreparedStatement(Catalogue catalogue, String query) throws Exception {
+        this.catalogue = catalogue;
+        this.query = query;
+        this.prepared = prepare(catalogue.snapshot());
+    }
+
+    /**
+     * 对 snapshot 解析查询并按均匀分布假设优化出通用计划。
+     */
+    private Prepared prepare(CatalogueSnapshot snapshot) throws Exception {
+        QueryParser parser = new QueryParser(snapshot, new StringReader(query));
+        Operator canonical = parser.parse();
+        Predicate[] parameters = new Predicate[parser.getParameterCount()];
+        collectParameters(canonical, parameters);
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i] == null) {
+                throw new IllegalArgumentException("Parameter " + i + " not found in " + query);
+            }
+        }
+        List<String> relations = new ArrayList<>();
+        collectRelations(canonical, relations);
+        canonical.accept(new Estimator());
+        Operator generic = new Optimiser(catalogue).optimise(canonical);
+        return new Prepared(snapshot, PlanCache.versions(snapshot, relations), canonical, parameters, generic);
+    }
+
+    public synchronized int getParameterCount() {
+        return prepared.parameters.length;
+    }
+
+    /**
+     * @return 用参数谓词写成的通用计划（不可直接执行）
+     */
+    public synchronized Operator getGenericPlan() {
+        return prepared.generic;
+    }
+
+    /**
+     * 代入参数值，返回可执行、已估算的计划。
+     */
+    public synchronized Operator bind(String... values) throws Exception {
+        if (values.length != prepared.parameters.length) {
+            throw new IllegalArgumentException("Expected " + prepared.parameters.length + " parameter values, got "
+                    + values.length);
+        }
+        CatalogueSnapshot snapshot = catalogue.snapshot();
+        if (!PlanCache.versions(snapshot, prepared.versions.keySet()).equals(prepared.versions)) {
+            prepared = prepare(snapshot);
+            reparses++;
+        }
+        Prepared p = prepared;
+        executions++;
+        String key = signature(buckets(p, values));
+        Operator template = p.plans.get(key);
+        if (template == null) {
+            template = reoptimise(p, values);
+            p.plans.put(key, template);
+        }
+        Map<Predicate, Predicate> bound = new IdentityHashMap<>();
+        for (Predicate param : p.parameters) {
+            bound.put(param, param.bind(values[param.getParameterIndex()]));
+        }
+        Operator plan = copy(template, bound);
+        plan.accept(new Estimator());
+        return plan;
+    }
+
+    /**
+     * 代入参数值后在 executor 上执行，结果写到 out，返回结果行数。
+     */
+    public long execute(Executor executor, PrintStream out, String... values) throws Exception {
+        return executor.run(bind(values), out);
+    }
+
+    /**
+     * @return 执行（绑定）次数
+     */
+    public synchronized long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * @return 因绑定值选择率偏离而重新优化的次数
+     */
+    public synchronized long getReoptimisations() {
+        return reoptimisations;
+    }
+
+    /**
+     * @return 因统计版本变化而重新解析、优化的次数
+     */
+    public synchronized long getReparses() {
+        return reparses;
+    }
+
+    /**
+     * @return 已保存的计划模板个数（含通用计划）
+     */
+    public synchronized int getPlanCount() {
+        return prepared.plans.size();
+    }
+
+    public String toString() {
+        return query.trim() + " [" + getParameterCount() + " parameters, " + getPlanCount() + " plans]";
+    }
+
+    /* ─────────────────────────── 重新优化 ─────────────────────────── */
+
+    /**
+     * 用绑定值重新优化规范计划，再把绑定谓词换回参数谓词得到模板；形状与通用计划相同时返回通用计划。
+     */
+    private Operator reoptimise(Prepared p, String[] values) {
+        reoptimisations++;
+        Map<Predicate, Predicate> bound = new IdentityHashMap<>();
+        Map<Predicate, Predicate> unbound = new IdentityHashMap<>();
+        for (Predicate param : p.parameters) {
+            Predicate b = param.bind(values[param.getParameterIndex()]);
+            bound.put(param, b);
+            unbound.put(b, param);
+        }
+        Operator plan = copy(p.canonical, bound);
+        plan.accept(new Estimator());
+        Operator template = copy(new Optimiser(catalogue).optimise(plan), unbound);
+        return template.toString().equals(p.generic.toString()) ? p.generic : template;
+    }
+
+    /**
+     * 每个参数的选择率档位：round(log4(实际选择率 / 通用计划假设的选择率))；
+     * 属性没有分布统计时实际选择率即假设值，档位为 0。统计取自计划所用的快照。
+     */
+    private static int[] buckets(Prepared prepared, String[] values) throws DatabaseException {
+        int[] buckets = new int[prepared.parameters.length];
+        for (Predicate p : prepared.parameters) {
+            Attribute a = prepared.snapshot.getAttribute(p.getLeftAttribute().getName());
+            if (!a.hasSynopses()) {
+                continue;
+            }
+            String v = values[p.getParameterIndex()];
+            double assumed, actual;
+            if (p.equalsValue()) {
+                assumed = 1.0 / Math.max(1, a.getValueCount());
+                actual = Estimator.valueSelectivity(a, v);
+            } else {
+                assumed = Estimator.rangeSelectivity(a, p);
+                actual = Estimator.rangeSelectivity(a, p.bind(v));
+            }
+            buckets[p.getParameterIndex()] = (actual <= 0)
+                    ? Integer.MIN_VALUE
+                    : (int) Math.round(Math.log(actual / assumed) / Math.log(4));
+        }
+        return buckets;
+    }
+
+    private static String signature(int[] buckets) {
+        return Arrays.toString(buckets);
+    }
+
+    private static void collectParameters(Operator op, Predicate[] parameters) {
+        if (op instanceof Select) {
+            Predicate p = ((Select) op).getPredicate();
+            if (p.isParameter()) {
+                parameters[p.getParameterIndex()] = p;
+            }
+        }
+        if (op.getInputs() != null) {
+            for (Operator in : op.getInputs()) {
+                collectParameters(in, parameters);
+            }
+        }
+    }
+
+    private static void collectRelations(Operator op, List<String> relations) {
+        if (op instanceof Scan) {
+            relations.add(((Scan) op).getRelation().toString());
+        }
+        if (op.getInputs() != null) {
+            for (Operator in : op.getInputs()) {
+                collectRelations(in, relations);
+            }
+        }
+    }
+
+    /* ─────────────────────────── 复制 ─────────────────────────── */
+
+    /**
+     * 复制算子树，按对象身份替换谓词；物理标注（读取列、连接方式、布隆过滤器）一并复制。
+     */
+    static Operator copy(Operator op, Map<Predicate, Predicate> subst) {
+        if (op instanceof IndexScan) {
+            IndexScan s = (IndexScan) op;
+            return columns(s, new IndexScan((NamedRelation) s.getRelation(), replace(s.getPredicate(), subst)));
+        } else if (op instanceof BitmapScan) {
+            BitmapScan s = (BitmapScan) op;
+            List<Predicate> preds = new ArrayList<>();
+            for (Predicate p : s.getPredicates()) {
+                preds.add(replace(p, subst));
+            }
+            return columns(s, new BitmapScan((NamedRelation) s.getRelation(), preds));
+        } else if (op instanceof Scan) {
+            return columns((Scan) op, new Scan((NamedRelation) ((Scan) op).getRelation()));
+        } else if (op instanceof Select) {
+            Select s = (Select) op;
+            return new Select(copy(s.getInput(), subst), replace(s.getPredicate(), subst));
+        } else if (op instanceof Project) {
+            Project p = (Project) op;
+            return new Project(copy(p.getInput(), subst), p.getAttributes());
+        } else if (op instanceof Join) {
+            Join j = (Join) op;
+            Join c = new Join(copy(j.getLeft(), subst), copy(j.getRight(), subst), replace(j.getPredicate(), subst));
+            c.setMethod(j.getMethod());
+            c.setBloomFilter(j.hasBloomFilter());
+            return c;
+        } else if (op instanceof Product) {
+            Product p = (Product) op;
+            return new Product(copy(p.getLeft(), subst), copy(p.getRight(), subst));
+        }
+        throw new IllegalArgumentException("Unknown operator: " + op);
+    }
+
+    private static Scan columns(Scan from, Scan to) {
+        to.setColumns(from.getColumns());
+        return to;
+    }
+
+    private static Predicate replace(Predicate p, Map<Predicate, Predicate> subst) {
+        Predicate r = subst.get(p);
+        return (r == null) ? p : r;
+    }
+}
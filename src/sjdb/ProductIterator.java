@@ -0,0 +1,53 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 笛卡尔积：open 时物化右侧输入，然后对左侧每条元组依次拼接右侧所有元组。
+ */
+public class ProductIterator implements TupleIterator {
+    private final TupleIterator left;
+    private final TupleIterator right;
+    private final List<Attribute> schema;
+    private List<String[]> rightRows;
+    private String[] current;
+    private int pos;
+
+    public ProductIterator(TupleIterator left, TupleIterator right) {
+        this.left = left;
+        this.right = right;
+        this.schema = new ArrayList<Attribute>(left.getSchema());
+        this.schema.addAll(right.getSchema());
+    }
+
+    public void open() {
+        rightRows = Executor.materialise(right);
+        left.open();
+        current = null;
+    }
+
+    public String[] next() {
+        while (true) {
+            if (current == null || pos == rightRows.size()) {
+                current = left.next();
+                pos = 0;
+                if (current == null) {
+                    return null;
+                }
+            }
+            if (pos < rightRows.size()) {
+                return Executor.concat(current, rightRows.get(pos++));
+            }
+        }
+    }
+
+    public void close() {
+        left.close();
+        rightRows = null;
+    }
+
+    public List<Attribute> getSchema() {
+        return schema;
+    }
+}
@@ -0,0 +1,45 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 按投影列表重新排列/裁剪子算子输出的列（不去重，与 Estimator 的行数假设一致）。
+ */
+public class ProjectIterator implements TupleIterator {
+    private final TupleIterator input;
+    private final List<Attribute> attributes;
+    private final int[] columns;
+
+    public ProjectIterator(TupleIterator input, List<Attribute> attributes) {
+        this.input = input;
+        this.attributes = attributes;
+        this.columns = new int[attributes.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Executor.columnIndex(input.getSchema(), attributes.get(i));
+        }
+    }
+
+    public void open() {
+        input.open();
+    }
+
+    public String[] next() {
+        String[] t = input.next();
+        if (t == null) {
+            return null;
+        }
+        String[] out = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            out[i] = t[columns[i]];
+        }
+        return out;
+    }
+
+    public void close() {
+        input.close();
+    }
+
+    public List<Attribute> getSchema() {
+        return attributes;
+    }
+}
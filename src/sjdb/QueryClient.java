@@ -0,0 +1,40 @@
+package sjdb;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link QueryServer} 的命令行客户端：从 stdin 读一条查询发给服务端，把响应逐帧写到 stdout。
+ * 结果中途出错时已写出的部分保留，错误信息写到 stderr，退出码为 1。
+ *
+ * 用法：java sjdb.QueryClient [[host:]port | unix:&lt;path&gt;] [-explain | -stats] &lt; q1.txt
+ */
+public class QueryClient {
+
+    public static void main(String[] args) throws Exception {
+        String address = (args.length > 0 && !args[0].startsWith("-"))
+                ? args[0] : Integer.toString(QueryServer.DEFAULT_PORT);
+        String mode = args.length > 0 ? args[args.length - 1] : "";
+        String request;
+        if (mode.equals("-stats")) {
+            request = "STATS";
+        } else {
+            InputStream in = System.in;
+            request = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (mode.equals("-explain")) {
+                request = "EXPLAIN\n" + request;
+            }
+        }
+        PrintStream out = System.out;
+        try (SocketChannel ch = QueryServer.connect(QueryServer.parseAddress(address))) {
+            QueryServer.query(ch, request, out);
+        } catch (DatabaseException e) {
+            out.flush();
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        out.flush();
+    }
+}
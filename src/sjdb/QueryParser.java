@@ -17,10 +17,23 @@ import java.util.regex.Matcher;
  * FROM <relation name>,<relation name>,...,<relation name>
  * WHERE <predicate>,<predicate>,...,<predicate>
  * 
- * where <predicate> is of one of the following two forms:
+ * where <predicate> is of one of the following forms:
  * 
  * <attribute name>="<value>"
+ * <attribute name><op>"<value>"     (op is one of <, <=, >, >=)
+ * <attribute name> BETWEEN "<value>" AND "<value>"
  * <attribute name>=<attribute name>
+ * <attribute name><op>?                (op is one of =, <, <=, >, >=)
+ * 
+ * A ? stands for a parameter of a prepared statement; parameters are
+ * numbered from 0 in order of appearance (see PreparedStatement).
+ * 
+ * Relations are looked up in a single CatalogueSnapshot, either given to
+ * the constructor or taken from the catalogue when parse() starts, so a
+ * plan never mixes statistics from different catalogue versions.
+ * 
+ * Values may contain letters, digits, '_', '.' and '-' (so that dates and
+ * amounts such as "2024-01-31" or "99.5" can be written directly).
  * 
  * The WHERE line (corresponding to the select operators) is optional and 
  * may be omitted; the other lines are required.
@@ -38,8 +51,18 @@ import java.util.regex.Matcher;
  * @author nmg
  */
 public class QueryParser {
+	private static final String VALUE = "\"([\\w.\\-]+)\"";
+	private static final Pattern COMPARE_PATTERN =
+			Pattern.compile("(\\w+)\\s*(<=|>=|<|>|=)\\s*" + VALUE);
+	private static final Pattern BETWEEN_PATTERN =
+			Pattern.compile("(\\w+)\\s+BETWEEN\\s+" + VALUE + "\\s+AND\\s+" + VALUE);
+	private static final Pattern PARAMETER_PATTERN =
+			Pattern.compile("(\\w+)\\s*(<=|>=|<|>|=)\\s*\\?");
+
 	private BufferedReader reader;
 	private Catalogue catalogue;
+	private CatalogueSnapshot snapshot;
+	private int parameters;
 
 	/**
 	 * Create a new QueryParser. This class is intended to be used once only;
@@ -54,6 +77,19 @@ public class QueryParser {
 		this.reader = new BufferedReader(input);
 	}
 	
+	/**
+	 * Create a new QueryParser that looks relations up in the given
+	 * catalogue snapshot.
+	 * 
+	 * @param snapshot
+	 * @param input
+	 * @throws Exception
+	 */
+	public QueryParser(CatalogueSnapshot snapshot, Reader input) throws Exception {
+		this.snapshot = snapshot;
+		this.reader = new BufferedReader(input);
+	}
+	
 	/**
 	 * Read a query from the input (via the BufferedReader) and parse it
 	 * to create a canonical query plan.
@@ -67,6 +103,9 @@ public class QueryParser {
 		String productLine = this.reader.readLine();
 		String selectLine = this.reader.readLine();
 		
+		if (this.catalogue != null) {
+			this.snapshot = this.catalogue.snapshot();
+		}
 		product = parseProduct(productLine);
 		if (selectLine != null && selectLine.startsWith("WHERE")) {
 			select = parseSelect(selectLine, product); 
@@ -78,12 +117,20 @@ public class QueryParser {
 		return project;
 	}
 	
+	/**
+	 * Return the number of ? parameters in the parsed query
+	 * @return
+	 */
+	public int getParameterCount() {
+		return this.parameters;
+	}
+	
 	/**
 	 * Parse a "FROM ..." line 
 	 * @param line
 	 * @return
 	 */
-	public Operator parseProduct(String line) {
+	public Operator parseProduct(String line) throws DatabaseException {
 		String[] rels = line.split("FROM\\s+");
 		String[] reln = rels[1].split("\\s*,\\s*");
 		
@@ -96,7 +143,7 @@ public class QueryParser {
 	 * @param names
 	 * @return
 	 */
-	private Operator buildProduct(String[] names) {
+	private Operator buildProduct(String[] names) throws DatabaseException {
 		Operator left = buildScan(names[0].trim());
 		Operator right;
 		Operator accum;
@@ -117,15 +164,10 @@ public class QueryParser {
 	 * name
 	 * @param name
 	 * @return
+	 * @throws DatabaseException if the catalogue has no relation of that name
 	 */
-	private Operator buildScan(String name) {
-		Operator op = null;
-		try {
-			op = new Scan(this.catalogue.getRelation(name));
-		} catch (Exception e) {
-			System.err.println(e.toString());
-		}
-		return op;
+	private Operator buildScan(String name) throws DatabaseException {
+		return new Scan(this.snapshot.getRelation(name));
 	}
 	
 	/**
@@ -154,12 +196,18 @@ public class QueryParser {
 	 * @return
 	 */
 	private Operator buildSelect(String pred, Operator op) {
-		Pattern p = Pattern.compile("(\\w+)=\"(\\w+)\"");
-		Matcher m = p.matcher(pred);
+		Matcher between = BETWEEN_PATTERN.matcher(pred);
+		Matcher m = COMPARE_PATTERN.matcher(pred);
+		Matcher param = PARAMETER_PATTERN.matcher(pred);
 		Predicate ret;
 		
-		if (m.matches()) {
-			ret = new Predicate(new Attribute(m.group(1)), m.group(2));
+		if (param.matches()) {
+			Predicate cmp = buildComparison(new Attribute(param.group(1)), param.group(2), "?");
+			ret = Predicate.parameter(cmp.getLeftAttribute(), cmp.getComparison(), this.parameters++);
+		} else if (between.matches()) {
+			ret = new Predicate(new Attribute(between.group(1)), between.group(2), between.group(3));
+		} else if (m.matches()) {
+			ret = buildComparison(new Attribute(m.group(1)), m.group(2), m.group(3));
 		} else {
 			String[] atts = pred.split("=");
 			ret = new Predicate(new Attribute(atts[0]), new Attribute(atts[1]));
@@ -168,6 +216,23 @@ public class QueryParser {
 		return new Select(op, ret);
 	}
 	
+	/**
+	 * Build an attr OP "value" predicate for the given operator symbol.
+	 * @param attr
+	 * @param op
+	 * @param value
+	 * @return
+	 */
+	private Predicate buildComparison(Attribute attr, String op, String value) {
+		switch (op) {
+			case "<":  return new Predicate(attr, Predicate.Comparison.LT, value);
+			case "<=": return new Predicate(attr, Predicate.Comparison.LE, value);
+			case ">":  return new Predicate(attr, Predicate.Comparison.GT, value);
+			case ">=": return new Predicate(attr, Predicate.Comparison.GE, value);
+			default:   return new Predicate(attr, value);
+		}
+	}
+	
 	/**
 	 * Parse a "SELECT ..." line and build the corresponding project operator.
 	 * @param line
@@ -0,0 +1,368 @@
+package sjdb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 常驻查询服务：启动时载入一次 Catalogue，之后经本地 TCP 或 Unix 域套接字接收查询，
+ * 省去每条查询的 JVM 启动与目录解析。
+ *
+ * 协议按帧收发，一个连接上可连续发送多条请求：
+ * <pre>
+ *   请求：length(4) payload(UTF-8)
+ *   响应：一个或多个帧 status(1) length(4) payload(UTF-8)
+ *         status 2 表示后面还有帧，0 表示成功结束，1 表示出错（payload 为错误信息）
+ * </pre>
+ * 结果按执行进度分帧发出，每帧 payload 不超过 FRAME_BYTES，服务端不在内存中攒下整个响应；
+ * 响应各帧的 payload 依次拼接才是完整的 UTF-8 文本（多字节字符可能跨帧）。
+ * 执行中途出错时，已发出的帧之后跟一个出错帧，客户端应丢弃之前收到的部分结果。
+ * 请求 payload 是 QueryParser 格式的查询文本；以 "EXPLAIN\n" 开头时只返回计划；
+ * 单独的 "STATS" 返回服务统计。成功响应的第一行是优化后的计划，
+ * 数据文件齐全时其后是结果（首行列名，格式同 SJDB）。
+ *
+ * 计划经 {@link PlanCache} 复用；每条查询用独立的 Executor 执行，各连接共享同一个缓冲池。
+ * 每个连接一个线程：运行在提供虚拟线程的 JDK（21+）上时用虚拟线程，否则用缓存线程池。
+ *
+ * 用法：java sjdb.QueryServer &lt;cat.txt | 目录快照&gt; [[host:]port | unix:&lt;path&gt;]
+ */
+public class QueryServer implements Closeable {
+    /** 默认监听端口（仅绑定回环地址） */
+    public static final int DEFAULT_PORT = 7654;
+    /** 请求帧的最大长度 */
+    static final int MAX_REQUEST = 1 << 20;
+    /** 响应帧 payload 的最大长度 */
+    static final int FRAME_BYTES = 64 * 1024;
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+    static final byte MORE = 2;
+
+    private final Catalogue catalogue;
+    private final Path dataDir;
+    private final PlanCache plans;
+    private final BufferPool bufferPool = new BufferPool(BufferPool.configuredPages());
+    private final ExecutorService connections = newConnectionExecutor();
+    private final AtomicLong requests = new AtomicLong();
+    private ServerSocketChannel server;
+    private Path socketFile;
+
+    /**
+     * @param dataDir 关系数据文件所在目录（通常是 cat.txt 所在目录）
+     */
+    public QueryServer(Catalogue catalogue, Path dataDir) {
+        this.catalogue = catalogue;
+        this.dataDir = dataDir;
+        this.plans = new PlanCache(catalogue);
+    }
+
+    /**
+     * 解析监听地址："unix:&lt;路径&gt;" 为 Unix 域套接字；"[host:]port" 为 TCP，host 缺省为回环地址。
+     */
+    public static SocketAddress parseAddress(String spec) {
+        if (spec.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(spec.substring(5));
+        }
+        int colon = spec.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress("127.0.0.1", Integer.parseInt(spec));
+        }
+        return new InetSocketAddress(spec.substring(0, colon), Integer.parseInt(spec.substring(colon + 1)));
+    }
+
+    /**
+     * 绑定监听地址。Unix 域套接字文件已存在时先删除（上次未正常退出留下的）。
+     */
+    public void bind(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            socketFile = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(socketFile);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+    }
+
+    /**
+     * @return 实际监听的地址（TCP 端口传 0 时可由此得到分配的端口）
+     */
+    public SocketAddress getAddress() throws IOException {
+        return server.getLocalAddress();
+    }
+
+    /**
+     * 接受连接直到 close；每个连接交给一个线程处理。
+     */
+    public void serve() throws IOException {
+        while (true) {
+            SocketChannel ch;
+            try {
+                ch = server.accept();
+            } catch (AsynchronousCloseException e) {
+                return;
+            }
+            connections.execute(() -> handle(ch));
+        }
+    }
+
+    public void close() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        connections.shutdown();
+        try {
+            connections.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (socketFile != null) {
+            Files.deleteIfExists(socketFile);
+        }
+    }
+
+    /**
+     * 依次处理一个连接上的请求，直到对端关闭。
+     */
+    private void handle(SocketChannel ch) {
+        try (SocketChannel c = ch;
+             DataInputStream in = new DataInputStream(Channels.newInputStream(c));
+             DataOutputStream out = new DataOutputStream(Channels.newOutputStream(c))) {
+            while (true) {
+                String request;
+                try {
+                    request = readRequest(in);
+                } catch (EOFException e) {
+                    return;
+                }
+                ResponseStream response = new ResponseStream(out);
+                try {
+                    respond(request, response);
+                    response.finish();
+                } catch (Exception e) {
+                    if (response.failed != null) {
+                        // 写响应时连接断开
+                        throw response.failed;
+                    }
+                    byte[] message = e.toString().getBytes(StandardCharsets.UTF_8);
+                    writeFrame(out, ERROR, message, message.length);
+                }
+            }
+        } catch (IOException e) {
+            // 连接异常断开：只影响这一个连接
+            System.err.println("connection closed: " + e);
+        }
+    }
+
+    /**
+     * 处理一条请求，把响应 payload 写到 out（写满一帧即发出）。
+     */
+    void respond(String request, OutputStream out) throws Exception {
+        requests.incrementAndGet();
+        PrintStream ps = new PrintStream(out, false, StandardCharsets.UTF_8);
+        if (request.trim().equals("STATS")) {
+            ps.print(requests.get() + " requests\n" + plans + "\n" + bufferPool);
+            ps.flush();
+            return;
+        }
+        boolean explain = request.startsWith("EXPLAIN\n");
+        Operator plan = plans.plan(explain ? request.substring(8) : request);
+        ps.println(plan);
+        Executor exec = new Executor(dataDir, Runtime.getRuntime().maxMemory() / 4,
+                Paths.get(System.getProperty("java.io.tmpdir")), bufferPool);
+        if (!explain && exec.hasData(plan)) {
+            exec.run(plan, ps);
+        }
+        ps.flush();
+    }
+
+    /**
+     * 一条响应的输出：攒满 FRAME_BYTES 就作为 MORE 帧发出，finish 时把余下部分作为 OK 帧发出。
+     * 连接写失败时抛出 UncheckedIOException（PrintStream 会吞掉 IOException），让执行尽快停止。
+     */
+    private static final class ResponseStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buf = new byte[FRAME_BYTES];
+        private int size;
+        /** 写连接失败时的异常 */
+        IOException failed;
+
+        ResponseStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        public void write(int b) {
+            if (size == buf.length) {
+                send(MORE);
+            }
+            buf[size++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (size == buf.length) {
+                    send(MORE);
+                }
+                int n = Math.min(len, buf.length - size);
+                System.arraycopy(b, off, buf, size, n);
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        void finish() {
+            send(OK);
+        }
+
+        private void send(byte status) {
+            try {
+                writeFrame(out, status, buf, size);
+                size = 0;
+            } catch (IOException e) {
+                failed = e;
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /* ─────────────────────────── 帧 ─────────────────────────── */
+
+    static String readRequest(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > MAX_REQUEST) {
+            throw new IOException("Bad request length " + len);
+        }
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    static void writeRequest(DataOutputStream out, String request) throws IOException {
+        byte[] b = request.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+        out.flush();
+    }
+
+    /**
+     * 写一个响应帧，payload 为 b 的前 length 个字节。
+     */
+    static void writeFrame(DataOutputStream out, byte status, byte[] b, int length) throws IOException {
+        out.writeByte(status);
+        out.writeInt(length);
+        out.write(b, 0, length);
+        out.flush();
+    }
+
+    /**
+     * 读一条响应的全部帧，把成功帧的 payload 依次写到 out。
+     *
+     * @throws DatabaseException 服务端返回错误时，消息为服务端的错误信息（此前写到 out 的部分结果应丢弃）
+     */
+    static void readResponse(DataInputStream in, OutputStream out) throws IOException, DatabaseException {
+        while (true) {
+            byte status = in.readByte();
+            int len = in.readInt();
+            if (len < 0 || len > MAX_REQUEST) {
+                throw new IOException("Bad response length " + len);
+            }
+            byte[] b = new byte[len];
+            in.readFully(b);
+            if (status == ERROR) {
+                throw new DatabaseException(new String(b, StandardCharsets.UTF_8));
+            }
+            out.write(b);
+            if (status == OK) {
+                return;
+            }
+            if (status != MORE) {
+                throw new IOException("Bad response status " + status);
+            }
+        }
+    }
+
+    /**
+     * 发送一条请求，响应逐帧写到 out（客户端用）。
+     */
+    public static void query(SocketChannel ch, String request, OutputStream out)
+            throws IOException, DatabaseException {
+        writeRequest(new DataOutputStream(Channels.newOutputStream(ch)), request);
+        readResponse(new DataInputStream(Channels.newInputStream(ch)), out);
+    }
+
+    /**
+     * 发送一条请求并等待完整响应（客户端用）。
+     */
+    public static String query(SocketChannel ch, String request) throws IOException, DatabaseException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        query(ch, request, buf);
+        return buf.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 连接到服务地址（TCP 或 Unix 域套接字）。
+     */
+    public static SocketChannel connect(SocketAddress address) throws IOException {
+        SocketChannel ch = (address instanceof UnixDomainSocketAddress)
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        ch.connect(address);
+        return ch;
+    }
+
+    /**
+     * 每连接一线程的执行器：JDK 提供 Executors.newVirtualThreadPerTaskExecutor（21+）时用虚拟线程，
+     * 否则退回缓存线程池（守护线程，不阻止 JVM 退出）。
+     */
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "sjdb-connection");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Catalogue cat = CatalogueImage.open(args[0]);
+        Path dataDir = Paths.get(args[0]).toAbsolutePath().getParent();
+        SocketAddress address = parseAddress(args.length > 1 ? args[1] : Integer.toString(DEFAULT_PORT));
+
+        QueryServer server = new QueryServer(cat, dataDir);
+        server.bind(address);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }));
+        System.err.println("serving " + args[0] + " on " + server.getAddress());
+        server.serve();
+    }
+}
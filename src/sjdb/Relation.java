@@ -12,12 +12,12 @@ import java.util.ArrayList;
  */
 public class Relation {
 	private List<Attribute> attributes;
-	private int size;
+	private long size;
 
 	/**
 	 * Create a new relation with the given tuple count
 	 */
-	protected Relation(int size) {
+	protected Relation(long size) {
 		this.attributes = new ArrayList<Attribute>();
 		this.size = size;
 	}
@@ -56,7 +56,7 @@ public class Relation {
 			// If the attribute has more distinct values than there are tuples
 			// in this relation, limit the distinct values to the number of
 			// tuples
-			this.attributes.add(new Attribute(attribute.getName(), this.size));
+			this.attributes.add(new Attribute(attribute, this.size));
 		} else {
 			this.attributes.add(attribute);	
 		}
@@ -67,7 +67,7 @@ public class Relation {
 	 * 
 	 * @return the tuples
 	 */
-	public int getTupleCount() {
+	public long getTupleCount() {
 		return size;
 	}
 	
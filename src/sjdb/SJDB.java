@@ -3,6 +3,9 @@
  */
 package sjdb;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author nmg
@@ -14,23 +17,65 @@ public class SJDB {
 	 * @param args
 	 */
 	public static void main(String[] args) throws Exception {
-		// read serialised catalogue from file and parse
+		// read serialised catalogue from file and parse (a binary catalogue
+		// image, see CatalogueImage, is mapped and read on demand instead)
 		String catFile = args[0];
-		Catalogue cat = new Catalogue();
-		CatalogueParser catParser = new CatalogueParser(catFile, cat);
-		catParser.parse();
+		Catalogue cat = CatalogueImage.open(catFile);
 		
 		// read stdin, parse, and build canonical query plan
 		QueryParser queryParser = new QueryParser(cat, new InputStreamReader(System.in));
 		Operator plan = queryParser.parse();
 				
 		// create estimator visitor and apply it to canonical plan
-		//Estimator est = new Estimator();
-		//plan.accept(est);
+		Estimator est = new Estimator();
+		plan.accept(est);
 		
 		// create optimised plan
-		//Optimiser opt = new Optimiser(cat);
-		//Operator optPlan = opt.optimise(plan);
+		Optimiser opt = new Optimiser(cat);
+		Operator optPlan = opt.optimise(plan);
+		optPlan.accept(est);
+		
+		// execute the optimised plan if the relation data files (<relation>.csv)
+		// sit next to the catalogue; otherwise just print the plan. Passing
+		// -batch as the second argument selects the vectorised executor,
+		// -parallel the morsel-driven parallel executor.
+		Path dataDir = Paths.get(catFile).toAbsolutePath().getParent();
+		boolean batch = args.length > 1 && args[1].equals("-batch");
+		boolean parallel = args.length > 1 && args[1].equals("-parallel");
+		Executor exec = new Executor(dataDir);
+		if (exec.hasData(optPlan)) {
+			long start = System.nanoTime();
+			ParallelExecutor pexec = null;
+			long rows;
+			if (batch) {
+				rows = new BatchExecutor(dataDir).run(optPlan, System.out);
+			} else if (parallel) {
+				pexec = new ParallelExecutor(dataDir, ForkJoinPool.commonPool(),
+						ParallelExecutor.DEFAULT_MORSEL_ROWS, exec.getBufferPool());
+				rows = pexec.run(optPlan, System.out);
+			} else {
+				rows = exec.run(optPlan, System.out);
+			}
+			System.out.flush();
+			System.err.println(rows + " rows (estimated " + optPlan.getOutput().getTupleCount()
+					+ ") in " + (System.nanoTime() - start) / 1000000.0 + " ms");
+			BufferPool pool = exec.getBufferPool();
+			if (!batch && pool.getHits() + pool.getMisses() > 0) {
+				System.err.println(pool);
+			}
+			if (pexec != null) {
+				for (String line : pexec.getPipelineReport()) {
+					System.err.println(line);
+				}
+			}
+			if (!batch) {
+				for (BloomFilterIterator f : exec.getSidewaysFilters()) {
+					System.err.println(f);
+				}
+			}
+		} else {
+			System.out.println(optPlan);
+		}
 	}
 
 }
@@ -14,6 +14,11 @@ public class Scan extends Operator {
 	 */
 	private NamedRelation relation;
 	
+	/**
+	 * The attributes the executor needs to read; null means all of them
+	 */
+	private List<Attribute> columns;
+	
 	/**
 	 * Create a new scan of a given named relation
 	 * @param relation Named relation to be scanned
@@ -47,6 +52,23 @@ public class Scan extends Operator {
 		return this.relation;
 	}
 	
+	/**
+	 * Return the attributes the executor needs to read from storage
+	 * @return Needed attributes in relation order, or null for all attributes
+	 */
+	public List<Attribute> getColumns() {
+		return this.columns;
+	}
+	
+	/**
+	 * Restrict the attributes read from storage; set by the optimiser from
+	 * the columns each relation actually needs
+	 * @param columns Needed attributes in relation order, or null for all
+	 */
+	public void setColumns(List<Attribute> columns) {
+		this.columns = columns;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
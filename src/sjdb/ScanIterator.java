@@ -0,0 +1,77 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 流式读取一个关系的 CSV 数据文件（&lt;数据目录&gt;/&lt;关系名&gt;.csv）。
+ * 文件无表头，每行一条元组，列顺序与目录中的属性顺序相同。
+ */
+public class ScanIterator implements TupleIterator {
+    private final NamedRelation relation;
+    private final Path file;
+    private final int width;
+    private BufferedReader reader;
+
+    public ScanIterator(NamedRelation relation, Path dataDir) {
+        this.relation = relation;
+        this.file = dataFile(dataDir, relation);
+        this.width = relation.getAttributes().size();
+    }
+
+    /**
+     * @return 关系对应的数据文件路径
+     */
+    public static Path dataFile(Path dataDir, Relation relation) {
+        return dataDir.resolve(relation.toString() + ".csv");
+    }
+
+    public void open() {
+        try {
+            reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open data file for " + relation, e);
+        }
+    }
+
+    public String[] next() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] tuple = line.split(",", -1);
+                if (tuple.length != width) {
+                    throw new IllegalStateException("Row in " + file + " has " + tuple.length
+                            + " fields, expected " + width + ": " + line);
+                }
+                return tuple;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                reader = null;
+            }
+        }
+    }
+
+    public List<Attribute> getSchema() {
+        return relation.getAttributes();
+    }
+}
@@ -0,0 +1,45 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * 逐条过滤子算子的输出，只放行满足谓词的元组。
+ */
+public class SelectIterator implements TupleIterator {
+    private final TupleIterator input;
+    private final Predicate predicate;
+    private final int leftIdx;
+    private final int rightIdx;     // attr=attr 时右列下标，否则为 -1
+
+    public SelectIterator(TupleIterator input, Predicate predicate) {
+        this.input = input;
+        this.predicate = predicate;
+        this.leftIdx = Executor.columnIndex(input.getSchema(), predicate.getLeftAttribute());
+        this.rightIdx = predicate.comparesValue()
+                ? -1
+                : Executor.columnIndex(input.getSchema(), predicate.getRightAttribute());
+    }
+
+    public void open() {
+        input.open();
+    }
+
+    public String[] next() {
+        String[] t;
+        while ((t = input.next()) != null) {
+            String other = (rightIdx < 0) ? null : t[rightIdx];
+            if (predicate.test(t[leftIdx], other)) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    public void close() {
+        input.close();
+    }
+
+    public List<Attribute> getSchema() {
+        return input.getSchema();
+    }
+}
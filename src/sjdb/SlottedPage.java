@@ -0,0 +1,97 @@
+package sjdb;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 定长分槽页（slotted page）的布局与读写，全部是作用在页缓冲上的静态方法。
+ *
+ * <pre>
+ *   [slotCount(4)][freeEnd(4)][slot 0][slot 1]...  →  空闲  ←  ...[record 1][record 0]
+ *   slot:   offset(2) length(2)
+ *   record: 每个字段 length(2) + UTF-8 字节
+ * </pre>
+ * 槽目录从页头向后增长，记录从页尾向前增长，两者相遇即页满。
+ */
+public final class SlottedPage {
+    public static final int PAGE_SIZE = 8192;
+    private static final int HEADER = 8;
+    private static final int SLOT = 4;
+
+    private SlottedPage() {
+    }
+
+    /**
+     * 把缓冲初始化为空页。
+     */
+    static void init(ByteBuffer page) {
+        page.putInt(0, 0);
+        page.putInt(4, PAGE_SIZE);
+    }
+
+    static int slotCount(ByteBuffer page) {
+        return page.getInt(0);
+    }
+
+    /**
+     * 把一条元组编码为记录。
+     */
+    static byte[] encode(String[] tuple) {
+        byte[][] fields = new byte[tuple.length][];
+        int len = 0;
+        for (int i = 0; i < tuple.length; i++) {
+            fields[i] = tuple[i].getBytes(StandardCharsets.UTF_8);
+            if (fields[i].length > 0xFFFF) {
+                throw new IllegalArgumentException("Field too long for a page: " + fields[i].length + " bytes");
+            }
+            len += 2 + fields[i].length;
+        }
+        if (len > PAGE_SIZE - HEADER - SLOT) {
+            throw new IllegalArgumentException("Record of " + len + " bytes does not fit in a "
+                    + PAGE_SIZE + "-byte page");
+        }
+        ByteBuffer b = ByteBuffer.allocate(len);
+        for (byte[] f : fields) {
+            b.putShort((short) f.length);
+            b.put(f);
+        }
+        return b.array();
+    }
+
+    /**
+     * 尝试把记录写入页中。
+     *
+     * @return 槽号；页内空间不足时返回 -1
+     */
+    static int insert(ByteBuffer page, byte[] record) {
+        int slots = slotCount(page);
+        int freeEnd = page.getInt(4);
+        int freeStart = HEADER + (slots + 1) * SLOT;
+        if (freeEnd - record.length < freeStart) {
+            return -1;
+        }
+        int at = freeEnd - record.length;
+        page.put(at, record);
+        page.putShort(HEADER + slots * SLOT, (short) at);
+        page.putShort(HEADER + slots * SLOT + 2, (short) record.length);
+        page.putInt(0, slots + 1);
+        page.putInt(4, at);
+        return slots;
+    }
+
+    /**
+     * 读出第 slot 条记录并解码为元组。
+     */
+    static String[] read(ByteBuffer page, int slot, int width) {
+        int at = page.getShort(HEADER + slot * SLOT) & 0xFFFF;
+        String[] t = new String[width];
+        for (int i = 0; i < width; i++) {
+            int len = page.getShort(at) & 0xFFFF;
+            byte[] b = new byte[len];
+            page.get(at + 2, b);
+            t[i] = new String(b, StandardCharsets.UTF_8);
+            at += 2 + len;
+        }
+        return t;
+    }
+}
@@ -0,0 +1,87 @@
+package sjdb;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 排序归并等值连接：两侧先按连接键做外部排序（ExternalSortIterator），再同步推进归并。
+ * 键相等时缓存右侧同键的一组元组，与左侧同键的每条元组逐一拼接。
+ * 适合两侧都很大且规模相近、哈希表放不进内存的情况；输出按连接键有序。
+ */
+public class SortMergeJoinIterator implements TupleIterator {
+    private final TupleIterator left;
+    private final TupleIterator right;
+    private final int leftKey;
+    private final int rightKey;
+    private final List<Attribute> schema;
+
+    private String[] l;
+    private String[] r;
+    private List<String[]> group = new ArrayList<>();
+    private String groupKey;
+    private int groupPos;
+
+    public SortMergeJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate,
+                                 long budget, Path tmpDir) {
+        int[] cols = Executor.joinColumns(left.getSchema(), right.getSchema(), predicate);
+        this.leftKey = cols[0];
+        this.rightKey = cols[1];
+        // 每侧排序各用一半预算
+        this.left = new ExternalSortIterator(left, leftKey, budget / 2, tmpDir);
+        this.right = new ExternalSortIterator(right, rightKey, budget / 2, tmpDir);
+        this.schema = new ArrayList<Attribute>(left.getSchema());
+        this.schema.addAll(right.getSchema());
+    }
+
+    public void open() {
+        left.open();
+        right.open();
+        l = left.next();
+        r = right.next();
+        group.clear();
+        groupKey = null;
+        groupPos = 0;
+    }
+
+    public String[] next() {
+        while (l != null) {
+            // 当前左元组与缓存的右侧同键组拼接
+            if (groupKey != null && l[leftKey].equals(groupKey)) {
+                if (groupPos < group.size()) {
+                    return Executor.concat(l, group.get(groupPos++));
+                }
+                l = left.next();
+                groupPos = 0;
+                continue;
+            }
+            // 推进到两侧键相等
+            while (r != null && r[rightKey].compareTo(l[leftKey]) < 0) {
+                r = right.next();
+            }
+            if (r == null || r[rightKey].compareTo(l[leftKey]) > 0) {
+                l = left.next();
+                continue;
+            }
+            // 收集右侧同键的一组
+            groupKey = r[rightKey];
+            group.clear();
+            groupPos = 0;
+            while (r != null && r[rightKey].equals(groupKey)) {
+                group.add(r);
+                r = right.next();
+            }
+        }
+        return null;
+    }
+
+    public void close() {
+        left.close();
+        right.close();
+        group.clear();
+    }
+
+    public List<Attribute> getSchema() {
+        return schema;
+    }
+}
@@ -0,0 +1,192 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 溢写到磁盘的临时元组文件，通过 FileChannel 顺序读写。
+ *
+ * 每条元组的格式：int 列数，随后每列 int 字节数 + UTF-8 字节。
+ * 写入先进 64KB 缓冲区，满了再整块写出；读取时按需补充缓冲区。
+ */
+public class SpillFile {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private FileChannel out;
+    private ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bytes;
+    private long rows;
+
+    public SpillFile(Path dir) {
+        try {
+            this.path = Files.createTempFile(dir, "sjdb-spill", ".bin");
+            this.out = FileChannel.open(path, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create spill file in " + dir, e);
+        }
+    }
+
+    public void append(String[] tuple) {
+        int need = 4;
+        byte[][] fields = new byte[tuple.length][];
+        for (int i = 0; i < tuple.length; i++) {
+            fields[i] = tuple[i].getBytes(StandardCharsets.UTF_8);
+            need += 4 + fields[i].length;
+        }
+        if (buf.remaining() < need) {
+            flush();
+            if (buf.capacity() < need) {
+                buf = ByteBuffer.allocate(need);
+            }
+        }
+        buf.putInt(tuple.length);
+        for (byte[] f : fields) {
+            buf.putInt(f.length);
+            buf.put(f);
+        }
+        bytes += need;
+        rows++;
+    }
+
+    private void flush() {
+        buf.flip();
+        try {
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buf.clear();
+    }
+
+    /**
+     * 写入结束，刷出缓冲区并关闭写通道。
+     */
+    public void finishWrite() {
+        if (out != null) {
+            flush();
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * @return 已写入的字节数
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return 已写入的元组数
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return 顺序读取该文件的迭代器（调用前须先 finishWrite）
+     */
+    public TupleIterator reader(List<Attribute> schema) {
+        return new Reader(schema);
+    }
+
+    public void delete() {
+        finishWrite();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class Reader implements TupleIterator {
+        private final List<Attribute> schema;
+        private FileChannel in;
+        private ByteBuffer rbuf;
+
+        Reader(List<Attribute> schema) {
+            this.schema = schema;
+        }
+
+        public void open() {
+            try {
+                in = FileChannel.open(path, StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rbuf = ByteBuffer.allocate(BUFFER_SIZE);
+            rbuf.flip();
+        }
+
+        public String[] next() {
+            if (!ensure(4)) {
+                return null;
+            }
+            String[] t = new String[rbuf.getInt()];
+            for (int i = 0; i < t.length; i++) {
+                ensure(4);
+                int len = rbuf.getInt();
+                ensure(len);
+                t[i] = new String(rbuf.array(), rbuf.arrayOffset() + rbuf.position(), len, StandardCharsets.UTF_8);
+                rbuf.position(rbuf.position() + len);
+            }
+            return t;
+        }
+
+        /**
+         * 保证缓冲区里至少有 n 个字节可读；文件已读完时返回 false。
+         */
+        private boolean ensure(int n) {
+            if (rbuf.remaining() >= n) {
+                return true;
+            }
+            if (rbuf.capacity() < n) {
+                ByteBuffer bigger = ByteBuffer.allocate(n);
+                bigger.put(rbuf);
+                bigger.flip();
+                rbuf = bigger;
+            }
+            rbuf.compact();
+            try {
+                while (rbuf.position() < n) {
+                    if (in.read(rbuf) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rbuf.flip();
+            return rbuf.remaining() >= n;
+        }
+
+        public void close() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                in = null;
+            }
+        }
+
+        public List<Attribute> getSchema() {
+            return schema;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package sjdb;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Catalogue 写时复制的并发检查：一个写线程不断以 update() 成组地重建 R、S 两个关系，
+ * 多个规划线程同时解析、估算、优化连接查询，检查每个计划只来自一个目录版本。
+ *
+ * 第 k 组把 R、S 的行数都设为 10k，属性 a、b 的值个数都设为 k，并在 a 上声明索引；
+ * 同一计划中两个关系的行数与值个数必须一致，且属性都在（看到半个组时会缺属性或行数不一致）。
+ *
+ * 用法：java sjdb.TestCatalogueVersions [写入组数] [规划线程数]
+ */
+public class TestCatalogueVersions {
+    private static final String QUERY = "SELECT *\nFROM R,S\nWHERE a=b\n";
+
+    public static void main(String[] args) throws Exception {
+        int groups = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int planners = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        Catalogue cat = new Catalogue();
+        define(cat, 1);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong plans = new AtomicLong();
+        List<String> failures = new ArrayList<>();
+
+        Thread writer = new Thread(() -> {
+            for (int k = 2; k <= groups; k++) {
+                define(cat, k);
+            }
+            done.set(true);
+        });
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < planners; i++) {
+            threads.add(new Thread(() -> {
+                while (!done.get()) {
+                    String problem;
+                    try {
+                        problem = check(plan(cat));
+                    } catch (Exception e) {
+                        problem = e.toString();
+                    }
+                    plans.incrementAndGet();
+                    if (problem != null) {
+                        synchronized (failures) {
+                            failures.add(problem);
+                        }
+                    }
+                }
+            }));
+        }
+        writer.start();
+        for (Thread t : threads) {
+            t.start();
+        }
+        writer.join();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        System.out.println(groups + " versions written, " + plans.get() + " plans checked, "
+                + failures.size() + " mixed");
+        for (int i = 0; i < Math.min(10, failures.size()); i++) {
+            System.out.println("  " + failures.get(i));
+        }
+        // 最后发布的版本对所有新的读取可见
+        NamedRelation r = cat.getRelation("R");
+        if (r.getTupleCount() != 10L * groups || !r.getIndexes().contains("a")) {
+            System.out.println("latest version not visible: " + r.render() + " " + r.getIndexes());
+            failures.add("latest");
+        }
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 以一组修改发布第 k 个版本的 R、S。
+     */
+    private static void define(Catalogue cat, int k) {
+        cat.update(() -> {
+            cat.createRelation("R", 10L * k);
+            cat.createAttribute("R", "a", k);
+            cat.createIndex("R", "a");
+            cat.createRelation("S", 10L * k);
+            cat.createAttribute("S", "b", k);
+        });
+    }
+
+    private static Operator plan(Catalogue cat) throws Exception {
+        // 解析时取一次快照，计划中的关系都来自这一快照
+        Operator plan = new QueryParser(cat, new StringReader(QUERY)).parse();
+        Estimator est = new Estimator();
+        plan.accept(est);
+        Operator optPlan = new Optimiser(cat).optimise(plan);
+        optPlan.accept(est);
+        return optPlan;
+    }
+
+    /**
+     * @return 计划混用了不同版本时的说明；否则为 null
+     */
+    private static String check(Operator plan) {
+        List<NamedRelation> scanned = new ArrayList<>();
+        collect(plan, scanned);
+        if (scanned.size() != 2) {
+            return "expected 2 scans in " + plan;
+        }
+        long rows = scanned.get(0).getTupleCount();
+        for (NamedRelation rel : scanned) {
+            if (rel.getAttributes().size() != 1) {
+                return "incomplete relation " + rel.render();
+            }
+            long values = rel.getAttributes().get(0).getValueCount();
+            if (rel.getTupleCount() != rows || values * 10 != rows) {
+                return "mixed versions: " + scanned.get(0).render() + " / " + scanned.get(1).render();
+            }
+            if (rel.toString().equals("R") && !rel.getIndexes().contains("a")) {
+                return "index missing: " + rel.render();
+            }
+        }
+        return null;
+    }
+
+    private static void collect(Operator op, List<NamedRelation> scanned) {
+        if (op instanceof Scan) {
+            scanned.add((NamedRelation) ((Scan) op).getRelation());
+            return;
+        }
+        for (Operator in : op.getInputs()) {
+            collect(in, scanned);
+        }
+    }
+}
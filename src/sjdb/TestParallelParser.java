@@ -0,0 +1,143 @@
+package sjdb;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 对照 ParallelCatalogueParser 与 CatalogueParser：同一份目录用很小的块大小并行解析，
+ * 关系、属性统计、分布摘要、索引声明以及属性目录中的条目都应与逐行解析的结果相同。
+ *
+ * 用法：java sjdb.TestParallelParser [cat.txt ...]（缺省为 data/cat.txt，另附一份自带的样例目录）
+ */
+public class TestParallelParser {
+    /** 块大小：小到几乎每行一块，也有跨多行的块 */
+    private static final int[] CHUNK_BYTES = {1, 7, 64, 4096};
+
+    public static void main(String[] args) throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (String a : args) {
+            files.add(Paths.get(a));
+        }
+        if (files.isEmpty()) {
+            files.add(Paths.get("data", "cat.txt"));
+        }
+        // 自带样例：分布摘要、两种索引以及同名关系（以靠后的为准）。
+        // 不含空行：CatalogueParser 遇到空行即停止，而并行解析跳过空行，两者在这一点上本就不同
+        Path sample = Files.createTempFile("sjdb-cat", ".txt");
+        Files.write(sample, sampleCatalogue());
+        files.add(sample);
+
+        int failures = 0;
+        try {
+            for (Path file : files) {
+                String expected = describe(sequential(file));
+                for (int chunkBytes : CHUNK_BYTES) {
+                    Catalogue cat = new Catalogue();
+                    ParallelCatalogueParser parser = new ParallelCatalogueParser(file, cat,
+                            ForkJoinPool.commonPool(), chunkBytes);
+                    parser.parse();
+                    String actual = describe(cat);
+                    boolean same = expected.equals(actual);
+                    System.out.println((same ? "OK       " : "MISMATCH ") + file + " chunkBytes=" + chunkBytes
+                            + " (" + parser.getChunkCount() + " chunks)");
+                    if (!same) {
+                        System.out.println(firstDifference(expected, actual));
+                        failures++;
+                    }
+                }
+            }
+            failures += checkMalformed();
+        } finally {
+            Files.deleteIfExists(sample);
+        }
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 逐行解析；不存在的文件不会被 CatalogueParser 报告，先检查。
+     */
+    private static Catalogue sequential(Path file) throws IOException {
+        if (!Files.isReadable(file)) {
+            throw new FileNotFoundException(file.toString());
+        }
+        Catalogue cat = new Catalogue();
+        new CatalogueParser(file.toString(), cat).parse();
+        return cat;
+    }
+
+    /**
+     * 格式错误的目录：并行解析抛出 IllegalArgumentException。
+     */
+    private static int checkMalformed() throws IOException {
+        Path bad = Files.createTempFile("sjdb-cat", ".txt");
+        try {
+            Files.write(bad, List.of("A:10:a1,10", "B:ten:b1,5"));
+            new ParallelCatalogueParser(bad, new Catalogue(), ForkJoinPool.commonPool(), 1).parse();
+            System.out.println("MISMATCH malformed catalogue was accepted");
+            return 1;
+        } catch (IllegalArgumentException e) {
+            System.out.println("OK       malformed catalogue: " + e.getMessage());
+            return 0;
+        } finally {
+            Files.deleteIfExists(bad);
+        }
+    }
+
+    private static List<String> sampleCatalogue() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Person:400:persid,400,index:persname,400:age,47,mcv=30/0.1;41/0.05,hist=18;30;45;65");
+        lines.add("Project:40:projid,40:projname,40:dept,5,bitmap");
+        lines.add("Department:5:deptid,5,index,bitmap:deptname,5:manager,5");
+        for (int i = 0; i < 50; i++) {
+            lines.add("R" + i + ":" + (100 + i) + ":r" + i + "a," + (10 + i) + ":r" + i + "b," + (200 + i));
+        }
+        // 同名关系再次出现：两种解析都以这一行为准
+        lines.add("Project:80:projid,80:projname,80:dept,6");
+        return lines;
+    }
+
+    private static String firstDifference(String expected, String actual) {
+        String[] e = expected.split("\n");
+        String[] a = actual.split("\n");
+        for (int i = 0; i < Math.max(e.length, a.length); i++) {
+            String el = (i < e.length) ? e[i] : "<none>";
+            String al = (i < a.length) ? a[i] : "<none>";
+            if (!el.equals(al)) {
+                return "  expected: " + el + "\n  actual:   " + al;
+            }
+        }
+        return "";
+    }
+
+    /**
+     * 目录内容的文本描述：各关系（按名字）及其属性，以及属性目录中同名条目的值个数。
+     */
+    private static String describe(Catalogue cat) throws DatabaseException {
+        StringBuilder sb = new StringBuilder();
+        for (NamedRelation rel : cat.getRelations()) {
+            sb.append(rel).append(':').append(rel.getTupleCount());
+            sb.append(" index=").append(rel.getIndexes()).append(" bitmap=").append(rel.getBitmapIndexes());
+            sb.append('\n');
+            for (Attribute a : rel.getAttributes()) {
+                sb.append("  ").append(a.render());
+                if (a.getMostCommonValues() != null) {
+                    sb.append(" mcv=").append(a.getMostCommonValues().render());
+                }
+                if (a.getHistogram() != null) {
+                    sb.append(" hist=").append(a.getHistogram().render());
+                }
+                sb.append(" directory=").append(cat.getAttribute(a.getName()).getValueCount());
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * Volcano 风格的物理算子接口：open / next / close。
+ * 元组用 String[] 表示，列顺序与 getSchema() 一致。
+ */
+public interface TupleIterator {
+    /**
+     * 准备好产出第一条元组（打开文件、物化右侧输入等）。
+     */
+    public void open();
+
+    /**
+     * @return 下一条元组；没有更多元组时返回 null
+     */
+    public String[] next();
+
+    /**
+     * 释放资源。close 之后可以再次 open。
+     */
+    public void close();
+
+    /**
+     * @return 输出元组的列
+     */
+    public List<Attribute> getSchema();
+}
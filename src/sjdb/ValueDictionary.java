@@ -0,0 +1,44 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字符串值的字典编码：同一次执行内所有字符串列共用一个字典，
+ * 因此两个字符串列上的等值比较/连接可以直接比较编码。
+ */
+public class ValueDictionary {
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * @return value 的编码，不存在时新分配一个
+     */
+    public synchronized int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    /**
+     * @return value 的编码；字典中没有该值时返回 -1（不分配新编码）
+     */
+    public synchronized int lookup(String value) {
+        Integer code = codes.get(value);
+        return (code == null) ? -1 : code;
+    }
+
+    public synchronized String decode(long code) {
+        return values.get((int) code);
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,190 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 批量优化模式：把一个目录下的全部查询文件（*.txt）分给线程池并行解析、优化，
+ * 报告吞吐（查询/秒）与单条优化延迟的 p50 / p99。
+ *
+ * 所有线程共享同一个 Catalogue 和同一个 Optimiser（每线程独立的 Estimator，见 Optimiser），
+ * 每条查询的计划树由各自的线程新建，互不共享。每条查询解析时取目录的一个快照，
+ * 优化期间目录被更新也不影响它看到的统计。
+ *
+ * 用法：java sjdb.WorkloadOptimiser &lt;cat.txt | 目录快照&gt; &lt;查询目录&gt; [线程数] [-v]
+ * （-v 时逐条打印优化后的计划）
+ */
+public class WorkloadOptimiser {
+
+    private final Optimiser optimiser;
+    private final Catalogue catalogue;
+    private final int threads;
+
+    /** 一条查询的优化结果 */
+    public static final class Result {
+        public final Path file;
+        public final Operator plan;
+        public final Exception error;
+        /** 优化耗时（不含读文件与解析），纳秒 */
+        public final long optimiseNanos;
+
+        Result(Path file, Operator plan, Exception error, long optimiseNanos) {
+            this.file = file;
+            this.plan = plan;
+            this.error = error;
+            this.optimiseNanos = optimiseNanos;
+        }
+    }
+
+    /** 一批查询的汇总 */
+    public static final class Report {
+        public final List<Result> results;
+        public final long wallNanos;
+        public final int threads;
+
+        Report(List<Result> results, long wallNanos, int threads) {
+            this.results = results;
+            this.wallNanos = wallNanos;
+            this.threads = threads;
+        }
+
+        public int getFailures() {
+            int n = 0;
+            for (Result r : results) {
+                if (r.error != null) {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * @return 每秒完成的查询数（含读文件、解析与优化）
+         */
+        public double getThroughput() {
+            return (wallNanos == 0) ? 0.0 : results.size() * 1e9 / wallNanos;
+        }
+
+        /**
+         * 成功优化的查询中优化耗时的百分位（最近秩法）。
+         *
+         * @param p 百分位，0 &lt; p &lt;= 100
+         * @return 纳秒；没有成功的查询时为 0
+         */
+        public long getLatencyPercentile(double p) {
+            long[] lat = new long[results.size()];
+            int n = 0;
+            for (Result r : results) {
+                if (r.error == null) {
+                    lat[n++] = r.optimiseNanos;
+                }
+            }
+            if (n == 0) {
+                return 0;
+            }
+            Arrays.sort(lat, 0, n);
+            int rank = (int) Math.ceil(p / 100.0 * n);
+            return lat[Math.max(0, Math.min(n, rank) - 1)];
+        }
+
+        public String toString() {
+            return String.format("optimised %d queries (%d failed) on %d threads in %.1f ms: %.1f queries/sec%n"
+                            + "optimisation latency p50 %.3f ms, p99 %.3f ms",
+                    results.size(), getFailures(), threads, wallNanos / 1e6, getThroughput(),
+                    getLatencyPercentile(50) / 1e6, getLatencyPercentile(99) / 1e6);
+        }
+    }
+
+    public WorkloadOptimiser(Catalogue catalogue, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        this.catalogue = catalogue;
+        this.optimiser = new Optimiser(catalogue);
+        this.threads = threads;
+    }
+
+    /**
+     * 并行优化给定的查询文件，结果顺序与 files 相同。
+     */
+    public Report optimise(List<Path> files) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Path f : files) {
+                futures.add(pool.submit(() -> optimiseFile(f)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> fu : futures) {
+                try {
+                    results.add(fu.get());
+                } catch (ExecutionException e) {
+                    // optimiseFile 自己捕获异常，这里只会是 Error
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return new Report(results, System.nanoTime() - start, threads);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result optimiseFile(Path file) {
+        try {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            Operator canonical = new QueryParser(catalogue, new StringReader(text)).parse();
+            canonical.accept(new Estimator());
+            long start = System.nanoTime();
+            Operator plan = optimiser.optimise(canonical);
+            long nanos = System.nanoTime() - start;
+            return new Result(file, plan, null, nanos);
+        } catch (Exception e) {
+            return new Result(file, null, e, 0);
+        }
+    }
+
+    /**
+     * @return 目录下的全部 *.txt 查询文件，按文件名排序
+     */
+    public static List<Path> queryFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.txt")) {
+            for (Path p : ds) {
+                files.add(p);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Catalogue cat = CatalogueImage.open(args[0]);
+        List<Path> files = queryFiles(Paths.get(args[1]));
+        int threads = (args.length > 2 && !args[2].equals("-v"))
+                ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        boolean verbose = args[args.length - 1].equals("-v");
+
+        Report report = new WorkloadOptimiser(cat, threads).optimise(files);
+        for (Result r : report.results) {
+            if (r.error != null) {
+                System.err.println(r.file.getFileName() + ": " + r.error);
+            } else if (verbose) {
+                System.out.println(r.file.getFileName() + ": " + r.plan);
+            }
+        }
+        System.out.println(report);
+    }
+}